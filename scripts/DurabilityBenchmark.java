@@ -0,0 +1,76 @@
+import com.example.FileStorage.storage.BlobStore;
+import com.example.FileStorage.storage.Durability;
+import com.example.FileStorage.storage.GroupCommitter;
+import com.example.FileStorage.storage.SegmentStore;
+import com.example.FileStorage.storage.VolumeManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+// Đo số upload/giây của BlobStore với từng mức Durability (chạy tay bằng source launcher của JDK 21):
+//   ./mvnw -q -B compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+//   java -cp "target/classes:$(cat target/classpath.txt)" scripts/DurabilityBenchmark.java /mnt/data/bench 16 2000 4096
+// Tham số: thư mục (nên nằm trên đĩa thật, không phải tmpfs), số luồng, số upload mỗi chế độ, kích thước mỗi upload.
+// Upload nhỏ hơn ngưỡng segment (64 KB) đi vào SegmentStore giống FileController, nơi GROUPED gom fsync.
+// Cửa sổ group commit (ms) đặt bằng -Dwindow=..., mặc định 1.
+public class DurabilityBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Path.of(args.length > 0 ? args[0] : "target/durability-bench");
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int uploads = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int size = args.length > 3 ? Integer.parseInt(args[3]) : 4096;
+
+        byte[] payload = new byte[size];
+        ThreadLocalRandom.current().nextBytes(payload);
+
+        System.out.printf("%d uploads of %d bytes, %d threads, dir=%s%n", uploads, size, threads, dir.toAbsolutePath());
+        for (Durability durability : Durability.values()) {
+            deleteRecursively(dir);
+            GroupCommitter committer = new GroupCommitter(Long.getLong("window", 1), 256, 8);
+            VolumeManager volumes = new VolumeManager(dir.toString());
+            BlobStore store = new BlobStore(volumes, false, durability, committer);
+            SegmentStore segments = new SegmentStore(volumes, store, true, 64 * 1024, 256L * 1024 * 1024, 4);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                long started = System.nanoTime();
+                List<Future<?>> results = new ArrayList<>();
+                for (int i = 0; i < uploads; i++) {
+                    results.add(pool.submit(() -> segments.accepts(payload.length)
+                            ? segments.append(payload)
+                            : store.write(new ByteArrayInputStream(payload), "bench.bin")));
+                }
+                for (Future<?> result : results) {
+                    result.get();
+                }
+                double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+                System.out.printf("%-9s %10.0f uploads/sec  %s%n", durability, uploads / seconds, committer.getStats());
+            } finally {
+                pool.shutdown();
+                committer.shutdown();
+            }
+        }
+        deleteRecursively(dir);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
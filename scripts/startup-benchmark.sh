@@ -0,0 +1,71 @@
+#!/usr/bin/env bash
+# Đo thời gian khởi động tới request HTTP đầu tiên và RSS của JVM, trước và sau khi dùng Spring AOT + AppCDS.
+# Chạy trên H2 in-memory (MODE=MSSQLServer) nên không cần SQL Server; lược đồ vẫn do Flyway tạo như thật.
+#
+#   scripts/startup-benchmark.sh            # 5 lần mỗi cấu hình
+#   RUNS=10 PORT=18081 scripts/startup-benchmark.sh
+#
+# Cần Linux (RSS đọc từ /proc), curl và JDK 21.
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+RUNS=${RUNS:-5}
+PORT=${PORT:-18080}
+JAR=FileStorage-0.0.1-SNAPSHOT.jar
+WORK=target/startup-bench
+
+APP_ARGS=(
+  "--server.port=$PORT"
+  "--spring.datasource.url=jdbc:h2:mem:filestorage;MODE=MSSQLServer;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1"
+  "--spring.datasource.driver-class-name=org.h2.Driver"
+  "--spring.datasource.username=sa"
+  "--spring.datasource.password="
+  "--spring.jpa.database-platform=org.hibernate.dialect.H2Dialect"
+  "--spring.jpa.show-sql=false"
+)
+
+echo "🔹 Building baseline jar"
+sh ./mvnw -q -B -DskipTests -Pembedded-db clean package
+mkdir -p "$WORK/baseline"
+cp "target/$JAR" "$WORK/baseline/$JAR"
+
+echo "🔹 Building AOT jar and CDS archive"
+sh ./mvnw -q -B -DskipTests -Pembedded-db,aot-cds package
+
+# measure <nhãn> <thư mục chạy> <tham số JVM...>
+measure() {
+  local label=$1 dir=$2
+  shift 2
+  local total_ms=0 total_rss=0
+  for i in $(seq 1 "$RUNS"); do
+    local upload_dir
+    upload_dir=$(mktemp -d)
+    local started
+    started=$(date +%s%N)
+    (cd "$dir" && exec java "$@" -jar "$JAR" "${APP_ARGS[@]}" "--file.upload-dir=$upload_dir") \
+      > "$WORK/$label-$i.log" 2>&1 &
+    local pid=$!
+    # Request đầu tiên được trả lời (kể cả 401/404) nghĩa là server đã sẵn sàng
+    until [ "$(curl -s -o /dev/null -w '%{http_code}' "http://localhost:$PORT/api/files/1" || true)" != "000" ]; do
+      if ! kill -0 "$pid" 2>/dev/null; then
+        echo "❌ $label did not start, see $WORK/$label-$i.log"
+        exit 1
+      fi
+      sleep 0.05
+    done
+    local ms=$(( ($(date +%s%N) - started) / 1000000 ))
+    local rss_kb
+    rss_kb=$(awk '/^VmRSS/ {print $2}' "/proc/$pid/status")
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    rm -rf "$upload_dir"
+    printf '%-8s run %2d: first request after %6d ms, RSS %5d MB\n' "$label" "$i" "$ms" $((rss_kb / 1024))
+    total_ms=$((total_ms + ms))
+    total_rss=$((total_rss + rss_kb))
+  done
+  printf '%-8s average: %6d ms, RSS %5d MB\n\n' "$label" $((total_ms / RUNS)) $((total_rss / RUNS / 1024))
+}
+
+echo
+measure baseline "$WORK/baseline"
+measure aot-cds target/aot-cds -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true
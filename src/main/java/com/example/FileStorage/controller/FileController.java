@@ -1,27 +1,51 @@
 package com.example.FileStorage.controller;
 
+import com.example.FileStorage.dto.BulkDeleteJob;
+import com.example.FileStorage.dto.BulkDeleteRequest;
+import com.example.FileStorage.dto.FileCopyRequest;
+import com.example.FileStorage.dto.FileSearchResult;
+import com.example.FileStorage.dto.FileSignatures;
 import com.example.FileStorage.entity.FileEntity;
+import com.example.FileStorage.entity.FileVersion;
+import com.example.FileStorage.entity.Folder;
 import com.example.FileStorage.entity.User;
 import com.example.FileStorage.repository.UserRepository;
+import com.example.FileStorage.security.CurrentUser;
+import com.example.FileStorage.service.BulkDeleteService;
+import com.example.FileStorage.service.ChangeFeedService;
+import com.example.FileStorage.service.DeltaService;
 import com.example.FileStorage.service.FileService;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
+import com.example.FileStorage.service.FolderService;
+import com.example.FileStorage.storage.AdaptiveLimit;
+import com.example.FileStorage.storage.AdmissionLimiter;
+import com.example.FileStorage.storage.AdmissionRejectedException;
+import com.example.FileStorage.storage.BandwidthManager;
+import com.example.FileStorage.storage.BlobChecksum;
+import com.example.FileStorage.storage.BlobStore;
+import com.example.FileStorage.storage.BlobStreamer;
+import com.example.FileStorage.storage.HotFileCache;
+import com.example.FileStorage.storage.SegmentStore;
+import com.example.FileStorage.storage.StoredBlob;
+import com.example.FileStorage.storage.ThrottledInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.InterruptedIOException;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -30,13 +54,38 @@ public class FileController {
 
     private final FileService fileService;
     private final UserRepository userRepository;
+    private final DeltaService deltaService;
+    private final BlobStore blobStore;
+    private final BlobStreamer blobStreamer;
+    private final BandwidthManager bandwidthManager;
+    private final AdmissionLimiter admissionLimiter;
+    private final SegmentStore segmentStore;
+    private final ChangeFeedService changeFeedService;
+    private final HotFileCache hotFileCache;
+    private final BulkDeleteService bulkDeleteService;
+    private final FolderService folderService;
+    private final CurrentUser currentUser;
 
-    @Value("${file.upload-dir}")   // Lấy từ application.properties
-    private String uploadDir;
-
-    public FileController(FileService fileService, UserRepository userRepository) {
+    public FileController(FileService fileService, UserRepository userRepository,
+                          DeltaService deltaService, BlobStore blobStore,
+                          BlobStreamer blobStreamer, BandwidthManager bandwidthManager,
+                          AdmissionLimiter admissionLimiter, SegmentStore segmentStore,
+                          ChangeFeedService changeFeedService, HotFileCache hotFileCache,
+                          BulkDeleteService bulkDeleteService, FolderService folderService,
+                          CurrentUser currentUser) {
         this.fileService = fileService;
         this.userRepository = userRepository;
+        this.deltaService = deltaService;
+        this.blobStore = blobStore;
+        this.blobStreamer = blobStreamer;
+        this.bandwidthManager = bandwidthManager;
+        this.admissionLimiter = admissionLimiter;
+        this.segmentStore = segmentStore;
+        this.changeFeedService = changeFeedService;
+        this.hotFileCache = hotFileCache;
+        this.bulkDeleteService = bulkDeleteService;
+        this.folderService = folderService;
+        this.currentUser = currentUser;
     }
 
     // 🔹 Lấy danh sách file theo userId
@@ -45,6 +94,36 @@ public class FileController {
         return fileService.getFilesByUser(userId);
     }
 
+    // 🔹 Change feed (SSE): đẩy các thay đổi file / share của user thay cho việc poll danh sách.
+    // Kết nối lại với header Last-Event-ID (hoặc tham số since) để nhận tiếp từ event cuối đã thấy.
+    @GetMapping(value = "/user/{userId}/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@PathVariable Long userId,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                    @RequestParam(value = "since", required = false) String since) {
+        return changeFeedService.subscribe(userId, lastEventId != null ? lastEventId : since);
+    }
+
+    // 🔹 Tìm kiếm file của user theo tên / loại / kích thước / ngày upload (dùng chỉ mục trong bộ nhớ)
+    @GetMapping("/search")
+    public List<FileSearchResult> searchFiles(
+            @RequestParam("userId") Long userId,
+            @RequestParam(value = "q", required = false) String query,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "minSize", required = false) Long minSize,
+            @RequestParam(value = "maxSize", required = false) Long maxSize,
+            @RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(value = "limit", defaultValue = "50") int limit) {
+        return fileService.searchFiles(userId, query, type, minSize, maxSize, from, to, Math.max(1, Math.min(limit, 1000)));
+    }
+
+    // 🔹 Dựng lại chỉ mục tìm kiếm từ DB
+    @PostMapping("/search/reindex")
+    public ResponseEntity<?> rebuildSearchIndex() {
+        long indexed = fileService.rebuildSearchIndex();
+        return ResponseEntity.ok(Map.of("indexed", indexed));
+    }
+
     // 🔹 Lấy metadata chi tiết file
     @GetMapping("/{id}")
     public ResponseEntity<FileEntity> getFileById(@PathVariable Long id) {
@@ -57,7 +136,8 @@ public class FileController {
     @PostMapping("/upload")
     public ResponseEntity<?> uploadFile(
             @RequestParam("file") MultipartFile file,
-            @RequestParam("userId") Long userId) throws IOException {
+            @RequestParam("userId") Long userId,
+            @RequestParam(value = "folderId", required = false) Long folderId) throws IOException {
 
         if (file.isEmpty()) {
             return ResponseEntity.badRequest().body("❌ File is empty!");
@@ -67,19 +147,46 @@ public class FileController {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new RuntimeException("❌ User not found with id: " + userId));
 
-        // Xác định thư mục lưu trữ tuyệt đối và đảm bảo tồn tại
-        Path baseUploadPath = Paths.get(uploadDir).toAbsolutePath().normalize();
-        Files.createDirectories(baseUploadPath);
+        // Kiểm tra thư mục đích (trống: thư mục gốc)
+        Folder folder = null;
+        if (folderId != null) {
+            folder = folderService.getFolder(folderId)
+                    .orElseThrow(() -> new RuntimeException("❌ Folder not found with id: " + folderId));
+            if (!folder.getUserId().equals(userId)) {
+                return ResponseEntity.badRequest().body("❌ Folder " + folderId + " belongs to another user");
+            }
+        }
 
-        // Tạo tên file duy nhất và loại bỏ mọi path traversal
+        // Lưu file bằng NIO để tránh phụ thuộc đường dẫn tạm của Tomcat; file nhỏ được đóng gói vào segment.
+        // Admission chỉ quyết định nhận upload (503 nếu quá tải); permit ghi được giữ quanh từng lần ghi đĩa,
+        // không qua lúc đọc từ client hay lúc chờ băng thông
         String originalFileName = file.getOriginalFilename();
-        String safeFileName = originalFileName == null ? "file" : Paths.get(originalFileName).getFileName().toString();
-        String uniqueFileName = System.currentTimeMillis() + "_" + safeFileName;
-        Path destinationPath = baseUploadPath.resolve(uniqueFileName).normalize();
-
-        // Lưu file bằng NIO để tránh phụ thuộc đường dẫn tạm của Tomcat
-        try (InputStream inputStream = file.getInputStream()) {
-            Files.copy(inputStream, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+        StoredBlob stored = null;
+        SegmentStore.Record packed = null;
+        String packedChecksum = null;
+        try {
+            admissionLimiter.admitWrite();
+        } catch (AdmissionRejectedException ex) {
+            return BlobStreamer.serviceUnavailable(ex);
+        }
+        try (BandwidthManager.Transfer transfer = bandwidthManager.open(userId, null);
+             InputStream inputStream = new ThrottledInputStream(file.getInputStream(), transfer)) {
+            if (segmentStore.accepts(file.getSize())) {
+                byte[] data = inputStream.readAllBytes();
+                packedChecksum = BlobChecksum.of(data);
+                try (AdaptiveLimit.Permit permit = admissionLimiter.acquireWriteSlot()) {
+                    long started = System.nanoTime();
+                    packed = segmentStore.append(data);
+                    permit.recordLatency(System.nanoTime() - started);
+                }
+            } else {
+                stored = blobStore.write(inputStream, originalFileName, admissionLimiter);
+            }
+        } catch (AdmissionRejectedException ex) {
+            return BlobStreamer.serviceUnavailable(ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted");
         }
 
         // Tạo metadata và lưu DB
@@ -87,34 +194,214 @@ public class FileController {
         fileEntity.setFileName(originalFileName);
         fileEntity.setFileType(file.getContentType());
         fileEntity.setFileSize(file.getSize());
-        fileEntity.setStoragePath(destinationPath.toString());
+        if (packed != null) {
+            fileEntity.setStoragePath(packed.getPath().toString());
+            fileEntity.setSegmentId(packed.getSegmentId());
+            fileEntity.setSegmentOffset(packed.getOffset());
+            fileEntity.setChecksum(packedChecksum);
+        } else {
+            fileEntity.setStoragePath(stored.getPath().toString());
+            fileEntity.setReplicaPaths(stored.getReplicaPaths());
+            fileEntity.setChecksum(stored.getChecksum());
+        }
         fileEntity.setUser(user);
+        fileEntity.setFolder(folder);
         fileEntity.setUploadedAt(LocalDateTime.now());
 
-        FileEntity savedFile = fileService.saveFile(fileEntity);
+        // Blob được bảo vệ khỏi reconciler (in-flight), bản ghi segment khỏi compactor / rebalancer (pending)
+        // tới khi dòng DB đã lưu
+        FileEntity savedFile;
+        try {
+            savedFile = fileService.saveFile(fileEntity);
+        } finally {
+            if (stored != null) {
+                blobStore.release(stored);
+            }
+            if (packed != null) {
+                segmentStore.release(packed);
+            }
+        }
 
         return ResponseEntity.ok(savedFile);
     }
 
-    // 🔹 Download file
+    // 🔹 Đổi tên file (chỉ đổi metadata, không đụng tới file trên đĩa)
+    @PutMapping("/{id}/rename")
+    public ResponseEntity<?> renameFile(@PathVariable Long id, @RequestParam("name") String name) {
+        if (name == null || name.isBlank()) {
+            return ResponseEntity.badRequest().body("❌ File name is empty!");
+        }
+        return fileService.renameFile(id, name.trim())
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // 🔹 Chuyển file vào thư mục của cùng user (folderId trống: về thư mục gốc)
+    @PutMapping("/{id}/folder")
+    public ResponseEntity<?> moveToFolder(@PathVariable Long id,
+                                          @RequestParam(value = "folderId", required = false) Long folderId) {
+        Optional<FileEntity> fileEntityOpt = fileService.getFileById(id);
+        if (fileEntityOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            folderService.moveFiles(fileEntityOpt.get().getUser().getId(), List.of(id), folderId);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+        return fileService.getFileById(id)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // 🔹 Download file (stream theo chunk, băng thông tính cho user đang tải, không phải chủ file)
     @GetMapping("/download/{id}")
-    public ResponseEntity<Resource> downloadFile(@PathVariable Long id) {
+    public ResponseEntity<StreamingResponseBody> downloadFile(@PathVariable Long id) throws IOException {
+        // File nóng: trả thẳng từ cache, không truy vấn DB
+        HotFileCache.Entry cached = hotFileCache.get(id);
+        if (cached != null) {
+            return blobStreamer.downloadCached(cached, currentUser.getId(), null);
+        }
+        long cacheGeneration = hotFileCache.generation();
         FileEntity fileEntity = fileService.getFileById(id)
                 .orElseThrow(() -> new RuntimeException("❌ File not found with id: " + id));
 
-        File file = new File(fileEntity.getStoragePath());
-        if (!file.exists()) {
+        return blobStreamer.downloadFile(fileEntity, currentUser.getId(), null, cacheGeneration);
+    }
+
+    // 🔹 Sao chép file phía server (không truyền byte qua mạng)
+    @PostMapping("/{id}/copy")
+    public ResponseEntity<?> copyFile(@PathVariable Long id,
+                                      @RequestParam(value = "targetUserId", required = false) Long targetUserId) {
+        FileEntity source = fileService.getFileById(id)
+                .orElseThrow(() -> new RuntimeException("❌ File not found with id: " + id));
+        User target = targetUserId == null ? source.getUser() : userRepository.findById(targetUserId)
+                .orElseThrow(() -> new RuntimeException("❌ User not found with id: " + targetUserId));
+        return ResponseEntity.ok(fileService.copyFiles(List.of(id), target).get(0));
+    }
+
+    // 🔹 Chuyển file sang user khác
+    @PostMapping("/{id}/move")
+    public ResponseEntity<?> moveFile(@PathVariable Long id, @RequestParam("targetUserId") Long targetUserId) {
+        if (fileService.getFileById(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        User target = userRepository.findById(targetUserId)
+                .orElseThrow(() -> new RuntimeException("❌ User not found with id: " + targetUserId));
+        return ResponseEntity.ok(fileService.moveFiles(List.of(id), target).get(0));
+    }
+
+    // 🔹 Sao chép nhiều file trong một transaction
+    @PostMapping("/copy")
+    public List<FileEntity> copyFiles(@Valid @RequestBody FileCopyRequest request) {
+        User target = userRepository.findById(request.getTargetUserId())
+                .orElseThrow(() -> new RuntimeException("❌ User not found with id: " + request.getTargetUserId()));
+        return fileService.copyFiles(request.getFileIds(), target);
+    }
+
+    // 🔹 Chuyển nhiều file sang user khác trong một transaction
+    @PostMapping("/move")
+    public List<FileEntity> moveFiles(@Valid @RequestBody FileCopyRequest request) {
+        User target = userRepository.findById(request.getTargetUserId())
+                .orElseThrow(() -> new RuntimeException("❌ User not found with id: " + request.getTargetUserId()));
+        return fileService.moveFiles(request.getFileIds(), target);
+    }
+
+    // 🔹 Xóa hàng loạt: file biến mất ngay (tombstone), blob và metadata được dọn nền; trả về job để theo dõi
+    @PostMapping("/bulk-delete")
+    public ResponseEntity<?> bulkDelete(@Valid @RequestBody BulkDeleteRequest request) {
+        BulkDeleteJob job;
+        if (request.getFileIds() != null && !request.getFileIds().isEmpty()) {
+            job = bulkDeleteService.submit(request.getFileIds());
+        } else if (request.getUserId() != null) {
+            job = bulkDeleteService.submitForUser(request.getUserId());
+        } else {
+            return ResponseEntity.badRequest().body("❌ fileIds or userId is required");
+        }
+        return ResponseEntity.accepted().body(job);
+    }
+
+    // 🔹 Tiến độ một job xóa hàng loạt
+    @GetMapping("/bulk-delete/{jobId}")
+    public ResponseEntity<BulkDeleteJob> getBulkDeleteJob(@PathVariable String jobId) {
+        return bulkDeleteService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // 🔹 Chữ ký các khối của phiên bản hiện tại (cho delta upload)
+    @GetMapping("/{id}/signatures")
+    public ResponseEntity<?> getSignatures(@PathVariable Long id,
+                                           @RequestParam(value = "blockSize", required = false) Integer blockSize) throws IOException {
+        Optional<FileEntity> fileEntityOpt = fileService.getFileById(id);
+        if (fileEntityOpt.isEmpty()) {
             return ResponseEntity.notFound().build();
         }
+        // Đọc và băm cả phiên bản hiện tại: đi qua ngân sách đọc như download, permit giữ quanh từng lần đọc đĩa
+        try {
+            admissionLimiter.admitRead();
+            FileSignatures signatures = deltaService.computeSignatures(fileEntityOpt.get(), blockSize);
+            return ResponseEntity.ok(signatures);
+        } catch (AdmissionRejectedException ex) {
+            return BlobStreamer.serviceUnavailable(ex);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+    }
 
-        Resource resource = new FileSystemResource(file);
+    // 🔹 Upload phiên bản mới dưới dạng delta so với phiên bản baseVersion
+    @PostMapping(value = "/{id}/delta", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadDelta(@PathVariable Long id,
+                                         @RequestParam("baseVersion") int baseVersion,
+                                         @RequestParam("blockSize") int blockSize,
+                                         HttpServletRequest request) throws IOException {
+        Optional<FileEntity> fileEntityOpt = fileService.getFileById(id);
+        if (fileEntityOpt.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        FileEntity fileEntity = fileEntityOpt.get();
+        if (fileEntity.getCurrentVersion() != baseVersion) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body("❌ File was modified, current version is " + fileEntity.getCurrentVersion());
+        }
+        // Delta đọc thẳng từ mạng: permit ghi chỉ giữ quanh từng lần ghi đĩa trong DeltaService
+        try {
+            admissionLimiter.admitWrite();
+        } catch (AdmissionRejectedException ex) {
+            return BlobStreamer.serviceUnavailable(ex);
+        }
+        try (BandwidthManager.Transfer transfer = bandwidthManager.open(currentUser.getId(), null);
+             InputStream delta = new ThrottledInputStream(request.getInputStream(), transfer)) {
+            return ResponseEntity.ok(deltaService.applyDelta(fileEntity, baseVersion, blockSize, delta));
+        } catch (AdmissionRejectedException ex) {
+            return BlobStreamer.serviceUnavailable(ex);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+        }
+    }
+
+    // 🔹 Danh sách các phiên bản cũ của file
+    @GetMapping("/{id}/versions")
+    public List<FileVersion> getVersions(@PathVariable Long id) {
+        return fileService.getVersions(id);
+    }
+
+    // 🔹 Download một phiên bản cũ
+    @GetMapping("/{id}/versions/{version}/download")
+    public ResponseEntity<StreamingResponseBody> downloadVersion(@PathVariable Long id, @PathVariable Integer version) throws IOException {
+        FileEntity fileEntity = fileService.getFileById(id)
+                .orElseThrow(() -> new RuntimeException("❌ File not found with id: " + id));
+        FileVersion fileVersion = fileService.getVersion(id, version)
+                .orElseThrow(() -> new RuntimeException("❌ Version " + version + " not found for file: " + id));
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=\"" + fileEntity.getFileName() + "\"")
-                .contentType(MediaType.parseMediaType(fileEntity.getFileType()))
-                .contentLength(file.length())
-                .body(resource);
+        if (fileVersion.getSegmentId() != null) {
+            return blobStreamer.downloadSegment(fileVersion.getSegmentId(), fileVersion.getSegmentOffset(), fileVersion.getFileSize(),
+                    fileEntity.getFileName(), fileEntity.getFileType(), currentUser.getId(), null);
+        }
+        return blobStreamer.download(Paths.get(fileVersion.getStoragePath()), fileEntity.getFileName(),
+                fileEntity.getFileType(), currentUser.getId(), null);
     }
 
     // 🔹 Xóa file
@@ -127,10 +414,18 @@ public class FileController {
 
         FileEntity fileEntity = fileEntityOpt.get();
 
-        // Xóa file trên server
-        File file = new File(fileEntity.getStoragePath());
-        if (file.exists()) {
-            file.delete();
+        // Xóa file trên server (kể cả các phiên bản cũ); bản ghi trong segment do SegmentCompactor thu hồi
+        if (fileEntity.getSegmentId() == null) {
+            File file = new File(fileEntity.getStoragePath());
+            if (file.exists()) {
+                file.delete();
+            }
+            fileEntity.getReplicaPaths().forEach(blobStore::delete);
+        }
+        for (FileVersion version : fileService.getVersions(id)) {
+            if (version.getSegmentId() == null) {
+                blobStore.delete(version.getStoragePath());
+            }
         }
 
         // Xóa metadata trong DB
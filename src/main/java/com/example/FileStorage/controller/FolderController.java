@@ -0,0 +1,110 @@
+package com.example.FileStorage.controller;
+
+import com.example.FileStorage.dto.BulkDeleteJob;
+import com.example.FileStorage.dto.FolderListing;
+import com.example.FileStorage.entity.Folder;
+import com.example.FileStorage.entity.User;
+import com.example.FileStorage.repository.FolderSize;
+import com.example.FileStorage.repository.UserRepository;
+import com.example.FileStorage.service.FolderService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/folders")
+public class FolderController {
+
+    private final FolderService folderService;
+    private final UserRepository userRepository;
+
+    public FolderController(FolderService folderService, UserRepository userRepository) {
+        this.folderService = folderService;
+        this.userRepository = userRepository;
+    }
+
+    // 🔹 Tạo thư mục (parentId trống: thư mục gốc của user)
+    @PostMapping
+    public ResponseEntity<?> createFolder(@RequestParam("userId") Long userId,
+                                          @RequestParam("name") String name,
+                                          @RequestParam(value = "parentId", required = false) Long parentId) {
+        if (name == null || name.isBlank()) {
+            return ResponseEntity.badRequest().body("❌ Folder name is empty!");
+        }
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new RuntimeException("❌ User not found with id: " + userId));
+        try {
+            return ResponseEntity.ok(folderService.createFolder(user, parentId, name.trim()));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+    }
+
+    // 🔹 Nội dung thư mục gốc của user (thư mục con và file trực tiếp)
+    @GetMapping("/root")
+    public FolderListing listRoot(@RequestParam("userId") Long userId) {
+        return folderService.listRoot(userId);
+    }
+
+    // 🔹 Nội dung một thư mục (thư mục con và file trực tiếp)
+    @GetMapping("/{id}")
+    public ResponseEntity<FolderListing> listFolder(@PathVariable Long id) {
+        return folderService.list(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // 🔹 Tổng số thư mục, số file và dung lượng của cả cây con (một truy vấn)
+    @GetMapping("/{id}/size")
+    public ResponseEntity<FolderSize> getFolderSize(@PathVariable Long id) {
+        if (folderService.getFolder(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(folderService.getSize(id));
+    }
+
+    // 🔹 Đường dẫn từ gốc tới thư mục (breadcrumb)
+    @GetMapping("/{id}/path")
+    public ResponseEntity<List<Folder>> getFolderPath(@PathVariable Long id) {
+        List<Folder> path = folderService.getPath(id);
+        if (path.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(path);
+    }
+
+    // 🔹 Đổi tên thư mục (chỉ sửa một dòng, cây con không bị ảnh hưởng)
+    @PutMapping("/{id}/rename")
+    public ResponseEntity<?> renameFolder(@PathVariable Long id, @RequestParam("name") String name) {
+        if (name == null || name.isBlank()) {
+            return ResponseEntity.badRequest().body("❌ Folder name is empty!");
+        }
+        return folderService.renameFolder(id, name.trim())
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // 🔹 Chuyển thư mục cùng cây con sang thư mục cha khác (parentId trống: về gốc)
+    @PutMapping("/{id}/move")
+    public ResponseEntity<?> moveFolder(@PathVariable Long id,
+                                        @RequestParam(value = "parentId", required = false) Long parentId) {
+        if (folderService.getFolder(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.ok(folderService.moveFolder(id, parentId));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+    }
+
+    // 🔹 Xóa thư mục cùng cây con; file được xóa nền qua bulk delete, trả về job để theo dõi
+    @DeleteMapping("/{id}")
+    public ResponseEntity<BulkDeleteJob> deleteFolder(@PathVariable Long id) {
+        if (folderService.getFolder(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.accepted().body(folderService.deleteFolder(id));
+    }
+}
@@ -1,9 +1,20 @@
 package com.example.FileStorage.controller;
 
+import com.example.FileStorage.dto.ShareActivity;
+import com.example.FileStorage.entity.FileEntity;
 import com.example.FileStorage.entity.Share;
+import com.example.FileStorage.security.CurrentUser;
 import com.example.FileStorage.service.ShareService;
+import com.example.FileStorage.service.ShareStatsService;
+import com.example.FileStorage.storage.BlobStreamer;
+import com.example.FileStorage.storage.HotFileCache;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -11,9 +22,18 @@ import java.util.Optional;
 public class ShareController {
 
     private final ShareService shareService;
+    private final BlobStreamer blobStreamer;
+    private final HotFileCache hotFileCache;
+    private final ShareStatsService shareStatsService;
+    private final CurrentUser currentUser;
 
-    public ShareController(ShareService shareService) {
+    public ShareController(ShareService shareService, BlobStreamer blobStreamer, HotFileCache hotFileCache,
+                           ShareStatsService shareStatsService, CurrentUser currentUser) {
         this.shareService = shareService;
+        this.blobStreamer = blobStreamer;
+        this.hotFileCache = hotFileCache;
+        this.shareStatsService = shareStatsService;
+        this.currentUser = currentUser;
     }
 
     @PostMapping
@@ -21,6 +41,20 @@ public class ShareController {
         return shareService.createShare(share);
     }
 
+    // Các share được truy cập nhiều nhất trong cửa sổ gần đây (phát hiện link nóng / bị lạm dụng)
+    @GetMapping("/hot")
+    public List<ShareActivity> getHottestShares(@RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return shareStatsService.getHottest(Math.max(1, Math.min(limit, 100)));
+    }
+
+    @GetMapping("/{id}/stats")
+    public ResponseEntity<ShareActivity> getShareStats(@PathVariable Long id) {
+        if (shareService.getShareById(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(shareStatsService.getActivity(id));
+    }
+
     @GetMapping("/{id}")
     public Optional<Share> getShareById(@PathVariable Long id) {
         return shareService.getShareById(id);
@@ -28,7 +62,42 @@ public class ShareController {
 
     @GetMapping("/link/{link}")
     public Share getShareByLink(@PathVariable String link) {
-        return shareService.getShareByLink(link);
+        Share share = shareService.getShareByLink(link);
+        if (share != null) {
+            shareStatsService.recordView(share.getId());
+        }
+        return share;
+    }
+
+    // Download file qua link chia sẻ (giới hạn băng thông theo share và theo người tải)
+    @GetMapping("/link/{link}/download")
+    public ResponseEntity<?> downloadByLink(@PathVariable String link,
+                                            @RequestParam(value = "password", required = false) String password) throws IOException {
+        long cacheGeneration = hotFileCache.generation();
+        Share share = shareService.getShareByLink(link);
+        if (share == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (share.getExpireAt() != null && share.getExpireAt().isBefore(LocalDateTime.now())) {
+            return ResponseEntity.status(HttpStatus.GONE).body("❌ Share link has expired");
+        }
+        if ("VIEW".equalsIgnoreCase(share.getPermission())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("❌ Share does not allow download");
+        }
+        if (share.getPassword() != null && !share.getPassword().equals(password)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("❌ Wrong share password");
+        }
+
+        FileEntity file = share.getFile();
+        if (file.getDeletedAt() != null) {
+            return ResponseEntity.notFound().build();
+        }
+        shareStatsService.recordDownload(share.getId());
+        HotFileCache.Entry cached = hotFileCache.get(file.getId());
+        if (cached != null) {
+            return blobStreamer.downloadCached(cached, currentUser.getId(), share.getId());
+        }
+        return blobStreamer.downloadFile(file, currentUser.getId(), share.getId(), cacheGeneration);
     }
 
     @DeleteMapping("/{id}")
@@ -0,0 +1,155 @@
+package com.example.FileStorage.controller;
+
+import com.example.FileStorage.repository.CorruptedFile;
+import com.example.FileStorage.service.BulkDeleteService;
+import com.example.FileStorage.service.ShareStatsService;
+import com.example.FileStorage.storage.AdmissionLimiter;
+import com.example.FileStorage.storage.BandwidthManager;
+import com.example.FileStorage.storage.BlobStore;
+import com.example.FileStorage.storage.GroupCommitter;
+import com.example.FileStorage.storage.HotFileCache;
+import com.example.FileStorage.storage.IntegrityScrubber;
+import com.example.FileStorage.storage.SegmentCompactor;
+import com.example.FileStorage.storage.StorageReconciler;
+import com.example.FileStorage.storage.VolumeManager;
+import com.example.FileStorage.storage.VolumeRebalancer;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/storage")
+public class StorageAdminController {
+
+    private final StorageReconciler storageReconciler;
+    private final BlobStore blobStore;
+    private final BandwidthManager bandwidthManager;
+    private final AdmissionLimiter admissionLimiter;
+    private final GroupCommitter groupCommitter;
+    private final VolumeManager volumeManager;
+    private final VolumeRebalancer volumeRebalancer;
+    private final SegmentCompactor segmentCompactor;
+    private final HotFileCache hotFileCache;
+    private final IntegrityScrubber integrityScrubber;
+    private final BulkDeleteService bulkDeleteService;
+    private final ShareStatsService shareStatsService;
+
+    public StorageAdminController(StorageReconciler storageReconciler, BlobStore blobStore,
+                                  BandwidthManager bandwidthManager, AdmissionLimiter admissionLimiter,
+                                  GroupCommitter groupCommitter, VolumeManager volumeManager,
+                                  VolumeRebalancer volumeRebalancer, SegmentCompactor segmentCompactor,
+                                  HotFileCache hotFileCache, IntegrityScrubber integrityScrubber,
+                                  BulkDeleteService bulkDeleteService, ShareStatsService shareStatsService) {
+        this.storageReconciler = storageReconciler;
+        this.blobStore = blobStore;
+        this.bandwidthManager = bandwidthManager;
+        this.admissionLimiter = admissionLimiter;
+        this.groupCommitter = groupCommitter;
+        this.volumeManager = volumeManager;
+        this.volumeRebalancer = volumeRebalancer;
+        this.segmentCompactor = segmentCompactor;
+        this.hotFileCache = hotFileCache;
+        this.integrityScrubber = integrityScrubber;
+        this.bulkDeleteService = bulkDeleteService;
+        this.shareStatsService = shareStatsService;
+    }
+
+    // 🔹 Tiến độ và kết quả đối soát giữa đĩa và DB
+    @GetMapping("/reconciler")
+    public Map<String, Object> getReconcilerStats() {
+        return storageReconciler.getStats();
+    }
+
+    // 🔹 Danh sách file có metadata nhưng mất blob trên đĩa (id -> storagePath)
+    @GetMapping("/reconciler/missing")
+    public Map<Long, String> getMissingBlobs() {
+        return storageReconciler.getMissingBlobs();
+    }
+
+    // 🔹 Thống kê cách nhân bản blob khi copy (reflink / hard link / copy thường)
+    @GetMapping("/copies")
+    public Map<String, Object> getCopyStats() {
+        return blobStore.getCopyStats();
+    }
+
+    // 🔹 Băng thông: số transfer đang chạy, số byte bị throttle
+    @GetMapping("/bandwidth")
+    public Map<String, Object> getBandwidthStats() {
+        return bandwidthManager.getStats();
+    }
+
+    // 🔹 Admission control: limit hiện tại, số transfer đang chạy / đang chờ / bị từ chối
+    @GetMapping("/admission")
+    public Map<String, Object> getAdmissionStats() {
+        return admissionLimiter.getStats();
+    }
+
+    // 🔹 Độ bền ghi: chế độ hiện tại và thống kê group commit
+    @GetMapping("/durability")
+    public Map<String, Object> getDurabilityStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(groupCommitter.getStats());
+        stats.put("mode", blobStore.getDurability());
+        return stats;
+    }
+
+    // 🔹 Các volume lưu blob: trọng số, trạng thái rút, tải I/O và dung lượng trống
+    @GetMapping("/volumes")
+    public List<Map<String, Object>> getVolumes() {
+        return volumeManager.getStats();
+    }
+
+    // 🔹 Dời blob về đúng volume sau khi thêm / rút volume (chạy nền)
+    @PostMapping("/rebalance")
+    public ResponseEntity<Map<String, Object>> startRebalance() {
+        if (!volumeRebalancer.start()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(volumeRebalancer.getStats());
+        }
+        return ResponseEntity.accepted().body(volumeRebalancer.getStats());
+    }
+
+    // 🔹 Segment chứa file nhỏ: số segment, bản ghi đã ghi, kết quả compaction
+    @GetMapping("/segments")
+    public Map<String, Object> getSegmentStats() {
+        return segmentCompactor.getStats();
+    }
+
+    // 🔹 Cache file nóng: hit ratio, byte hit ratio, số lần loại bỏ
+    @GetMapping("/cache")
+    public Map<String, Object> getCacheStats() {
+        return hotFileCache.getStats();
+    }
+
+    // 🔹 Kiểm tra toàn vẹn nền: số byte đã kiểm, số bản sai checksum / đã sửa, số file hỏng
+    @GetMapping("/scrub")
+    public Map<String, Object> getScrubStats() {
+        return integrityScrubber.getStats();
+    }
+
+    // 🔹 Danh sách file không còn bản nào khớp checksum
+    @GetMapping("/scrub/corrupted")
+    public List<CorruptedFile> getCorruptedFiles() {
+        return integrityScrubber.getCorruptedFiles();
+    }
+
+    // 🔹 Xóa hàng loạt: số job đang chạy, số file tombstone chờ dọn
+    @GetMapping("/bulk-delete")
+    public Map<String, Object> getBulkDeleteStats() {
+        return bulkDeleteService.getStats();
+    }
+
+    // 🔹 Bộ đếm truy cập share: số share đang theo dõi, số lượt flush / lỗi
+    @GetMapping("/share-stats")
+    public Map<String, Object> getShareStats() {
+        return shareStatsService.getStats();
+    }
+
+    // 🔹 Tiến độ lượt rebalance gần nhất
+    @GetMapping("/rebalance")
+    public Map<String, Object> getRebalanceStats() {
+        return volumeRebalancer.getStats();
+    }
+}
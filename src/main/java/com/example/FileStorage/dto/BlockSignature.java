@@ -0,0 +1,26 @@
+package com.example.FileStorage.dto;
+
+public class BlockSignature {
+
+    private int index;
+    private int weak;
+    private String strong;
+
+    public BlockSignature() {
+    }
+
+    public BlockSignature(int index, int weak, String strong) {
+        this.index = index;
+        this.weak = weak;
+        this.strong = strong;
+    }
+
+    public int getIndex() { return index; }
+    public void setIndex(int index) { this.index = index; }
+
+    public int getWeak() { return weak; }
+    public void setWeak(int weak) { this.weak = weak; }
+
+    public String getStrong() { return strong; }
+    public void setStrong(String strong) { this.strong = strong; }
+}
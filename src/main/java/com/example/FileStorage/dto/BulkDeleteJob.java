@@ -0,0 +1,68 @@
+package com.example.FileStorage.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tiến độ một lần bulk delete: file đã tombstone ngay khi tạo job, phần dọn blob / dòng DB chạy nền.
+// Job theo danh sách giữ sẵn id; job xóa toàn bộ file của một user (userId) tự lấy id từ DB theo trang
+public class BulkDeleteJob {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    private final String jobId;
+    @JsonIgnore
+    private final List<Long> fileIds;
+    @JsonIgnore
+    private final Long userId;
+    private final long totalFiles;
+    private volatile String status = QUEUED;
+    private final AtomicLong purgedFiles = new AtomicLong();
+    private final AtomicLong deletedBlobs = new AtomicLong();
+    private final LocalDateTime createdAt = LocalDateTime.now();
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+    private volatile String error;
+
+    public BulkDeleteJob(String jobId, List<Long> fileIds) {
+        this.jobId = jobId;
+        this.fileIds = fileIds;
+        this.userId = null;
+        this.totalFiles = fileIds.size();
+    }
+
+    public BulkDeleteJob(String jobId, Long userId, long totalFiles) {
+        this.jobId = jobId;
+        this.fileIds = null;
+        this.userId = userId;
+        this.totalFiles = totalFiles;
+    }
+
+    public String getJobId() { return jobId; }
+    public List<Long> getFileIds() { return fileIds; }
+    public Long getUserId() { return userId; }
+    public long getTotalFiles() { return totalFiles; }
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+    public long getPurgedFiles() { return purgedFiles.get(); }
+    public void addPurgedFiles(long count) { purgedFiles.addAndGet(count); }
+    public long getDeletedBlobs() { return deletedBlobs.get(); }
+    public void addDeletedBlobs(long count) { deletedBlobs.addAndGet(count); }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public LocalDateTime getStartedAt() { return startedAt; }
+    public void setStartedAt(LocalDateTime startedAt) { this.startedAt = startedAt; }
+    public LocalDateTime getFinishedAt() { return finishedAt; }
+    public void setFinishedAt(LocalDateTime finishedAt) { this.finishedAt = finishedAt; }
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public double getProgress() {
+        // Job theo user còn dọn cả tombstone cũ hơn của user đó, nên số đã dọn có thể vượt totalFiles
+        return totalFiles == 0 ? 1.0 : Math.min(1.0, (double) purgedFiles.get() / totalFiles);
+    }
+}
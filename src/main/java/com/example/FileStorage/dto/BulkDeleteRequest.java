@@ -0,0 +1,22 @@
+package com.example.FileStorage.dto;
+
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+// Xóa theo danh sách id, hoặc toàn bộ file của một user (userId) khi không truyền fileIds.
+// Danh sách id được nạp và tombstone ngay trong request nên bị giới hạn; xóa nhiều hơn thì dùng userId
+public class BulkDeleteRequest {
+
+    @Size(max = 100000)
+    private List<@NotNull Long> fileIds;
+
+    private Long userId;
+
+    public List<Long> getFileIds() { return fileIds; }
+    public void setFileIds(List<Long> fileIds) { this.fileIds = fileIds; }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+}
@@ -0,0 +1,71 @@
+package com.example.FileStorage.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Một thay đổi trên file / share của user, được đẩy qua change feed (SSE)
+public class ChangeEvent {
+
+    public static final String FILE_UPLOADED = "FILE_UPLOADED";
+    public static final String FILE_UPDATED = "FILE_UPDATED";
+    public static final String FILE_RENAMED = "FILE_RENAMED";
+    public static final String FILE_DELETED = "FILE_DELETED";
+    // Xóa hàng loạt: một event cho cả lô, id các file nằm trong fileIds
+    public static final String FILES_DELETED = "FILES_DELETED";
+    public static final String SHARE_CREATED = "SHARE_CREATED";
+    public static final String SHARE_REVOKED = "SHARE_REVOKED";
+
+    @JsonIgnore
+    private Long userId;
+    private String id;
+    private String type;
+    private Long fileId;
+    private List<Long> fileIds;
+    private String fileName;
+    private Long shareId;
+    private LocalDateTime occurredAt = LocalDateTime.now();
+
+    public ChangeEvent() {
+    }
+
+    public ChangeEvent(Long userId, String type, Long fileId, String fileName, Long shareId) {
+        this.userId = userId;
+        this.type = type;
+        this.fileId = fileId;
+        this.fileName = fileName;
+        this.shareId = shareId;
+    }
+
+    public static ChangeEvent filesDeleted(Long userId, List<Long> fileIds) {
+        ChangeEvent event = new ChangeEvent(userId, FILES_DELETED, null, null, null);
+        event.setFileIds(fileIds);
+        return event;
+    }
+
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+
+    // "<epoch>-<seq>", dùng làm id của SSE event (Last-Event-ID khi client kết nối lại)
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public Long getFileId() { return fileId; }
+    public void setFileId(Long fileId) { this.fileId = fileId; }
+
+    public List<Long> getFileIds() { return fileIds; }
+    public void setFileIds(List<Long> fileIds) { this.fileIds = fileIds; }
+
+    public String getFileName() { return fileName; }
+    public void setFileName(String fileName) { this.fileName = fileName; }
+
+    public Long getShareId() { return shareId; }
+    public void setShareId(Long shareId) { this.shareId = shareId; }
+
+    public LocalDateTime getOccurredAt() { return occurredAt; }
+    public void setOccurredAt(LocalDateTime occurredAt) { this.occurredAt = occurredAt; }
+}
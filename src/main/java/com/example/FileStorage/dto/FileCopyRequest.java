@@ -0,0 +1,21 @@
+package com.example.FileStorage.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+public class FileCopyRequest {
+
+    @NotEmpty
+    private List<Long> fileIds;
+
+    @NotNull
+    private Long targetUserId;
+
+    public List<Long> getFileIds() { return fileIds; }
+    public void setFileIds(List<Long> fileIds) { this.fileIds = fileIds; }
+
+    public Long getTargetUserId() { return targetUserId; }
+    public void setTargetUserId(Long targetUserId) { this.targetUserId = targetUserId; }
+}
@@ -0,0 +1,28 @@
+package com.example.FileStorage.dto;
+
+// Thay đổi cần áp vào chỉ mục tìm kiếm; FileSearchIndex nhận sau khi transaction (nếu có) commit.
+// document = null nghĩa là gỡ file khỏi chỉ mục của user
+public class FileIndexEvent {
+
+    private final Long userId;
+    private final Long fileId;
+    private final FileSearchResult document;
+
+    private FileIndexEvent(Long userId, Long fileId, FileSearchResult document) {
+        this.userId = userId;
+        this.fileId = fileId;
+        this.document = document;
+    }
+
+    public static FileIndexEvent index(Long userId, FileSearchResult document) {
+        return new FileIndexEvent(userId, document.getId(), document);
+    }
+
+    public static FileIndexEvent remove(Long userId, Long fileId) {
+        return new FileIndexEvent(userId, fileId, null);
+    }
+
+    public Long getUserId() { return userId; }
+    public Long getFileId() { return fileId; }
+    public FileSearchResult getDocument() { return document; }
+}
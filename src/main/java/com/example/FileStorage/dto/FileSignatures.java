@@ -0,0 +1,27 @@
+package com.example.FileStorage.dto;
+
+import java.util.List;
+
+public class FileSignatures {
+
+    private Long fileId;
+    private Integer version;
+    private int blockSize;
+    private long fileSize;
+    private List<BlockSignature> blocks;
+
+    public Long getFileId() { return fileId; }
+    public void setFileId(Long fileId) { this.fileId = fileId; }
+
+    public Integer getVersion() { return version; }
+    public void setVersion(Integer version) { this.version = version; }
+
+    public int getBlockSize() { return blockSize; }
+    public void setBlockSize(int blockSize) { this.blockSize = blockSize; }
+
+    public long getFileSize() { return fileSize; }
+    public void setFileSize(long fileSize) { this.fileSize = fileSize; }
+
+    public List<BlockSignature> getBlocks() { return blocks; }
+    public void setBlocks(List<BlockSignature> blocks) { this.blocks = blocks; }
+}
@@ -0,0 +1,29 @@
+package com.example.FileStorage.dto;
+
+import com.example.FileStorage.entity.FileEntity;
+import com.example.FileStorage.entity.Folder;
+
+import java.util.List;
+
+// Nội dung một thư mục (một cấp): thư mục con và file; folder = null với thư mục gốc
+public class FolderListing {
+
+    private Folder folder;
+    private List<Folder> folders;
+    private List<FileEntity> files;
+
+    public FolderListing(Folder folder, List<Folder> folders, List<FileEntity> files) {
+        this.folder = folder;
+        this.folders = folders;
+        this.files = files;
+    }
+
+    public Folder getFolder() { return folder; }
+    public void setFolder(Folder folder) { this.folder = folder; }
+
+    public List<Folder> getFolders() { return folders; }
+    public void setFolders(List<Folder> folders) { this.folders = folders; }
+
+    public List<FileEntity> getFiles() { return files; }
+    public void setFiles(List<FileEntity> files) { this.files = files; }
+}
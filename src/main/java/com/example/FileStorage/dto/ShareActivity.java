@@ -0,0 +1,31 @@
+package com.example.FileStorage.dto;
+
+import java.time.LocalDateTime;
+
+public class ShareActivity {
+
+    private Long shareId;
+    private long views;
+    private long downloads;
+    private LocalDateTime lastAccessAt;
+    private double viewsPerMinute;
+    private double downloadsPerMinute;
+
+    public Long getShareId() { return shareId; }
+    public void setShareId(Long shareId) { this.shareId = shareId; }
+
+    public long getViews() { return views; }
+    public void setViews(long views) { this.views = views; }
+
+    public long getDownloads() { return downloads; }
+    public void setDownloads(long downloads) { this.downloads = downloads; }
+
+    public LocalDateTime getLastAccessAt() { return lastAccessAt; }
+    public void setLastAccessAt(LocalDateTime lastAccessAt) { this.lastAccessAt = lastAccessAt; }
+
+    public double getViewsPerMinute() { return viewsPerMinute; }
+    public void setViewsPerMinute(double viewsPerMinute) { this.viewsPerMinute = viewsPerMinute; }
+
+    public double getDownloadsPerMinute() { return downloadsPerMinute; }
+    public void setDownloadsPerMinute(double downloadsPerMinute) { this.downloadsPerMinute = downloadsPerMinute; }
+}
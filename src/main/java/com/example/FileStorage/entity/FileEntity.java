@@ -1,7 +1,9 @@
 package com.example.FileStorage.entity;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 
 @Entity
@@ -24,12 +26,57 @@ public class FileEntity {
     @Column(name="storage_path", nullable = false, length = 500)
     private String storagePath;
 
+    // Bản sao của blob trên các volume khác (khi bật file.replication)
+    @JsonIgnore
+    @ElementCollection
+    @CollectionTable(name = "file_replicas", joinColumns = @JoinColumn(name = "file_id"))
+    @Column(name = "storage_path", nullable = false, length = 500)
+    private List<String> replicaPaths = new ArrayList<>();
+
+    // File nhỏ được đóng gói trong segment: storagePath trỏ tới file segment,
+    // bản ghi nằm ở [segmentOffset, segmentOffset + fileSize). null = blob riêng
+    @JsonIgnore
+    @Column(name="segment_id")
+    private Long segmentId;
+
+    @JsonIgnore
+    @Column(name="segment_offset")
+    private Long segmentOffset;
+
+    // SHA-256 (hex) của nội dung, tính lúc ghi; null với file cũ cho tới khi IntegrityScrubber bổ sung
+    @Column(name="checksum", length = 64)
+    private String checksum;
+
+    // Lần gần nhất IntegrityScrubber đọc lại blob và so checksum
+    @JsonIgnore
+    @Column(name="last_verified_at")
+    private LocalDateTime lastVerifiedAt;
+
+    // Không còn bản nào của blob khớp checksum
+    @JsonIgnore
+    @Column(name="corrupted")
+    private Boolean corrupted = false;
+
+    // Tombstone của bulk delete: file đã biến mất với người dùng, blob và dòng DB chờ BulkDeleteService dọn
+    @JsonIgnore
+    @Column(name="deleted_at")
+    private LocalDateTime deletedAt;
+
     @Column(name="uploaded_at")
     private LocalDateTime uploadedAt = LocalDateTime.now();
 
     @Column(name="updated_at")
     private LocalDateTime updatedAt;
 
+    @Column(name="current_version")
+    private Integer currentVersion = 1;
+
+    // Thư mục chứa file, null = thư mục gốc của user
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "folder_id")
+    private Folder folder;
+
     // Quan hệ N-1 với User
     @ManyToOne
     @JoinColumn(name = "user_id", nullable = false)
@@ -39,6 +86,10 @@ public class FileEntity {
     @OneToMany(mappedBy = "file", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Share> shares;
 
+    // Quan hệ 1-N với FileVersion (các phiên bản cũ)
+    @OneToMany(mappedBy = "file", cascade = CascadeType.ALL, orphanRemoval = true)
+    private List<FileVersion> versions;
+
     // getter, setter
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -50,10 +101,29 @@ public class FileEntity {
     public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
     public String getStoragePath() { return storagePath; }
     public void setStoragePath(String storagePath) { this.storagePath = storagePath; }
+    public List<String> getReplicaPaths() { return replicaPaths; }
+    public void setReplicaPaths(List<String> replicaPaths) { this.replicaPaths = replicaPaths; }
+    public Long getSegmentId() { return segmentId; }
+    public void setSegmentId(Long segmentId) { this.segmentId = segmentId; }
+    public Long getSegmentOffset() { return segmentOffset; }
+    public void setSegmentOffset(Long segmentOffset) { this.segmentOffset = segmentOffset; }
+    public String getChecksum() { return checksum; }
+    public void setChecksum(String checksum) { this.checksum = checksum; }
+    public LocalDateTime getLastVerifiedAt() { return lastVerifiedAt; }
+    public void setLastVerifiedAt(LocalDateTime lastVerifiedAt) { this.lastVerifiedAt = lastVerifiedAt; }
+    public boolean isCorrupted() { return Boolean.TRUE.equals(corrupted); }
+    public void setCorrupted(boolean corrupted) { this.corrupted = corrupted; }
+    public LocalDateTime getDeletedAt() { return deletedAt; }
+    public void setDeletedAt(LocalDateTime deletedAt) { this.deletedAt = deletedAt; }
     public LocalDateTime getUploadedAt() { return uploadedAt; }
     public void setUploadedAt(LocalDateTime uploadedAt) { this.uploadedAt = uploadedAt; }
     public LocalDateTime getUpdatedAt() { return updatedAt; }
     public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+    public Integer getCurrentVersion() { return currentVersion == null ? 1 : currentVersion; }
+    public void setCurrentVersion(Integer currentVersion) { this.currentVersion = currentVersion; }
+    public Folder getFolder() { return folder; }
+    public void setFolder(Folder folder) { this.folder = folder; }
+    public Long getFolderId() { return folder == null ? null : folder.getId(); }
     public User getUser() { return user; }
     public void setUser(User user) { this.user = user; }
 }
@@ -0,0 +1,78 @@
+package com.example.FileStorage.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "file_versions")
+public class FileVersion {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name="version_number", nullable = false)
+    private Integer versionNumber;
+
+    @Column(name="file_size")
+    private Long fileSize;
+
+    @JsonIgnore
+    @Column(name="storage_path", nullable = false, length = 500)
+    private String storagePath;
+
+    @JsonIgnore
+    @Column(name="segment_id")
+    private Long segmentId;
+
+    @JsonIgnore
+    @Column(name="segment_offset")
+    private Long segmentOffset;
+
+    @Column(name="checksum", length = 64)
+    private String checksum;
+
+    // Lần gần nhất IntegrityScrubber đọc lại blob của phiên bản và so checksum
+    @JsonIgnore
+    @Column(name="last_verified_at")
+    private LocalDateTime lastVerifiedAt;
+
+    // Blob của phiên bản không khớp checksum (phiên bản cũ không có bản sao để sửa)
+    @JsonIgnore
+    @Column(name="corrupted")
+    private Boolean corrupted = false;
+
+    @Column(name="created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    // Quan hệ N-1 với File (phiên bản cũ của file nào)
+    @JsonIgnore
+    @ManyToOne
+    @JoinColumn(name = "file_id", nullable = false)
+    private FileEntity file;
+
+    // getter, setter
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Integer getVersionNumber() { return versionNumber; }
+    public void setVersionNumber(Integer versionNumber) { this.versionNumber = versionNumber; }
+    public Long getFileSize() { return fileSize; }
+    public void setFileSize(Long fileSize) { this.fileSize = fileSize; }
+    public String getStoragePath() { return storagePath; }
+    public void setStoragePath(String storagePath) { this.storagePath = storagePath; }
+    public Long getSegmentId() { return segmentId; }
+    public void setSegmentId(Long segmentId) { this.segmentId = segmentId; }
+    public Long getSegmentOffset() { return segmentOffset; }
+    public void setSegmentOffset(Long segmentOffset) { this.segmentOffset = segmentOffset; }
+    public String getChecksum() { return checksum; }
+    public void setChecksum(String checksum) { this.checksum = checksum; }
+    public LocalDateTime getLastVerifiedAt() { return lastVerifiedAt; }
+    public void setLastVerifiedAt(LocalDateTime lastVerifiedAt) { this.lastVerifiedAt = lastVerifiedAt; }
+    public boolean isCorrupted() { return Boolean.TRUE.equals(corrupted); }
+    public void setCorrupted(boolean corrupted) { this.corrupted = corrupted; }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public FileEntity getFile() { return file; }
+    public void setFile(FileEntity file) { this.file = file; }
+}
@@ -0,0 +1,52 @@
+package com.example.FileStorage.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Thư mục của user. Cây thư mục được đánh chỉ mục bằng bảng folder_closure
+// (mọi cặp tổ tiên - hậu duệ kèm độ sâu) do FolderService duy trì
+@Entity
+@Table(name = "folders")
+public class Folder {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name="name", nullable = false, length = 255)
+    private String name;
+
+    // null = nằm ở thư mục gốc của user
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "parent_id")
+    private Folder parent;
+
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(name="created_at")
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    @Column(name="updated_at")
+    private LocalDateTime updatedAt;
+
+    // getter, setter
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+    public Folder getParent() { return parent; }
+    public void setParent(Folder parent) { this.parent = parent; }
+    public Long getParentId() { return parent == null ? null : parent.getId(); }
+    public User getUser() { return user; }
+    public void setUser(User user) { this.user = user; }
+    public Long getUserId() { return user == null ? null : user.getId(); }
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
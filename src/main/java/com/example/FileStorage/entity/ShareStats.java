@@ -0,0 +1,34 @@
+package com.example.FileStorage.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+// Bộ đếm truy cập đã flush của một share; ghi bằng MERGE theo lô từ ShareStatsService,
+// tách khỏi bảng shares để link đang viral không khóa dòng share
+@Entity
+@Table(name = "share_stats")
+public class ShareStats {
+
+    @Id
+    @Column(name="share_id")
+    private Long shareId;
+
+    @Column(name="view_count", nullable = false)
+    private long viewCount;
+
+    @Column(name="download_count", nullable = false)
+    private long downloadCount;
+
+    @Column(name="last_access_at")
+    private LocalDateTime lastAccessAt;
+
+    // getter, setter
+    public Long getShareId() { return shareId; }
+    public void setShareId(Long shareId) { this.shareId = shareId; }
+    public long getViewCount() { return viewCount; }
+    public void setViewCount(long viewCount) { this.viewCount = viewCount; }
+    public long getDownloadCount() { return downloadCount; }
+    public void setDownloadCount(long downloadCount) { this.downloadCount = downloadCount; }
+    public LocalDateTime getLastAccessAt() { return lastAccessAt; }
+    public void setLastAccessAt(LocalDateTime lastAccessAt) { this.lastAccessAt = lastAccessAt; }
+}
@@ -2,8 +2,17 @@ package com.example.FileStorage.repository;
 
 import com.example.FileStorage.entity.ActivityLog;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
 
 public interface ActivityLogRepository extends JpaRepository<ActivityLog, Long> {
     List<ActivityLog> findByUserId(Long userId);
+
+    // Giữ lại log khi file bị xóa hẳn, chỉ bỏ liên kết tới file
+    @Modifying
+    @Query("update ActivityLog a set a.file = null where a.file.id in :fileIds")
+    int detachFiles(@Param("fileIds") Collection<Long> fileIds);
 }
@@ -0,0 +1,8 @@
+package com.example.FileStorage.repository;
+
+// Projection tối thiểu: dòng nào đang trỏ tới blob nào (dùng cho rebalancer)
+public interface BlobRef {
+    Long getId();
+    String getStoragePath();
+    Long getSegmentId();
+}
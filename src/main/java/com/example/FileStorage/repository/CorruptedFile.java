@@ -0,0 +1,14 @@
+package com.example.FileStorage.repository;
+
+import java.time.LocalDateTime;
+
+// File bị IntegrityScrubber đánh dấu hỏng (không còn bản nào khớp checksum)
+public interface CorruptedFile {
+    Long getId();
+    Long getUserId();
+    String getFileName();
+    Long getFileSize();
+    String getStoragePath();
+    String getChecksum();
+    LocalDateTime getLastVerifiedAt();
+}
@@ -1,9 +1,169 @@
 package com.example.FileStorage.repository;
 
 import com.example.FileStorage.entity.FileEntity;
+import com.example.FileStorage.entity.Folder;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface FileRepository extends JpaRepository<FileEntity, Long> {
-    List<FileEntity> findByUserId(Long userId);
+    List<FileEntity> findByUserIdAndDeletedAtIsNull(Long userId);
+
+    List<FileEntity> findByUserIdAndFolderIsNullAndDeletedAtIsNullOrderByFileName(Long userId);
+
+    List<FileEntity> findByFolderIdAndDeletedAtIsNullOrderByFileName(Long folderId);
+
+    @Query(value = "select f.id from files f join folder_closure c on f.folder_id = c.descendant_id " +
+            "where c.ancestor_id = :folderId and f.deleted_at is null", nativeQuery = true)
+    List<Long> findLiveIdsInSubtree(@Param("folderId") Long folderId);
+
+    // Trước khi xóa cây thư mục: file (đã tombstone, chờ dọn) không còn trỏ vào thư mục sắp xóa
+    @Modifying
+    @Query(value = "update files set folder_id = null " +
+            "where folder_id in (select descendant_id from folder_closure where ancestor_id = :folderId)", nativeQuery = true)
+    int detachFromSubtree(@Param("folderId") Long folderId);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("update FileEntity f set f.folder = :folder, f.updatedAt = :updatedAt " +
+            "where f.id in :ids and f.user.id = :userId and f.deletedAt is null")
+    int moveToFolder(@Param("ids") Collection<Long> ids, @Param("userId") Long userId,
+                     @Param("folder") Folder folder, @Param("updatedAt") LocalDateTime updatedAt);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select f from FileEntity f where f.id = :id")
+    Optional<FileEntity> findByIdForUpdate(@Param("id") Long id);
+
+    // Duyệt bảng files theo khóa (keyset) để không phải load toàn bộ entity
+    @Query("select f.id as id, f.user.id as userId, f.fileName as fileName, f.fileType as fileType, " +
+            "f.fileSize as fileSize, f.storagePath as storagePath, f.segmentId as segmentId, " +
+            "f.uploadedAt as uploadedAt, f.updatedAt as updatedAt, f.deletedAt as deletedAt " +
+            "from FileEntity f where f.id > :afterId order by f.id")
+    List<FileSummary> findSummariesAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("select f.id as id, f.user.id as userId, f.fileName as fileName, f.fileType as fileType, " +
+            "f.fileSize as fileSize, f.storagePath as storagePath, f.segmentId as segmentId, " +
+            "f.uploadedAt as uploadedAt, f.updatedAt as updatedAt, f.deletedAt as deletedAt " +
+            "from FileEntity f where f.id in :ids and f.deletedAt is null")
+    List<FileSummary> findLiveSummaries(@Param("ids") Collection<Long> ids);
+
+    // Bulk delete: đánh dấu tombstone ngay, blob và dòng DB được dọn nền theo lô
+    @Transactional
+    @Modifying
+    @Query("update FileEntity f set f.deletedAt = :deletedAt where f.id in :ids and f.deletedAt is null")
+    int tombstone(@Param("ids") Collection<Long> ids, @Param("deletedAt") LocalDateTime deletedAt);
+
+    // Xóa toàn bộ file của user: một câu update theo user_id, không nạp id nào lên ứng dụng
+    @Transactional
+    @Modifying
+    @Query("update FileEntity f set f.deletedAt = :deletedAt where f.user.id = :userId and f.deletedAt is null")
+    int tombstoneByUserId(@Param("userId") Long userId, @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Query("select f.id from FileEntity f where f.user.id = :userId and f.deletedAt is not null " +
+            "and f.id > :afterId order by f.id")
+    List<Long> findTombstonedIdsByUserAfter(@Param("userId") Long userId, @Param("afterId") Long afterId,
+                                            Pageable pageable);
+
+    @Query("select f.id from FileEntity f where f.id in :ids and f.deletedAt is not null")
+    List<Long> findTombstonedIds(@Param("ids") Collection<Long> ids);
+
+    @Query("select f.id from FileEntity f where f.deletedAt < :before order by f.id")
+    List<Long> findTombstonedBefore(@Param("before") LocalDateTime before, Pageable pageable);
+
+    long countByDeletedAtIsNotNull();
+
+    @Query("select f.id as id, f.storagePath as storagePath, f.segmentId as segmentId from FileEntity f where f.id in :ids")
+    List<BlobRef> findBlobRefs(@Param("ids") Collection<Long> ids);
+
+    @Query("select r from FileEntity f join f.replicaPaths r where f.id in :ids")
+    List<String> findReplicaPathsByFileIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "delete from file_replicas where file_id in :ids", nativeQuery = true)
+    int deleteReplicasByFileIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("delete from FileEntity f where f.id in :ids and f.deletedAt is not null")
+    int purgeTombstoned(@Param("ids") Collection<Long> ids);
+
+    @Query("select f.id as id, f.storagePath as storagePath, f.segmentId as segmentId, f.segmentOffset as segmentOffset, " +
+            "f.fileSize as fileSize, f.checksum as checksum from FileEntity f " +
+            "where f.id > :afterId and f.deletedAt is null order by f.id")
+    List<ScrubTarget> findScrubTargetsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("select f.id as id, f.user.id as userId, f.fileName as fileName, f.fileSize as fileSize, " +
+            "f.storagePath as storagePath, f.checksum as checksum, f.lastVerifiedAt as lastVerifiedAt " +
+            "from FileEntity f where f.corrupted = true order by f.id")
+    List<CorruptedFile> findCorrupted();
+
+    long countByCorruptedTrue();
+
+    // Các cập nhật của scrubber đều có điều kiện storagePath: bỏ qua nếu file đã có phiên bản mới / bị dời trong lúc kiểm tra
+    @Transactional
+    @Modifying
+    @Query("update FileEntity f set f.lastVerifiedAt = :verifiedAt, f.corrupted = :corrupted " +
+            "where f.id = :id and f.storagePath = :path")
+    int markVerified(@Param("id") Long id, @Param("path") String path,
+                     @Param("verifiedAt") LocalDateTime verifiedAt, @Param("corrupted") boolean corrupted);
+
+    // File upload trước khi có cột checksum: lần quét đầu tiên ghi nhận checksum hiện tại
+    @Transactional
+    @Modifying
+    @Query("update FileEntity f set f.checksum = :checksum, f.lastVerifiedAt = :verifiedAt " +
+            "where f.id = :id and f.storagePath = :path and f.checksum is null")
+    int backfillChecksum(@Param("id") Long id, @Param("path") String path,
+                         @Param("checksum") String checksum, @Param("verifiedAt") LocalDateTime verifiedAt);
+
+    @Query("select f.storagePath from FileEntity f where f.storagePath in :paths")
+    List<String> findExistingStoragePaths(@Param("paths") Collection<String> paths);
+
+    @Query("select r from FileEntity f join f.replicaPaths r where r in :paths")
+    List<String> findExistingReplicaPaths(@Param("paths") Collection<String> paths);
+
+    @Query("select r from FileEntity f join f.replicaPaths r where f.id = :fileId")
+    List<String> findReplicaPaths(@Param("fileId") Long fileId);
+
+    // Cập nhật có điều kiện: trả về 0 nếu blob đã bị thay (phiên bản mới, xóa file) trong lúc đang dời
+    @Transactional
+    @Modifying
+    @Query("update FileEntity f set f.storagePath = :newPath where f.id = :id and f.storagePath = :oldPath")
+    int relocateBlob(@Param("id") Long id, @Param("oldPath") String oldPath, @Param("newPath") String newPath);
+
+    @Transactional
+    @Modifying
+    @Query(value = "update file_replicas set storage_path = :newPath where file_id = :id and storage_path = :oldPath",
+            nativeQuery = true)
+    int relocateReplica(@Param("id") Long id, @Param("oldPath") String oldPath, @Param("newPath") String newPath);
+
+    // Số byte còn được tham chiếu trong từng segment (bản copy dùng chung bản ghi bị đếm hai lần: chỉ làm compactor thận trọng hơn)
+    @Query("select f.segmentId as segmentId, sum(f.fileSize) as liveBytes from FileEntity f " +
+            "where f.segmentId is not null group by f.segmentId")
+    List<SegmentUsage> sumLiveBytesBySegment();
+
+    @Query("select distinct f.segmentOffset as segmentOffset, f.fileSize as fileSize from FileEntity f where f.segmentId = :segmentId")
+    List<SegmentRecord> findSegmentRecords(@Param("segmentId") Long segmentId);
+
+    long countBySegmentId(Long segmentId);
+
+    @Transactional
+    @Modifying
+    @Query("update FileEntity f set f.segmentId = :newId, f.segmentOffset = :newOffset, f.storagePath = :newPath " +
+            "where f.segmentId = :oldId and f.segmentOffset = :oldOffset")
+    int relocateSegmentRecord(@Param("oldId") Long oldId, @Param("oldOffset") Long oldOffset,
+                              @Param("newId") Long newId, @Param("newOffset") Long newOffset, @Param("newPath") String newPath);
+
+    // Cả segment được rebalancer dời sang volume khác: offset giữ nguyên, chỉ đổi path
+    @Transactional
+    @Modifying
+    @Query("update FileEntity f set f.storagePath = :newPath where f.segmentId = :segmentId")
+    int relocateSegment(@Param("segmentId") Long segmentId, @Param("newPath") String newPath);
 }
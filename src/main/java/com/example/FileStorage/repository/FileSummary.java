@@ -0,0 +1,17 @@
+package com.example.FileStorage.repository;
+
+import java.time.LocalDateTime;
+
+// Projection gọn nhẹ của FileEntity, dùng khi cần quét toàn bộ bảng files
+public interface FileSummary {
+    Long getId();
+    Long getUserId();
+    String getFileName();
+    String getFileType();
+    Long getFileSize();
+    String getStoragePath();
+    Long getSegmentId();
+    LocalDateTime getUploadedAt();
+    LocalDateTime getUpdatedAt();
+    LocalDateTime getDeletedAt();
+}
@@ -0,0 +1,80 @@
+package com.example.FileStorage.repository;
+
+import com.example.FileStorage.entity.FileVersion;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+public interface FileVersionRepository extends JpaRepository<FileVersion, Long> {
+    List<FileVersion> findByFileIdOrderByVersionNumberDesc(Long fileId);
+
+    Optional<FileVersion> findByFileIdAndVersionNumber(Long fileId, Integer versionNumber);
+
+    @Query("select v.storagePath from FileVersion v where v.storagePath in :paths")
+    List<String> findExistingStoragePaths(@Param("paths") Collection<String> paths);
+
+    @Query("select v.id as id, v.storagePath as storagePath, v.segmentId as segmentId from FileVersion v where v.id > :afterId order by v.id")
+    List<BlobRef> findBlobRefsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    @Query("select v.id as id, v.storagePath as storagePath, v.segmentId as segmentId from FileVersion v where v.file.id in :fileIds")
+    List<BlobRef> findBlobRefsByFileIds(@Param("fileIds") Collection<Long> fileIds);
+
+    @Modifying
+    @Query("delete from FileVersion v where v.file.id in :fileIds")
+    int deleteByFileIds(@Param("fileIds") Collection<Long> fileIds);
+
+    @Transactional
+    @Modifying
+    @Query("update FileVersion v set v.storagePath = :newPath where v.id = :id and v.storagePath = :oldPath")
+    int relocateBlob(@Param("id") Long id, @Param("oldPath") String oldPath, @Param("newPath") String newPath);
+
+    @Query("select v.segmentId as segmentId, sum(v.fileSize) as liveBytes from FileVersion v " +
+            "where v.segmentId is not null group by v.segmentId")
+    List<SegmentUsage> sumLiveBytesBySegment();
+
+    @Query("select distinct v.segmentOffset as segmentOffset, v.fileSize as fileSize from FileVersion v where v.segmentId = :segmentId")
+    List<SegmentRecord> findSegmentRecords(@Param("segmentId") Long segmentId);
+
+    long countBySegmentId(Long segmentId);
+
+    @Transactional
+    @Modifying
+    @Query("update FileVersion v set v.segmentId = :newId, v.segmentOffset = :newOffset, v.storagePath = :newPath " +
+            "where v.segmentId = :oldId and v.segmentOffset = :oldOffset")
+    int relocateSegmentRecord(@Param("oldId") Long oldId, @Param("oldOffset") Long oldOffset,
+                              @Param("newId") Long newId, @Param("newOffset") Long newOffset, @Param("newPath") String newPath);
+
+    // Cả segment được rebalancer dời sang volume khác: offset giữ nguyên, chỉ đổi path
+    @Transactional
+    @Modifying
+    @Query("update FileVersion v set v.storagePath = :newPath where v.segmentId = :segmentId")
+    int relocateSegment(@Param("segmentId") Long segmentId, @Param("newPath") String newPath);
+
+    @Query("select v.id as id, v.storagePath as storagePath, v.segmentId as segmentId, v.segmentOffset as segmentOffset, " +
+            "v.fileSize as fileSize, v.checksum as checksum from FileVersion v where v.id > :afterId order by v.id")
+    List<ScrubTarget> findScrubTargetsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
+    long countByCorruptedTrue();
+
+    // Có điều kiện storagePath như FileRepository: bỏ qua nếu blob của phiên bản bị dời trong lúc kiểm tra
+    @Transactional
+    @Modifying
+    @Query("update FileVersion v set v.lastVerifiedAt = :verifiedAt, v.corrupted = :corrupted " +
+            "where v.id = :id and v.storagePath = :path")
+    int markVerified(@Param("id") Long id, @Param("path") String path,
+                     @Param("verifiedAt") LocalDateTime verifiedAt, @Param("corrupted") boolean corrupted);
+
+    @Transactional
+    @Modifying
+    @Query("update FileVersion v set v.checksum = :checksum, v.lastVerifiedAt = :verifiedAt " +
+            "where v.id = :id and v.storagePath = :path and v.checksum is null")
+    int backfillChecksum(@Param("id") Long id, @Param("path") String path,
+                         @Param("checksum") String checksum, @Param("verifiedAt") LocalDateTime verifiedAt);
+}
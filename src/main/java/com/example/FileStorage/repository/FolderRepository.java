@@ -0,0 +1,74 @@
+package com.example.FileStorage.repository;
+
+import com.example.FileStorage.entity.Folder;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.List;
+
+// Các truy vấn trên cây dùng bảng folder_closure (ancestor_id, descendant_id, depth):
+// mỗi thao tác trên cả cây con là một câu lệnh theo index, không duyệt từng node
+public interface FolderRepository extends JpaRepository<Folder, Long> {
+    List<Folder> findByUserIdAndParentIsNullOrderByName(Long userId);
+
+    List<Folder> findByParentIdOrderByName(Long parentId);
+
+    @Modifying
+    @Query(value = "insert into folder_closure (ancestor_id, descendant_id, depth) values (:id, :id, 0)", nativeQuery = true)
+    int insertSelf(@Param("id") Long id);
+
+    // Thư mục mới kế thừa mọi tổ tiên của thư mục cha
+    @Modifying
+    @Query(value = "insert into folder_closure (ancestor_id, descendant_id, depth) " +
+            "select ancestor_id, :id, depth + 1 from folder_closure where descendant_id = :parentId", nativeQuery = true)
+    int insertAncestors(@Param("id") Long id, @Param("parentId") Long parentId);
+
+    @Query(value = "select count(*) from folder_closure where ancestor_id = :ancestorId and descendant_id = :descendantId",
+            nativeQuery = true)
+    long countLink(@Param("ancestorId") Long ancestorId, @Param("descendantId") Long descendantId);
+
+    // Chuyển cây con: bỏ liên kết giữa các tổ tiên bên ngoài và mọi node trong cây con...
+    @Modifying
+    @Query(value = "delete from folder_closure " +
+            "where descendant_id in (select descendant_id from folder_closure where ancestor_id = :id) " +
+            "and ancestor_id not in (select descendant_id from folder_closure where ancestor_id = :id)", nativeQuery = true)
+    int detachSubtree(@Param("id") Long id);
+
+    // ...rồi nối mọi tổ tiên của cha mới với mọi node trong cây con
+    @Modifying
+    @Query(value = "insert into folder_closure (ancestor_id, descendant_id, depth) " +
+            "select p.ancestor_id, s.descendant_id, p.depth + s.depth + 1 " +
+            "from folder_closure p cross join folder_closure s " +
+            "where p.descendant_id = :parentId and s.ancestor_id = :id", nativeQuery = true)
+    int attachSubtree(@Param("id") Long id, @Param("parentId") Long parentId);
+
+    // Đường dẫn từ gốc tới thư mục (breadcrumb)
+    @Query(value = "select f.* from folders f join folder_closure c on c.ancestor_id = f.id " +
+            "where c.descendant_id = :id order by c.depth desc", nativeQuery = true)
+    List<Folder> findPath(@Param("id") Long id);
+
+    @Query(value = "select (select cast(count(*) as bigint) - 1 from folder_closure where ancestor_id = :id) as folderCount, " +
+            "cast(count(f.id) as bigint) as fileCount, cast(coalesce(sum(f.file_size), 0) as bigint) as totalBytes " +
+            "from folder_closure c join files f on f.folder_id = c.descendant_id " +
+            "where c.ancestor_id = :id and f.deleted_at is null", nativeQuery = true)
+    FolderSize sumSubtree(@Param("id") Long id);
+
+    // Xóa cả cây con: bỏ parent_id trong cây con trước, vì H2 kiểm tra khóa ngoại theo từng dòng
+    // (SQL Server kiểm tra cuối câu lệnh) nên thứ tự xóa không được phụ thuộc cha - con
+    @Modifying
+    @Query(value = "update folders set parent_id = null " +
+            "where id in (select descendant_id from folder_closure where ancestor_id = :id)", nativeQuery = true)
+    int detachSubtreeParents(@Param("id") Long id);
+
+    // ...rồi các thư mục, bảng closure sau cùng
+    @Modifying
+    @Query(value = "delete from folders where id in (select descendant_id from folder_closure where ancestor_id = :id)",
+            nativeQuery = true)
+    int deleteSubtreeFolders(@Param("id") Long id);
+
+    @Modifying
+    @Query(value = "delete from folder_closure " +
+            "where descendant_id in (select descendant_id from folder_closure where ancestor_id = :id)", nativeQuery = true)
+    int deleteSubtreeLinks(@Param("id") Long id);
+}
@@ -0,0 +1,8 @@
+package com.example.FileStorage.repository;
+
+// Kích thước đệ quy của một thư mục (kể cả mọi thư mục con)
+public interface FolderSize {
+    Long getFolderCount();
+    Long getFileCount();
+    Long getTotalBytes();
+}
@@ -0,0 +1,11 @@
+package com.example.FileStorage.repository;
+
+// Projection cho IntegrityScrubber: vị trí nội dung file và checksum đã lưu
+public interface ScrubTarget {
+    Long getId();
+    String getStoragePath();
+    Long getSegmentId();
+    Long getSegmentOffset();
+    Long getFileSize();
+    String getChecksum();
+}
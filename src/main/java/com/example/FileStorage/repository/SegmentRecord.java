@@ -0,0 +1,7 @@
+package com.example.FileStorage.repository;
+
+// Một bản ghi còn sống trong segment (nhiều dòng có thể dùng chung một bản ghi)
+public interface SegmentRecord {
+    Long getSegmentOffset();
+    Long getFileSize();
+}
@@ -0,0 +1,7 @@
+package com.example.FileStorage.repository;
+
+// Tổng số byte còn được tham chiếu trong một segment
+public interface SegmentUsage {
+    Long getSegmentId();
+    Long getLiveBytes();
+}
@@ -2,7 +2,19 @@ package com.example.FileStorage.repository;
 
 import com.example.FileStorage.entity.Share;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
+import java.util.List;
 
 public interface ShareRepository extends JpaRepository<Share, Long> {
     Share findByShareLink(String shareLink);
-}
\ No newline at end of file
+
+    @Query("select s.id from Share s where s.file.id in :fileIds")
+    List<Long> findIdsByFileIds(@Param("fileIds") Collection<Long> fileIds);
+
+    @Modifying
+    @Query("delete from Share s where s.file.id in :fileIds")
+    int deleteByFileIds(@Param("fileIds") Collection<Long> fileIds);
+}
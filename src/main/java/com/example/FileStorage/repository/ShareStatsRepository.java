@@ -0,0 +1,16 @@
+package com.example.FileStorage.repository;
+
+import com.example.FileStorage.entity.ShareStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
+
+public interface ShareStatsRepository extends JpaRepository<ShareStats, Long> {
+    // Gọi trước khi xóa các share của file bị purge
+    @Modifying
+    @Query(value = "delete from share_stats where share_id in (select id from shares where file_id in :fileIds)",
+            nativeQuery = true)
+    int deleteByFileIds(@Param("fileIds") Collection<Long> fileIds);
+}
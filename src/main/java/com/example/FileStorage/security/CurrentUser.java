@@ -0,0 +1,28 @@
+package com.example.FileStorage.security;
+
+import com.example.FileStorage.service.UserService;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+// User đang gọi request, lấy từ SecurityContext do JwtAuthenticationFilter đặt
+@Component
+public class CurrentUser {
+
+    private final UserService userService;
+
+    public CurrentUser(UserService userService) {
+        this.userService = userService;
+    }
+
+    // null nếu request chưa xác thực
+    public Long getId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return userService.findIdByUsername(authentication.getName());
+    }
+}
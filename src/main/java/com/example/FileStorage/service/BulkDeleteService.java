@@ -0,0 +1,247 @@
+package com.example.FileStorage.service;
+
+import com.example.FileStorage.dto.BulkDeleteJob;
+import com.example.FileStorage.storage.AdmissionLimiter;
+import com.example.FileStorage.storage.BlobStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Xóa hàng loạt file (ví dụ dọn toàn bộ file của user đã rời đi).
+// Khi nhận yêu cầu, các file được tombstone (deleted_at) ngay nên biến mất khỏi danh sách, tìm kiếm, download;
+// sau đó một job nền xóa dòng DB theo lô bằng vài câu lệnh gộp (không cascade từng entity)
+// rồi unlink blob song song với số thread giới hạn. Các job chạy lần lượt trên một thread riêng.
+// Xóa toàn bộ file của user không nạp danh sách id: tombstone bằng một câu update theo user_id,
+// job lấy id theo trang từ DB để gỡ khỏi chỉ mục / cache (một event mỗi trang) rồi dọn như trên.
+// Tombstone còn sót (server dừng giữa chừng, job lỗi) được dọn bởi lượt quét định kỳ.
+@Service
+public class BulkDeleteService {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkDeleteService.class);
+    private static final int TOMBSTONE_BATCH = 1000;
+    private static final int MAX_REMEMBERED_JOBS = 100;
+    private static final long PRESSURE_PAUSE_MS = 200;
+
+    private final FileService fileService;
+    private final BlobStore blobStore;
+    private final AdmissionLimiter admissionLimiter;
+    private final int batchSize;
+    private final Duration staleAfter;
+    private final ExecutorService jobRunner;
+    private final ExecutorService unlinkPool;
+
+    private final Map<String, BulkDeleteJob> jobs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BulkDeleteJob> eldest) {
+            return size() > MAX_REMEMBERED_JOBS && !isActive(eldest.getValue());
+        }
+    };
+    private final AtomicInteger activeJobs = new AtomicInteger();
+    private final AtomicLong sweptFiles = new AtomicLong();
+
+    public BulkDeleteService(
+            FileService fileService,
+            BlobStore blobStore,
+            AdmissionLimiter admissionLimiter,
+            @Value("${file.bulk-delete.batch-size:500}") int batchSize,
+            @Value("${file.bulk-delete.unlink-threads:8}") int unlinkThreads,
+            @Value("${file.bulk-delete.stale-after-minutes:10}") long staleAfterMinutes
+    ) {
+        this.fileService = fileService;
+        this.blobStore = blobStore;
+        this.admissionLimiter = admissionLimiter;
+        // SQL Server giới hạn 2100 tham số mỗi câu lệnh
+        this.batchSize = Math.max(1, Math.min(batchSize, 2000));
+        this.staleAfter = Duration.ofMinutes(staleAfterMinutes);
+        this.jobRunner = Executors.newSingleThreadExecutor(daemon("bulk-delete"));
+        this.unlinkPool = Executors.newFixedThreadPool(Math.max(1, unlinkThreads), daemon("bulk-delete-unlink"));
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // Tombstone đồng bộ rồi trả về job; phần dọn chạy nền.
+    // Gọi trong transaction (ví dụ xóa thư mục): job chỉ bắt đầu sau khi transaction commit
+    public BulkDeleteJob submit(List<Long> fileIds) {
+        List<Long> tombstoned = fileService.tombstoneFiles(new ArrayList<>(new LinkedHashSet<>(fileIds)), TOMBSTONE_BATCH);
+        return enqueue(new BulkDeleteJob(UUID.randomUUID().toString(), tombstoned));
+    }
+
+    public BulkDeleteJob submitForUser(Long userId) {
+        int tombstoned = fileService.tombstoneUserFiles(userId);
+        return enqueue(new BulkDeleteJob(UUID.randomUUID().toString(), userId, tombstoned));
+    }
+
+    private BulkDeleteJob enqueue(BulkDeleteJob job) {
+        synchronized (jobs) {
+            jobs.put(job.getJobId(), job);
+        }
+        activeJobs.incrementAndGet();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            jobRunner.execute(() -> run(job));
+            return job;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    jobRunner.execute(() -> run(job));
+                } else {
+                    job.setStatus(BulkDeleteJob.FAILED);
+                    job.setError("Transaction rolled back");
+                    job.setFinishedAt(LocalDateTime.now());
+                    activeJobs.decrementAndGet();
+                }
+            }
+        });
+        return job;
+    }
+
+    public Optional<BulkDeleteJob> getJob(String jobId) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(jobId));
+        }
+    }
+
+    private static boolean isActive(BulkDeleteJob job) {
+        return BulkDeleteJob.QUEUED.equals(job.getStatus()) || BulkDeleteJob.RUNNING.equals(job.getStatus());
+    }
+
+    private void run(BulkDeleteJob job) {
+        job.setStatus(BulkDeleteJob.RUNNING);
+        job.setStartedAt(LocalDateTime.now());
+        try {
+            if (job.getUserId() != null) {
+                purgeUser(job);
+            } else {
+                List<Long> ids = job.getFileIds();
+                for (int from = 0; from < ids.size(); from += batchSize) {
+                    List<Long> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+                    job.addDeletedBlobs(purgeBatch(batch));
+                    job.addPurgedFiles(batch.size());
+                }
+            }
+            job.setStatus(BulkDeleteJob.COMPLETED);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            job.setStatus(BulkDeleteJob.FAILED);
+            job.setError("Interrupted");
+        } catch (RuntimeException ex) {
+            // Phần còn lại vẫn là tombstone, lượt quét định kỳ sẽ dọn tiếp
+            log.warn("Bulk delete job {} failed: {}", job.getJobId(), ex.getMessage());
+            job.setStatus(BulkDeleteJob.FAILED);
+            job.setError(ex.getMessage());
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+            activeJobs.decrementAndGet();
+        }
+    }
+
+    // Lượt đầu chỉ đọc id để gỡ cả user khỏi chỉ mục / cache / change feed sớm nhất có thể,
+    // lượt sau mới dọn dòng DB và blob (chậm, nhường đĩa khi có tải)
+    private void purgeUser(BulkDeleteJob job) throws InterruptedException {
+        Long userId = job.getUserId();
+        List<Long> page;
+        long afterId = 0;
+        while (!(page = fileService.getTombstonedIds(userId, afterId, batchSize)).isEmpty()) {
+            fileService.announceDeleted(userId, page);
+            afterId = page.get(page.size() - 1);
+        }
+        afterId = 0;
+        while (!(page = fileService.getTombstonedIds(userId, afterId, batchSize)).isEmpty()) {
+            job.addDeletedBlobs(purgeBatch(page));
+            job.addPurgedFiles(page.size());
+            afterId = page.get(page.size() - 1);
+        }
+    }
+
+    // Xóa dòng DB trong một transaction rồi mới unlink blob: crash giữa chừng chỉ để lại blob mồ côi
+    // (StorageReconciler sẽ cách ly), không bao giờ để lại dòng DB trỏ tới blob đã mất
+    private long purgeBatch(List<Long> fileIds) throws InterruptedException {
+        // Nhường đĩa cho upload / download đang chịu tải
+        while (admissionLimiter.isWriteUnderPressure() || admissionLimiter.isReadUnderPressure()) {
+            Thread.sleep(PRESSURE_PAUSE_MS);
+        }
+        List<String> blobs = fileService.purgeTombstoned(fileIds);
+        List<Callable<Boolean>> unlinks = new ArrayList<>();
+        for (String blob : blobs) {
+            unlinks.add(() -> blobStore.delete(blob));
+        }
+        long deleted = 0;
+        for (Future<Boolean> result : unlinkPool.invokeAll(unlinks)) {
+            try {
+                if (result.get()) {
+                    deleted++;
+                }
+            } catch (ExecutionException ex) {
+                log.debug("Unlink failed: {}", ex.getCause().getMessage());
+            }
+        }
+        return deleted;
+    }
+
+    // Dọn tombstone bị bỏ lại khi không có job nào đang chạy
+    @Scheduled(fixedDelayString = "${file.bulk-delete.sweep-interval-ms:600000}")
+    public void purgeAbandoned() {
+        if (activeJobs.get() > 0) {
+            return;
+        }
+        LocalDateTime before = LocalDateTime.now().minus(staleAfter);
+        try {
+            List<Long> batch;
+            while (activeJobs.get() == 0
+                    && !(batch = fileService.getTombstonedBefore(before, PageRequest.of(0, batchSize))).isEmpty()) {
+                purgeBatch(batch);
+                sweptFiles.addAndGet(batch.size());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            log.warn("Tombstone sweep failed: {}", ex.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeJobs", activeJobs.get());
+        stats.put("pendingTombstones", fileService.countTombstoned());
+        stats.put("sweptFiles", sweptFiles.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+        unlinkPool.shutdownNow();
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.FileStorage.service;
+
+import com.example.FileStorage.dto.ChangeEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Change feed theo user qua Server-Sent Events, thay cho việc client poll danh sách file.
+// Mỗi user có một journal giới hạn các event gần nhất; số thứ tự tăng dần chung cho mọi user, id của event là
+// "<epoch>-<seq>" (epoch = thời điểm khởi động) nên client kết nối lại với Last-Event-ID
+// nhận tiếp các event còn trong journal, hoặc một event "resync" nếu không thể nối tiếp
+// (journal đã trôi qua, feed đã bị dọn hoặc server đã khởi động lại) để tải lại toàn bộ danh sách.
+// Feed không còn subscriber và không có event trong feed-idle-ms bị dọn cùng journal của nó;
+// số thứ tự chung bảo đảm feed tạo lại không cấp lại id cũ.
+// Kết nối SSE là async request nên kết nối rảnh không giữ thread; việc gửi chạy trên virtual thread,
+// mỗi subscriber một hàng đợi riêng để client chậm không chặn người khác.
+@Service
+public class ChangeFeedService {
+
+    static final String RESYNC_EVENT = "resync";
+
+    private final long epoch = System.currentTimeMillis();
+    private final int journalSize;
+    private final long emitterTimeoutMillis;
+    private final long feedIdleMillis;
+    private final AtomicLong sequence = new AtomicLong();
+    // Mọi thay đổi trên một feed (ghi journal, thêm subscriber, dọn feed) chạy trong compute của map
+    private final Map<Long, UserFeed> feeds = new ConcurrentHashMap<>();
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong publishedEvents = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+    private final AtomicLong droppedSubscribers = new AtomicLong();
+    private final AtomicLong evictedFeeds = new AtomicLong();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    public ChangeFeedService(
+            @Value("${file.changes.journal-size:1000}") int journalSize,
+            @Value("${file.changes.emitter-timeout-ms:1800000}") long emitterTimeoutMillis,
+            @Value("${file.changes.feed-idle-ms:600000}") long feedIdleMillis
+    ) {
+        this.journalSize = journalSize;
+        this.emitterTimeoutMillis = emitterTimeoutMillis;
+        this.feedIdleMillis = feedIdleMillis;
+    }
+
+    // Chỉ nhận event sau khi transaction commit (hoặc ngay lập tức nếu không có transaction)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(ChangeEvent event) {
+        feeds.compute(event.getUserId(), (id, existing) -> {
+            UserFeed feed = existing != null ? existing : new UserFeed(sequence.get());
+            feed.lastSeq = sequence.incrementAndGet();
+            feed.lastActivity = System.currentTimeMillis();
+            event.setId(epoch + "-" + feed.lastSeq);
+            feed.journal.addLast(event);
+            if (feed.journal.size() > journalSize) {
+                feed.floorSeq = parseSeq(feed.journal.removeFirst().getId());
+            }
+            for (Subscriber subscriber : feed.subscribers) {
+                subscriber.enqueue(SseEmitter.event().id(event.getId()).name(event.getType()).data(event));
+            }
+            return feed;
+        });
+        publishedEvents.incrementAndGet();
+    }
+
+    // lastEventId: Last-Event-ID của trình duyệt hoặc tham số since; null = chỉ nhận event mới
+    public SseEmitter subscribe(Long userId, String lastEventId) {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter);
+        UserFeed feed = feeds.compute(userId, (id, existing) -> {
+            UserFeed current = existing != null ? existing : new UserFeed(sequence.get());
+            if (lastEventId != null && !lastEventId.isBlank()) {
+                replay(current, subscriber, lastEventId.trim());
+            }
+            current.subscribers.add(subscriber);
+            return current;
+        });
+        subscriberCount.incrementAndGet();
+        Runnable unsubscribe = () -> {
+            if (feed.subscribers.remove(subscriber)) {
+                feed.lastActivity = System.currentTimeMillis();
+                subscriberCount.decrementAndGet();
+            }
+        };
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(ex -> unsubscribe.run());
+        return emitter;
+    }
+
+    private void replay(UserFeed feed, Subscriber subscriber, String lastEventId) {
+        long since = parseSeq(lastEventId);
+        // Client đứng sau journal, feed đã bị dọn rồi tạo lại, hoặc id thuộc lần chạy khác: không nối tiếp được
+        if (since < 0 || since > sequence.get() || since < feed.floorSeq) {
+            resyncs.incrementAndGet();
+            subscriber.enqueue(SseEmitter.event().id(epoch + "-" + feed.lastSeq).name(RESYNC_EVENT).data(RESYNC_EVENT));
+            return;
+        }
+        for (ChangeEvent event : feed.journal) {
+            if (parseSeq(event.getId()) > since) {
+                subscriber.enqueue(SseEmitter.event().id(event.getId()).name(event.getType()).data(event));
+            }
+        }
+    }
+
+    private long parseSeq(String eventId) {
+        int dash = eventId.indexOf('-');
+        try {
+            if (dash < 0 || Long.parseLong(eventId.substring(0, dash)) != epoch) {
+                return -1;
+            }
+            return Long.parseLong(eventId.substring(dash + 1));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    // Comment SSE định kỳ giữ kết nối qua proxy và phát hiện client đã ngắt
+    @Scheduled(fixedRateString = "${file.changes.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (UserFeed feed : feeds.values()) {
+            for (Subscriber subscriber : feed.subscribers) {
+                subscriber.enqueue(SseEmitter.event().comment("heartbeat"));
+            }
+        }
+    }
+
+    // Dọn feed không còn subscriber và đã rảnh quá feed-idle-ms; client kết nối lại sau đó nhận resync
+    @Scheduled(fixedDelayString = "${file.changes.evict-interval-ms:60000}")
+    public void evictIdleFeeds() {
+        long idleBefore = System.currentTimeMillis() - feedIdleMillis;
+        for (Long userId : feeds.keySet()) {
+            feeds.computeIfPresent(userId, (id, feed) -> {
+                if (!feed.subscribers.isEmpty() || feed.lastActivity > idleBefore) {
+                    return feed;
+                }
+                evictedFeeds.incrementAndGet();
+                return null;
+            });
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("epoch", epoch);
+        stats.put("users", feeds.size());
+        stats.put("subscribers", subscriberCount.get());
+        stats.put("publishedEvents", publishedEvents.get());
+        stats.put("resyncs", resyncs.get());
+        stats.put("droppedSubscribers", droppedSubscribers.get());
+        stats.put("evictedFeeds", evictedFeeds.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (UserFeed feed : feeds.values()) {
+            feed.subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        }
+        sender.shutdownNow();
+    }
+
+    private static final class UserFeed {
+        private final ArrayDeque<ChangeEvent> journal = new ArrayDeque<>();
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+        // Event có số thứ tự <= floorSeq có thể đã mất khỏi journal (trôi qua hoặc trước khi feed được tạo)
+        private long floorSeq;
+        private long lastSeq;
+        private volatile long lastActivity = System.currentTimeMillis();
+
+        private UserFeed(long floorSeq) {
+            this.floorSeq = floorSeq;
+            this.lastSeq = floorSeq;
+        }
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final Queue<SseEmitter.SseEventBuilder> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        private void enqueue(SseEmitter.SseEventBuilder event) {
+            if (closed) {
+                return;
+            }
+            // Client không theo kịp: ngắt kết nối, khi kết nối lại sẽ được replay hoặc resync
+            if (size.incrementAndGet() > journalSize) {
+                close();
+                droppedSubscribers.incrementAndGet();
+                return;
+            }
+            pending.add(event);
+            if (draining.compareAndSet(false, true)) {
+                sender.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                SseEmitter.SseEventBuilder event;
+                while (!closed && (event = pending.poll()) != null) {
+                    size.decrementAndGet();
+                    try {
+                        emitter.send(event);
+                    } catch (IOException | IllegalStateException ex) {
+                        close();
+                    }
+                }
+                draining.set(false);
+            } while (!closed && !pending.isEmpty() && draining.compareAndSet(false, true));
+        }
+
+        private void close() {
+            closed = true;
+            pending.clear();
+            emitter.complete();
+        }
+    }
+}
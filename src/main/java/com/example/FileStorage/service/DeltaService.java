@@ -0,0 +1,233 @@
+package com.example.FileStorage.service;
+
+import com.example.FileStorage.dto.BlockSignature;
+import com.example.FileStorage.dto.FileSignatures;
+import com.example.FileStorage.entity.FileEntity;
+import com.example.FileStorage.storage.AdaptiveLimit;
+import com.example.FileStorage.storage.AdmissionLimiter;
+import com.example.FileStorage.storage.BlobChecksum;
+import com.example.FileStorage.storage.BlobStore;
+import com.example.FileStorage.storage.RollingChecksum;
+import com.example.FileStorage.storage.StoredBlob;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+// Upload kiểu rsync: server công bố chữ ký từng khối của phiên bản hiện tại,
+// client chỉ gửi các khối thay đổi, server ghép lại phiên bản mới.
+//
+// Định dạng delta (application/octet-stream), lặp các lệnh:
+//   0x01 <int startBlock> <int blockCount>  -> chép blockCount khối liên tiếp từ phiên bản cũ
+//   0x02 <int length> <length bytes>        -> dữ liệu mới
+//   0x00                                    -> kết thúc
+// Controller đã qua admission lúc nhận request; ở đây permit đọc / ghi chỉ được giữ quanh từng lần chạm đĩa,
+// không qua lúc chờ delta từ client.
+@Service
+public class DeltaService {
+
+    static final int OP_END = 0x00;
+    static final int OP_COPY = 0x01;
+    static final int OP_DATA = 0x02;
+
+    private static final int MIN_BLOCK_SIZE = 2 * 1024;
+    private static final int MAX_BLOCK_SIZE = 1024 * 1024;
+    private static final int MAX_LITERAL = 64 * 1024 * 1024;
+
+    private final FileService fileService;
+    private final BlobStore blobStore;
+    private final AdmissionLimiter admissionLimiter;
+
+    public DeltaService(FileService fileService, BlobStore blobStore, AdmissionLimiter admissionLimiter) {
+        this.fileService = fileService;
+        this.blobStore = blobStore;
+        this.admissionLimiter = admissionLimiter;
+    }
+
+    // Giống rsync: kích thước khối ~ căn bậc hai kích thước file, làm tròn theo KB
+    public int defaultBlockSize(long fileSize) {
+        long size = (long) Math.sqrt(Math.max(fileSize, 1)) / 1024 * 1024;
+        return (int) Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, size));
+    }
+
+    public FileSignatures computeSignatures(FileEntity file, Integer requestedBlockSize) throws IOException {
+        Path path = Paths.get(file.getStoragePath());
+        long offset = baseOffset(file);
+        long fileSize = baseSize(file, path);
+        int blockSize = requestedBlockSize == null ? defaultBlockSize(fileSize) : checkBlockSize(requestedBlockSize);
+
+        MessageDigest md5 = md5();
+        List<BlockSignature> blocks = new ArrayList<>();
+        byte[] buffer = new byte[blockSize];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ).position(offset);
+             InputStream in = new BufferedInputStream(Channels.newInputStream(channel), Math.max(blockSize, 64 * 1024))) {
+            int index = 0;
+            int read;
+            long remaining = fileSize;
+            while (remaining > 0 && (read = readBlock(in, buffer, (int) Math.min(blockSize, remaining))) > 0) {
+                remaining -= read;
+                md5.update(buffer, 0, read);
+                blocks.add(new BlockSignature(index++, RollingChecksum.of(buffer, 0, read),
+                        HexFormat.of().formatHex(md5.digest())));
+            }
+        }
+
+        FileSignatures signatures = new FileSignatures();
+        signatures.setFileId(file.getId());
+        signatures.setVersion(file.getCurrentVersion());
+        signatures.setBlockSize(blockSize);
+        signatures.setFileSize(fileSize);
+        signatures.setBlocks(blocks);
+        return signatures;
+    }
+
+    // Ghép phiên bản mới từ phiên bản hiện tại + delta; mỗi khối cũ chỉ được đọc khi client tham chiếu tới
+    public FileEntity applyDelta(FileEntity file, int baseVersion, int blockSize, InputStream delta) throws IOException {
+        checkBlockSize(blockSize);
+        Path base = Paths.get(file.getStoragePath());
+        long baseOffset = baseOffset(file);
+        Path target = blobStore.newStagingPath(file.getFileName());
+        long written = 0;
+        MessageDigest digest = BlobChecksum.newDigest();
+        try (FileChannel in = FileChannel.open(base, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             DataInputStream ops = new DataInputStream(new BufferedInputStream(delta))) {
+            long baseSize = baseSize(file, base);
+            long blockCount = (baseSize + blockSize - 1) / blockSize;
+            byte[] buffer = new byte[64 * 1024];
+            ByteBuffer chunkBuffer = ByteBuffer.wrap(buffer);
+            while (true) {
+                int op = ops.read();
+                if (op == OP_END) {
+                    break;
+                }
+                if (op == OP_COPY) {
+                    long start = ops.readInt();
+                    long count = ops.readInt();
+                    if (start < 0 || count <= 0 || start + count > blockCount) {
+                        throw new IllegalArgumentException("❌ Block range out of bounds: " + start + "+" + count);
+                    }
+                    long position = baseOffset + start * blockSize;
+                    long length = Math.min(baseSize, (start + count) * blockSize) - start * blockSize;
+                    // Chép qua buffer thay vì transferTo để băm luôn trong lúc ghép, không phải đọc lại file tạm
+                    long remaining = length;
+                    while (remaining > 0) {
+                        chunkBuffer.clear().limit((int) Math.min(remaining, buffer.length));
+                        int read = in.read(chunkBuffer, position);
+                        if (read <= 0) {
+                            throw new IOException("Unexpected end of base version");
+                        }
+                        digest.update(buffer, 0, read);
+                        try (AdaptiveLimit.Permit permit = writeSlot()) {
+                            long started = System.nanoTime();
+                            writeFully(out, chunkBuffer.flip());
+                            permit.recordLatency(System.nanoTime() - started);
+                        }
+                        position += read;
+                        remaining -= read;
+                    }
+                    written += length;
+                } else if (op == OP_DATA) {
+                    int length = ops.readInt();
+                    if (length < 0 || length > MAX_LITERAL) {
+                        throw new IllegalArgumentException("❌ Invalid literal length: " + length);
+                    }
+                    int remaining = length;
+                    while (remaining > 0) {
+                        int chunk = Math.min(remaining, buffer.length);
+                        ops.readFully(buffer, 0, chunk);
+                        digest.update(buffer, 0, chunk);
+                        try (AdaptiveLimit.Permit permit = writeSlot()) {
+                            long started = System.nanoTime();
+                            writeFully(out, ByteBuffer.wrap(buffer, 0, chunk));
+                            permit.recordLatency(System.nanoTime() - started);
+                        }
+                        remaining -= chunk;
+                    }
+                    written += length;
+                } else {
+                    throw new IllegalArgumentException(op < 0 ? "❌ Delta stream is truncated" : "❌ Unknown delta op: " + op);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(target);
+            throw ex;
+        }
+
+        StoredBlob committed = blobStore.commit(target, BlobChecksum.hex(digest));
+        try {
+            return fileService.commitNewVersion(file.getId(), baseVersion, committed, written);
+        } catch (RuntimeException ex) {
+            blobStore.deleteAll(committed.getPath().toString(), committed.getReplicaPaths());
+            throw ex;
+        } finally {
+            blobStore.release(committed);
+        }
+    }
+
+    private int readBlock(InputStream in, byte[] buffer, int length) throws IOException {
+        try (AdaptiveLimit.Permit permit = admissionLimiter.acquireReadSlot()) {
+            long started = System.nanoTime();
+            int read = in.readNBytes(buffer, 0, length);
+            permit.recordLatency(System.nanoTime() - started);
+            return read;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Signature computation interrupted");
+        }
+    }
+
+    private AdaptiveLimit.Permit writeSlot() throws IOException {
+        try {
+            return admissionLimiter.acquireWriteSlot();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Delta upload interrupted");
+        }
+    }
+
+    // File nhỏ nằm trong segment: phiên bản hiện tại là vùng [segmentOffset, segmentOffset + fileSize) của file segment
+    private static long baseOffset(FileEntity file) {
+        return file.getSegmentId() == null ? 0 : file.getSegmentOffset();
+    }
+
+    private static long baseSize(FileEntity file, Path path) throws IOException {
+        return file.getSegmentId() == null ? Files.size(path) : file.getFileSize();
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static int checkBlockSize(int blockSize) {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("❌ Block size must be between " + MIN_BLOCK_SIZE + " and " + MAX_BLOCK_SIZE);
+        }
+        return blockSize;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
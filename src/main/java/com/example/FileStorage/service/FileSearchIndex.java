@@ -0,0 +1,450 @@
+package com.example.FileStorage.service;
+
+import com.example.FileStorage.dto.FileIndexEvent;
+import com.example.FileStorage.dto.FileSearchResult;
+import com.example.FileStorage.entity.FileEntity;
+import com.example.FileStorage.repository.FileRepository;
+import com.example.FileStorage.repository.FileSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+// Chỉ mục ngược (inverted index) trong bộ nhớ, tách riêng theo từng user.
+// Mỗi token của tên file / loại file được đánh chỉ mục theo tiền tố (prefix)
+// và trigram, nên tìm "rep" sẽ ra "report.pdf" và tìm "port" cũng ra "report.pdf".
+// Thay đổi đến qua FileIndexEvent sau khi transaction commit, nên rollback không để lại kết quả ma.
+// Rebuild dựng map mới ở bên cạnh rồi thay bằng một phép gán volatile; các thay đổi đến trong lúc
+// rebuild được ghi lại và áp lại lên map mới trước khi thay, nên không bị mất và tìm kiếm không bao giờ thấy chỉ mục rỗng.
+@Component
+public class FileSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(FileSearchIndex.class);
+
+    private static final int MAX_PREFIX = 16;
+    private static final int GRAM = 3;
+    private static final int REBUILD_BATCH = 5000;
+    // Từ khóa khớp quá 1/SCAN_RATIO số file: duyệt theo thứ tự kết quả rẻ hơn đi qua postings rồi sắp xếp
+    private static final int SCAN_RATIO = 8;
+    // Thứ tự kết quả: mới upload trước, hòa thì theo id để mỗi file có đúng một vị trí
+    private static final Comparator<FileSearchResult> ORDER = Comparator
+            .comparing(FileSearchResult::getUploadedAt, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(FileSearchResult::getId);
+    private static final Pattern SPLIT = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final FileRepository fileRepository;
+    private volatile Map<Long, UserIndex> indexes = new ConcurrentHashMap<>();
+
+    // Thay đổi lấy read lock (chạy song song với nhau), rebuild lấy write lock khi bắt đầu ghi lại và khi thay map
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    // Chỉ một rebuild chạy một lúc; ReentrantLock thay cho synchronized để virtual thread không bị ghim
+    // vào carrier thread trong lúc chờ JDBC
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    // Khác null trong lúc rebuild: các thay đổi cần áp lại lên map mới, theo đúng thứ tự
+    private Queue<FileIndexEvent> pendingDuringRebuild;
+
+    public FileSearchIndex(FileRepository fileRepository) {
+        this.fileRepository = fileRepository;
+    }
+
+    // Chỉ chạy sau khi transaction commit (hoặc ngay lập tức nếu không có transaction)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onIndexEvent(FileIndexEvent event) {
+        swapLock.readLock().lock();
+        try {
+            Queue<FileIndexEvent> pending = pendingDuringRebuild;
+            if (event.getDocument() != null) {
+                indexFor(indexes, event.getUserId()).apply(event, pending);
+                return;
+            }
+            UserIndex index = indexes.get(event.getUserId());
+            if (index != null) {
+                index.apply(event, pending);
+            } else if (pending != null) {
+                pending.add(event);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    public static FileSearchResult toDocument(FileEntity file) {
+        FileSearchResult doc = new FileSearchResult();
+        doc.setId(file.getId());
+        doc.setFileName(file.getFileName());
+        doc.setFileType(file.getFileType());
+        doc.setFileSize(file.getFileSize());
+        doc.setUploadedAt(file.getUploadedAt());
+        doc.setUpdatedAt(file.getUpdatedAt());
+        return doc;
+    }
+
+    public List<FileSearchResult> search(Long userId, String query, String type,
+                                         Long minSize, Long maxSize,
+                                         LocalDateTime from, LocalDateTime to, int limit) {
+        UserIndex index = indexes.get(userId);
+        if (index == null) {
+            return List.of();
+        }
+        return index.search(tokenize(query), type == null ? null : normalize(type),
+                minSize, maxSize, from, to, limit);
+    }
+
+    // Dựng lại toàn bộ chỉ mục từ DB, đọc theo lô để không giữ hết entity trong bộ nhớ.
+    // Tìm kiếm vẫn dùng chỉ mục cũ cho tới khi map mới được thay vào.
+    public long rebuild() {
+        rebuildLock.lock();
+        try {
+            return rebuildIndexes();
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private long rebuildIndexes() {
+        swapLock.writeLock().lock();
+        try {
+            pendingDuringRebuild = new ConcurrentLinkedQueue<>();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        try {
+            Map<Long, UserIndex> fresh = new ConcurrentHashMap<>();
+            long afterId = 0;
+            long count = 0;
+            while (true) {
+                List<FileSummary> batch = fileRepository.findSummariesAfter(afterId, PageRequest.of(0, REBUILD_BATCH));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                for (FileSummary summary : batch) {
+                    afterId = summary.getId();
+                    if (summary.getDeletedAt() != null) {
+                        continue;
+                    }
+                    FileSearchResult doc = new FileSearchResult();
+                    doc.setId(summary.getId());
+                    doc.setFileName(summary.getFileName());
+                    doc.setFileType(summary.getFileType());
+                    doc.setFileSize(summary.getFileSize());
+                    doc.setUploadedAt(summary.getUploadedAt());
+                    doc.setUpdatedAt(summary.getUpdatedAt());
+                    indexFor(fresh, summary.getUserId()).put(doc);
+                    count++;
+                }
+            }
+
+            swapLock.writeLock().lock();
+            try {
+                int replayed = 0;
+                for (FileIndexEvent event : pendingDuringRebuild) {
+                    indexFor(fresh, event.getUserId()).apply(event, null);
+                    replayed++;
+                }
+                indexes = fresh;
+                pendingDuringRebuild = null;
+                log.info("Search index rebuilt: {} files, {} users, {} changes replayed", count, fresh.size(), replayed);
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+            return count;
+        } finally {
+            swapLock.writeLock().lock();
+            try {
+                pendingDuringRebuild = null;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        rebuild();
+    }
+
+    private static UserIndex indexFor(Map<Long, UserIndex> target, Long userId) {
+        return target.computeIfAbsent(userId, id -> new UserIndex());
+    }
+
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("")
+                .replace('đ', 'd').replace('Đ', 'D')
+                .toLowerCase(Locale.ROOT);
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        for (String token : SPLIT.split(normalize(text))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // Các khóa chỉ mục của một token: "p:" cho tiền tố, "g:" cho trigram
+    private static Set<String> keysOf(String token) {
+        Set<String> keys = new HashSet<>();
+        for (int i = 1; i <= Math.min(token.length(), MAX_PREFIX); i++) {
+            keys.add("p:" + token.substring(0, i));
+        }
+        for (int i = 0; i + GRAM <= token.length(); i++) {
+            keys.add("g:" + token.substring(i, i + GRAM));
+        }
+        return keys;
+    }
+
+    private static final class UserIndex {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, Set<Long>> postings = new HashMap<>();
+        private final Map<Long, FileSearchResult> docs = new HashMap<>();
+        // Cùng các doc, sắp sẵn theo ORDER để tìm kiếm không phải sắp xếp lại
+        private final TreeSet<FileSearchResult> order = new TreeSet<>(ORDER);
+        private final Map<Long, Set<String>> docKeys = new HashMap<>();
+        private final Map<Long, String> docText = new HashMap<>();
+
+        void put(FileSearchResult doc) {
+            put(doc, null, null);
+        }
+
+        private void put(FileSearchResult doc, Queue<FileIndexEvent> pending, FileIndexEvent event) {
+            List<String> tokens = tokenize(doc.getFileName());
+            tokens.addAll(tokenize(doc.getFileType()));
+            Set<String> keys = new HashSet<>();
+            for (String token : tokens) {
+                keys.addAll(keysOf(token));
+            }
+            lock.writeLock().lock();
+            try {
+                removeLocked(doc.getId());
+                docs.put(doc.getId(), doc);
+                order.add(doc);
+                docKeys.put(doc.getId(), keys);
+                docText.put(doc.getId(), String.join(" ", tokens));
+                for (String key : keys) {
+                    postings.computeIfAbsent(key, k -> new HashSet<>()).add(doc.getId());
+                }
+                if (pending != null) {
+                    pending.add(event);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // Áp một thay đổi; trong lúc rebuild thì ghi lại ngay dưới cùng lock để thứ tự áp lại khớp thứ tự áp ở đây
+        void apply(FileIndexEvent event, Queue<FileIndexEvent> pending) {
+            if (event.getDocument() != null) {
+                put(event.getDocument(), pending, event);
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                removeLocked(event.getFileId());
+                if (pending != null) {
+                    pending.add(event);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void removeLocked(Long fileId) {
+            FileSearchResult old = docs.remove(fileId);
+            if (old != null) {
+                order.remove(old);
+            }
+            docText.remove(fileId);
+            Set<String> keys = docKeys.remove(fileId);
+            if (keys == null) {
+                return;
+            }
+            for (String key : keys) {
+                Set<Long> ids = postings.get(key);
+                if (ids != null) {
+                    ids.remove(fileId);
+                    if (ids.isEmpty()) {
+                        postings.remove(key);
+                    }
+                }
+            }
+        }
+
+        List<FileSearchResult> search(List<String> terms, String type, Long minSize, Long maxSize,
+                                      LocalDateTime from, LocalDateTime to, int limit) {
+            lock.readLock().lock();
+            try {
+                List<Term> matchers = new ArrayList<>();
+                for (String text : terms) {
+                    Term term = new Term(text);
+                    if (term.estimate() == 0) {
+                        return List.of();
+                    }
+                    matchers.add(term);
+                }
+                matchers.sort(Comparator.comparingLong(Term::estimate));
+                Predicate<FileSearchResult> filter = doc -> accept(doc, type, minSize, maxSize, from, to);
+
+                // Không có từ khóa hoặc từ khóa phổ biến: duyệt theo thứ tự sẵn có, dừng ngay khi đủ limit
+                if (matchers.isEmpty() || matchers.get(0).estimate() * SCAN_RATIO >= docs.size()) {
+                    List<FileSearchResult> results = new ArrayList<>();
+                    for (FileSearchResult doc : order) {
+                        if (matchesAll(doc.getId(), matchers, 0) && filter.test(doc)) {
+                            results.add(doc);
+                            if (results.size() >= limit) {
+                                break;
+                            }
+                        }
+                    }
+                    return results;
+                }
+
+                // Từ khóa hiếm: chỉ đi qua postings của từ khóa nhỏ nhất, các từ khóa còn lại được kiểm tra
+                // từng id theo kích thước tăng dần (dừng ở cái đầu tiên không khớp); chỉ giữ limit kết quả đầu
+                Term driver = matchers.get(0);
+                PriorityQueue<FileSearchResult> top = new PriorityQueue<>(limit, ORDER.reversed());
+                for (Long id : driver.prefix) {
+                    offer(top, limit, id, matchers, filter);
+                }
+                if (driver.grams != null) {
+                    for (Long id : driver.grams.get(0)) {
+                        if (!driver.prefix.contains(id) && driver.matchesGrams(id)) {
+                            offer(top, limit, id, matchers, filter);
+                        }
+                    }
+                }
+                List<FileSearchResult> results = new ArrayList<>(top);
+                results.sort(ORDER);
+                return results;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void offer(PriorityQueue<FileSearchResult> top, int limit, Long id, List<Term> matchers,
+                           Predicate<FileSearchResult> filter) {
+            if (!matchesAll(id, matchers, 1)) {
+                return;
+            }
+            FileSearchResult doc = docs.get(id);
+            if (doc == null || !filter.test(doc)) {
+                return;
+            }
+            if (top.size() < limit) {
+                top.add(doc);
+            } else if (ORDER.compare(doc, top.peek()) < 0) {
+                top.poll();
+                top.add(doc);
+            }
+        }
+
+        private static boolean matchesAll(Long id, List<Term> matchers, int from) {
+            for (int i = from; i < matchers.size(); i++) {
+                if (!matchers.get(i).matches(id)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Một từ khóa khớp nếu nó là tiền tố của token, hoặc xuất hiện bên trong token (qua trigram, xác nhận lại trên tên).
+        // Chỉ giữ tham chiếu tới postings, không chép tập nào
+        private final class Term {
+
+            private final String text;
+            private final Set<Long> prefix;
+            // Postings của từng trigram, nhỏ nhất trước; null nếu từ khóa ngắn hơn GRAM hoặc có trigram không tồn tại
+            private final List<Set<Long>> grams;
+
+            private Term(String text) {
+                this.text = text;
+                this.prefix = text.length() <= MAX_PREFIX ? postings.getOrDefault("p:" + text, Set.of()) : Set.of();
+                List<Set<Long>> sets = text.length() >= GRAM ? new ArrayList<>() : null;
+                for (int i = 0; sets != null && i + GRAM <= text.length(); i++) {
+                    Set<Long> ids = postings.get("g:" + text.substring(i, i + GRAM));
+                    if (ids == null) {
+                        sets = null;
+                    } else {
+                        sets.add(ids);
+                    }
+                }
+                if (sets != null) {
+                    sets.sort(Comparator.comparingInt(Set::size));
+                }
+                this.grams = sets;
+            }
+
+            // Cận trên số id khớp
+            private long estimate() {
+                return prefix.size() + (grams == null ? 0 : grams.get(0).size());
+            }
+
+            private boolean matches(Long id) {
+                return prefix.contains(id) || matchesGrams(id);
+            }
+
+            private boolean matchesGrams(Long id) {
+                if (grams == null) {
+                    return false;
+                }
+                for (Set<Long> ids : grams) {
+                    if (!ids.contains(id)) {
+                        return false;
+                    }
+                }
+                return docText.getOrDefault(id, "").contains(text);
+            }
+        }
+
+        private static boolean accept(FileSearchResult doc, String type, Long minSize, Long maxSize,
+                                      LocalDateTime from, LocalDateTime to) {
+            if (type != null && (doc.getFileType() == null || !normalize(doc.getFileType()).contains(type))) {
+                return false;
+            }
+            long size = doc.getFileSize() == null ? 0 : doc.getFileSize();
+            if (minSize != null && size < minSize) {
+                return false;
+            }
+            if (maxSize != null && size > maxSize) {
+                return false;
+            }
+            LocalDateTime uploadedAt = doc.getUploadedAt();
+            if (from != null && (uploadedAt == null || uploadedAt.isBefore(from))) {
+                return false;
+            }
+            return to == null || (uploadedAt != null && !uploadedAt.isAfter(to));
+        }
+    }
+}
@@ -1,35 +1,350 @@
 package com.example.FileStorage.service;
 
+import com.example.FileStorage.dto.ChangeEvent;
+import com.example.FileStorage.dto.FileIndexEvent;
+import com.example.FileStorage.dto.FileSearchResult;
 import com.example.FileStorage.entity.FileEntity;
+import com.example.FileStorage.entity.FileVersion;
+import com.example.FileStorage.entity.User;
+import com.example.FileStorage.repository.ActivityLogRepository;
+import com.example.FileStorage.repository.BlobRef;
 import com.example.FileStorage.repository.FileRepository;
+import com.example.FileStorage.repository.FileSummary;
+import com.example.FileStorage.repository.FileVersionRepository;
+import com.example.FileStorage.repository.ShareRepository;
+import com.example.FileStorage.repository.ShareStatsRepository;
+import com.example.FileStorage.storage.BlobStore;
+import com.example.FileStorage.storage.StoredBlob;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class FileService {
 
     private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final FileSearchIndex searchIndex;
+    private final BlobStore blobStore;
+    private final ShareRepository shareRepository;
+    private final ShareStatsRepository shareStatsRepository;
+    private final ShareStatsService shareStatsService;
+    private final ActivityLogRepository activityLogRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public FileService(FileRepository fileRepository) {
+    public FileService(FileRepository fileRepository, FileVersionRepository fileVersionRepository,
+                       FileSearchIndex searchIndex, BlobStore blobStore, ShareRepository shareRepository,
+                       ShareStatsRepository shareStatsRepository, ShareStatsService shareStatsService,
+                       ActivityLogRepository activityLogRepository, ApplicationEventPublisher eventPublisher) {
         this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.searchIndex = searchIndex;
+        this.blobStore = blobStore;
+        this.shareRepository = shareRepository;
+        this.shareStatsRepository = shareStatsRepository;
+        this.shareStatsService = shareStatsService;
+        this.activityLogRepository = activityLogRepository;
+        this.eventPublisher = eventPublisher;
     }
 
     public List<FileEntity> getFilesByUser(Long userId) {
-        return fileRepository.findByUserId(userId);
+        return fileRepository.findByUserIdAndDeletedAtIsNull(userId);
     }
 
+    // File đã bị bulk delete (tombstone) được coi như không tồn tại
     public Optional<FileEntity> getFileById(Long id) {
-        return fileRepository.findById(id);
+        return fileRepository.findById(id).filter(file -> file.getDeletedAt() == null);
     }
 
     public FileEntity saveFile(FileEntity file) {
-        return fileRepository.save(file);
+        boolean created = file.getId() == null;
+        FileEntity saved = fileRepository.save(file);
+        indexLater(saved);
+        if (created) {
+            publish(saved.getUser().getId(), ChangeEvent.FILE_UPLOADED, saved);
+        }
+        return saved;
     }
 
+    public Optional<FileEntity> renameFile(Long id, String newName) {
+        return getFileById(id).map(file -> {
+            file.setFileName(newName);
+            file.setUpdatedAt(LocalDateTime.now());
+            FileEntity saved = saveFile(file);
+            publish(saved.getUser().getId(), ChangeEvent.FILE_RENAMED, saved);
+            return saved;
+        });
+    }
+
+    // Chỉ mục tìm kiếm được cập nhật sau khi transaction (nếu có) commit, với ảnh chụp metadata tại thời điểm này
+    private void indexLater(FileEntity file) {
+        eventPublisher.publishEvent(FileIndexEvent.index(file.getUser().getId(), FileSearchIndex.toDocument(file)));
+    }
+
+    private void unindexLater(Long userId, Long fileId) {
+        eventPublisher.publishEvent(FileIndexEvent.remove(userId, fileId));
+    }
+
+    // Event được ChangeFeedService nhận sau khi transaction (nếu có) commit
+    private void publish(Long userId, String type, FileEntity file) {
+        eventPublisher.publishEvent(new ChangeEvent(userId, type, file.getId(), file.getFileName(), null));
+    }
+
+    // Lưu phiên bản hiện tại thành FileVersion rồi trỏ file sang blob mới.
+    // Khóa dòng để hai lần cập nhật đồng thời trên cùng phiên bản gốc không ghi đè nhau.
+    @Transactional
+    public FileEntity commitNewVersion(Long fileId, int baseVersion, StoredBlob newBlob, long newSize) {
+        FileEntity file = fileRepository.findByIdForUpdate(fileId)
+                .filter(locked -> locked.getDeletedAt() == null)
+                .orElseThrow(() -> new RuntimeException("❌ File not found with id: " + fileId));
+        if (file.getCurrentVersion() != baseVersion) {
+            throw new IllegalStateException("❌ File was modified, current version is " + file.getCurrentVersion());
+        }
+
+        FileVersion previous = new FileVersion();
+        previous.setFile(file);
+        previous.setVersionNumber(file.getCurrentVersion());
+        previous.setFileSize(file.getFileSize());
+        previous.setStoragePath(file.getStoragePath());
+        previous.setSegmentId(file.getSegmentId());
+        previous.setSegmentOffset(file.getSegmentOffset());
+        previous.setChecksum(file.getChecksum());
+        previous.setCreatedAt(file.getUpdatedAt() != null ? file.getUpdatedAt() : file.getUploadedAt());
+        fileVersionRepository.save(previous);
+
+        // Phiên bản cũ chỉ giữ bản chính; bản sao của nó được xóa sau khi transaction commit
+        List<String> staleReplicas = new ArrayList<>(file.getReplicaPaths());
+        if (!staleReplicas.isEmpty()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    staleReplicas.forEach(blobStore::delete);
+                }
+            });
+        }
+
+        file.setStoragePath(newBlob.getPath().toString());
+        file.setSegmentId(null);
+        file.setSegmentOffset(null);
+        file.getReplicaPaths().clear();
+        file.getReplicaPaths().addAll(newBlob.getReplicaPaths());
+        file.setFileSize(newSize);
+        file.setChecksum(newBlob.getChecksum());
+        file.setLastVerifiedAt(null);
+        file.setCorrupted(false);
+        file.setCurrentVersion(file.getCurrentVersion() + 1);
+        file.setUpdatedAt(LocalDateTime.now());
+        FileEntity saved = saveFile(file);
+        publish(saved.getUser().getId(), ChangeEvent.FILE_UPDATED, saved);
+        return saved;
+    }
+
+    // Sao chép phía server: blob được nhân bản bằng reflink / hard link trước, ngoài transaction
+    // (mỗi reflink là một tiến trình cp), rồi mọi dòng DB được lưu trong một transaction của saveAll;
+    // lưu thất bại thì các blob vừa tạo bị xóa. Cho tới lúc đó các blob mới ở trạng thái in-flight
+    // nên StorageReconciler không cách ly chúng dù chưa có dòng DB nào trỏ tới
+    public List<FileEntity> copyFiles(List<Long> fileIds, User targetUser) {
+        List<FileEntity> sources = findLive(fileIds);
+        List<StoredBlob> created = new ArrayList<>();
+        try {
+            List<FileEntity> copies = new ArrayList<>();
+            for (FileEntity source : sources) {
+                FileEntity copy = new FileEntity();
+                copy.setFileName(source.getFileName());
+                copy.setFileType(source.getFileType());
+                copy.setFileSize(source.getFileSize());
+                copy.setChecksum(source.getChecksum());
+                if (source.getSegmentId() != null) {
+                    // Bản ghi trong segment không bao giờ bị ghi đè: bản copy dùng chung bản ghi
+                    copy.setStoragePath(source.getStoragePath());
+                    copy.setSegmentId(source.getSegmentId());
+                    copy.setSegmentOffset(source.getSegmentOffset());
+                } else {
+                    StoredBlob blob = blobStore.copy(source.getStoragePath(), source.getFileName());
+                    created.add(blob);
+                    copy.setStoragePath(blob.getPath().toString());
+                    copy.setReplicaPaths(blob.getReplicaPaths());
+                }
+                if (targetUser.getId().equals(source.getUser().getId())) {
+                    copy.setFolder(source.getFolder());
+                }
+                copy.setUser(targetUser);
+                copy.setUploadedAt(LocalDateTime.now());
+                copies.add(copy);
+            }
+            List<FileEntity> saved = fileRepository.saveAll(copies);
+            for (FileEntity copy : saved) {
+                indexLater(copy);
+                publish(targetUser.getId(), ChangeEvent.FILE_UPLOADED, copy);
+            }
+            return saved;
+        } catch (IOException ex) {
+            created.forEach(blob -> blobStore.deleteAll(blob.getPath().toString(), blob.getReplicaPaths()));
+            throw new UncheckedIOException(ex);
+        } catch (RuntimeException ex) {
+            created.forEach(blob -> blobStore.deleteAll(blob.getPath().toString(), blob.getReplicaPaths()));
+            throw ex;
+        } finally {
+            created.forEach(blobStore::release);
+        }
+    }
+
+    // Chuyển file sang user khác: chỉ đổi chủ sở hữu trong DB, không đụng tới blob
+    @Transactional
+    public List<FileEntity> moveFiles(List<Long> fileIds, User targetUser) {
+        List<FileEntity> files = findLive(fileIds);
+        for (FileEntity file : files) {
+            unindexLater(file.getUser().getId(), file.getId());
+            // Với chủ cũ file biến mất, với chủ mới file xuất hiện
+            publish(file.getUser().getId(), ChangeEvent.FILE_DELETED, file);
+            file.setUser(targetUser);
+            // Thư mục thuộc về chủ cũ: file về thư mục gốc của chủ mới
+            file.setFolder(null);
+            file.setUpdatedAt(LocalDateTime.now());
+        }
+        List<FileEntity> saved = fileRepository.saveAll(files);
+        for (FileEntity file : saved) {
+            indexLater(file);
+            publish(targetUser.getId(), ChangeEvent.FILE_UPLOADED, file);
+        }
+        return saved;
+    }
+
+    // Copy và move cùng từ chối cả lô khi có id không tồn tại hoặc đã bị xóa
+    private List<FileEntity> findLive(List<Long> fileIds) {
+        List<FileEntity> files = fileRepository.findAllById(fileIds);
+        files.removeIf(file -> file.getDeletedAt() != null);
+        if (files.size() != new HashSet<>(fileIds).size()) {
+            throw new RuntimeException("❌ Some files were not found: " + fileIds);
+        }
+        return files;
+    }
+
+    public List<FileVersion> getVersions(Long fileId) {
+        return fileVersionRepository.findByFileIdOrderByVersionNumberDesc(fileId);
+    }
+
+    public Optional<FileVersion> getVersion(Long fileId, Integer versionNumber) {
+        return fileVersionRepository.findByFileIdAndVersionNumber(fileId, versionNumber);
+    }
+
+    // Share của file bị xóa theo cascade khi flush, nên bộ đếm share_stats phải được dọn trước đó
+    @Transactional
     public void deleteFile(Long id) {
-        fileRepository.deleteById(id);
+        getFileById(id).ifPresent(file -> {
+            deleteShareStats(List.of(id));
+            fileRepository.delete(file);
+            unindexLater(file.getUser().getId(), id);
+            publish(file.getUser().getId(), ChangeEvent.FILE_DELETED, file);
+        });
+    }
+
+    // Bulk delete, bước 1: tombstone các file còn sống rồi gỡ khỏi chỉ mục / cache / change feed ngay.
+    // Trả về id các file đã tombstone (theo lô để không vượt giới hạn 2100 tham số của SQL Server)
+    public List<Long> tombstoneFiles(List<Long> fileIds, int batchSize) {
+        List<Long> tombstoned = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (int from = 0; from < fileIds.size(); from += batchSize) {
+            List<Long> batch = fileIds.subList(from, Math.min(fileIds.size(), from + batchSize));
+            List<FileSummary> live = fileRepository.findLiveSummaries(batch);
+            if (live.isEmpty()) {
+                continue;
+            }
+            List<Long> ids = live.stream().map(FileSummary::getId).toList();
+            fileRepository.tombstone(ids, now);
+            Map<Long, List<Long>> byUser = new LinkedHashMap<>();
+            for (FileSummary file : live) {
+                byUser.computeIfAbsent(file.getUserId(), userId -> new ArrayList<>()).add(file.getId());
+            }
+            byUser.forEach(this::announceDeleted);
+            tombstoned.addAll(ids);
+        }
+        return tombstoned;
+    }
+
+    // Tombstone mọi file còn sống của user bằng một câu lệnh; gỡ khỏi chỉ mục / cache / change feed
+    // do job xóa làm sau đó theo từng trang id (announceDeleted). Trả về số file đã tombstone
+    public int tombstoneUserFiles(Long userId) {
+        return fileRepository.tombstoneByUserId(userId, LocalDateTime.now());
+    }
+
+    // Một event FILES_DELETED cho cả lô: xóa hàng nghìn file không làm tràn journal của change feed
+    public void announceDeleted(Long userId, List<Long> fileIds) {
+        fileIds.forEach(fileId -> unindexLater(userId, fileId));
+        eventPublisher.publishEvent(ChangeEvent.filesDeleted(userId, fileIds));
+    }
+
+    // Keyset theo id: các trang trước đã bị purge không làm lệch trang sau
+    public List<Long> getTombstonedIds(Long userId, long afterId, int limit) {
+        return fileRepository.findTombstonedIdsByUserAfter(userId, afterId, PageRequest.of(0, limit));
+    }
+
+    public List<Long> getTombstonedBefore(LocalDateTime before, Pageable pageable) {
+        return fileRepository.findTombstonedBefore(before, pageable);
+    }
+
+    public long countTombstoned() {
+        return fileRepository.countByDeletedAtIsNotNull();
     }
-}
 
+    // Bulk delete, bước 2: xóa dòng DB của một lô file đã tombstone bằng vài câu lệnh gộp
+    // (không cascade từng entity). Trả về các blob cần unlink sau khi transaction commit;
+    // bản ghi trong segment do SegmentCompactor thu hồi.
+    @Transactional
+    public List<String> purgeTombstoned(Collection<Long> fileIds) {
+        List<Long> ids = fileRepository.findTombstonedIds(fileIds);
+        List<String> blobs = new ArrayList<>();
+        if (ids.isEmpty()) {
+            return blobs;
+        }
+        for (BlobRef ref : fileRepository.findBlobRefs(ids)) {
+            if (ref.getSegmentId() == null) {
+                blobs.add(ref.getStoragePath());
+            }
+        }
+        blobs.addAll(fileRepository.findReplicaPathsByFileIds(ids));
+        for (BlobRef ref : fileVersionRepository.findBlobRefsByFileIds(ids)) {
+            if (ref.getSegmentId() == null) {
+                blobs.add(ref.getStoragePath());
+            }
+        }
+        deleteShareStats(ids);
+        shareRepository.deleteByFileIds(ids);
+        activityLogRepository.detachFiles(ids);
+        fileVersionRepository.deleteByFileIds(ids);
+        fileRepository.deleteReplicasByFileIds(ids);
+        fileRepository.purgeTombstoned(ids);
+        return blobs;
+    }
+
+    // share_stats không có khóa ngoại tới shares: xóa dòng theo file (trước khi share bị xóa)
+    // và bỏ bộ đếm trong bộ nhớ để lượt flush sau không giữ lại phần chưa ghi của share đã mất
+    private void deleteShareStats(Collection<Long> fileIds) {
+        shareRepository.findIdsByFileIds(fileIds).forEach(shareStatsService::forget);
+        shareStatsRepository.deleteByFileIds(fileIds);
+    }
+
+    public List<FileSearchResult> searchFiles(Long userId, String query, String type, Long minSize, Long maxSize,
+                                              LocalDateTime from, LocalDateTime to, int limit) {
+        return searchIndex.search(userId, query, type, minSize, maxSize, from, to, limit);
+    }
+
+    public long rebuildSearchIndex() {
+        return searchIndex.rebuild();
+    }
+}
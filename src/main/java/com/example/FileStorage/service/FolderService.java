@@ -0,0 +1,128 @@
+package com.example.FileStorage.service;
+
+import com.example.FileStorage.dto.BulkDeleteJob;
+import com.example.FileStorage.dto.FolderListing;
+import com.example.FileStorage.entity.Folder;
+import com.example.FileStorage.entity.User;
+import com.example.FileStorage.repository.FileRepository;
+import com.example.FileStorage.repository.FolderRepository;
+import com.example.FileStorage.repository.FolderSize;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+// Cây thư mục theo closure table: mỗi thư mục có một dòng (chính nó, depth 0) cộng một dòng cho mỗi tổ tiên.
+// Liệt kê một cấp dùng parent_id / folder_id; tính kích thước đệ quy, chuyển hoặc xóa cả cây con
+// chỉ là vài câu lệnh trên folder_closure, không phụ thuộc số file hay độ sâu của cây.
+// Đổi tên thư mục chỉ sửa một dòng vì đường dẫn không được lưu sẵn.
+@Service
+public class FolderService {
+
+    private final FolderRepository folderRepository;
+    private final FileRepository fileRepository;
+    private final BulkDeleteService bulkDeleteService;
+
+    public FolderService(FolderRepository folderRepository, FileRepository fileRepository,
+                         BulkDeleteService bulkDeleteService) {
+        this.folderRepository = folderRepository;
+        this.fileRepository = fileRepository;
+        this.bulkDeleteService = bulkDeleteService;
+    }
+
+    public Optional<Folder> getFolder(Long id) {
+        return folderRepository.findById(id);
+    }
+
+    @Transactional
+    public Folder createFolder(User user, Long parentId, String name) {
+        Folder parent = parentId == null ? null : requireOwned(parentId, user.getId());
+        Folder folder = new Folder();
+        folder.setName(name);
+        folder.setParent(parent);
+        folder.setUser(user);
+        Folder saved = folderRepository.save(folder);
+        folderRepository.insertSelf(saved.getId());
+        if (parent != null) {
+            folderRepository.insertAncestors(saved.getId(), parent.getId());
+        }
+        return saved;
+    }
+
+    public FolderListing listRoot(Long userId) {
+        return new FolderListing(null,
+                folderRepository.findByUserIdAndParentIsNullOrderByName(userId),
+                fileRepository.findByUserIdAndFolderIsNullAndDeletedAtIsNullOrderByFileName(userId));
+    }
+
+    public Optional<FolderListing> list(Long folderId) {
+        return folderRepository.findById(folderId).map(folder -> new FolderListing(folder,
+                folderRepository.findByParentIdOrderByName(folderId),
+                fileRepository.findByFolderIdAndDeletedAtIsNullOrderByFileName(folderId)));
+    }
+
+    public List<Folder> getPath(Long folderId) {
+        return folderRepository.findPath(folderId);
+    }
+
+    public FolderSize getSize(Long folderId) {
+        return folderRepository.sumSubtree(folderId);
+    }
+
+    @Transactional
+    public Optional<Folder> renameFolder(Long id, String name) {
+        return folderRepository.findById(id).map(folder -> {
+            folder.setName(name);
+            folder.setUpdatedAt(LocalDateTime.now());
+            return folderRepository.save(folder);
+        });
+    }
+
+    // Chuyển thư mục (cùng toàn bộ cây con) sang thư mục cha khác của cùng user; newParentId = null: về gốc
+    @Transactional
+    public Folder moveFolder(Long id, Long newParentId) {
+        Folder folder = folderRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("❌ Folder not found with id: " + id));
+        Folder parent = newParentId == null ? null : requireOwned(newParentId, folder.getUserId());
+        if (parent != null && folderRepository.countLink(id, parent.getId()) > 0) {
+            throw new IllegalArgumentException("❌ Cannot move a folder into itself or its subfolders");
+        }
+        folderRepository.detachSubtree(id);
+        if (parent != null) {
+            folderRepository.attachSubtree(id, parent.getId());
+        }
+        folder.setParent(parent);
+        folder.setUpdatedAt(LocalDateTime.now());
+        return folderRepository.save(folder);
+    }
+
+    // Chuyển các file của user vào thư mục (folderId = null: về gốc) bằng một câu lệnh
+    @Transactional
+    public int moveFiles(Long userId, List<Long> fileIds, Long folderId) {
+        Folder folder = folderId == null ? null : requireOwned(folderId, userId);
+        return fileRepository.moveToFolder(fileIds, userId, folder, LocalDateTime.now());
+    }
+
+    // Xóa thư mục: file trong cả cây con đi qua bulk delete (tombstone ngay, dọn nền sau khi commit),
+    // thư mục và dòng closure bị xóa trong cùng transaction
+    @Transactional
+    public BulkDeleteJob deleteFolder(Long id) {
+        BulkDeleteJob job = bulkDeleteService.submit(fileRepository.findLiveIdsInSubtree(id));
+        fileRepository.detachFromSubtree(id);
+        folderRepository.detachSubtreeParents(id);
+        folderRepository.deleteSubtreeFolders(id);
+        folderRepository.deleteSubtreeLinks(id);
+        return job;
+    }
+
+    private Folder requireOwned(Long folderId, Long userId) {
+        Folder folder = folderRepository.findById(folderId)
+                .orElseThrow(() -> new RuntimeException("❌ Folder not found with id: " + folderId));
+        if (!folder.getUserId().equals(userId)) {
+            throw new IllegalArgumentException("❌ Folder " + folderId + " belongs to another user");
+        }
+        return folder;
+    }
+}
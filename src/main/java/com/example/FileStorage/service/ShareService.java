@@ -1,7 +1,10 @@
 package com.example.FileStorage.service;
 
+import com.example.FileStorage.dto.ChangeEvent;
 import com.example.FileStorage.entity.Share;
 import com.example.FileStorage.repository.ShareRepository;
+import com.example.FileStorage.repository.ShareStatsRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -10,13 +13,22 @@ import java.util.Optional;
 public class ShareService {
 
     private final ShareRepository shareRepository;
+    private final ShareStatsRepository shareStatsRepository;
+    private final ShareStatsService shareStatsService;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public ShareService(ShareRepository shareRepository) {
+    public ShareService(ShareRepository shareRepository, ShareStatsRepository shareStatsRepository,
+                        ShareStatsService shareStatsService, ApplicationEventPublisher eventPublisher) {
         this.shareRepository = shareRepository;
+        this.shareStatsRepository = shareStatsRepository;
+        this.shareStatsService = shareStatsService;
+        this.eventPublisher = eventPublisher;
     }
 
     public Share createShare(Share share) {
-        return shareRepository.save(share);
+        Share saved = shareRepository.save(share);
+        publish(ChangeEvent.SHARE_CREATED, saved);
+        return saved;
     }
 
     public Optional<Share> getShareById(Long id) {
@@ -28,7 +40,20 @@ public class ShareService {
     }
 
     public void deleteShare(Long id) {
-        shareRepository.deleteById(id);
+        shareRepository.findById(id).ifPresent(share -> {
+            shareStatsService.forget(share.getId());
+            shareStatsRepository.deleteById(share.getId());
+            shareRepository.delete(share);
+            publish(ChangeEvent.SHARE_REVOKED, share);
+        });
+    }
+
+    private void publish(String type, Share share) {
+        if (share.getOwner() == null || share.getFile() == null) {
+            return;
+        }
+        eventPublisher.publishEvent(new ChangeEvent(share.getOwner().getId(), type,
+                share.getFile().getId(), share.getFile().getFileName(), share.getId()));
     }
 }
 
@@ -0,0 +1,354 @@
+package com.example.FileStorage.service;
+
+import com.example.FileStorage.dto.ShareActivity;
+import com.example.FileStorage.entity.ShareStats;
+import com.example.FileStorage.repository.ShareStatsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Đếm lượt xem / tải của share trong bộ nhớ thay vì UPDATE dòng shares mỗi request
+// (link viral sẽ thành điểm nóng khóa dòng trên SQL Server):
+// - mỗi share một bộ đếm LongAdder (striped), request chỉ cộng vào, không lấy lock;
+// - tốc độ gần đây giữ trong cửa sổ trượt gồm các bucket theo thời gian;
+// - định kỳ cộng phần chênh lệch chưa flush vào share_stats bằng MERGE theo lô trong một transaction.
+// Phần đã flush chỉ được ghi nhận khi transaction commit, lô lỗi sẽ được gửi lại ở lần sau.
+@Service
+public class ShareStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(ShareStatsService.class);
+
+    // Chỉ cộng cho share còn tồn tại: share đã xóa cho nguồn rỗng nên MERGE không làm gì
+    private static final String UPSERT_SQL =
+            "MERGE INTO share_stats t " +
+            "USING (SELECT id AS share_id, CAST(? AS BIGINT) AS views, CAST(? AS BIGINT) AS downloads, " +
+            "CAST(? AS DATETIME2) AS last_access FROM shares WHERE id = ?) s " +
+            "ON t.share_id = s.share_id " +
+            "WHEN MATCHED THEN UPDATE SET view_count = t.view_count + s.views, " +
+            "download_count = t.download_count + s.downloads, " +
+            "last_access_at = CASE WHEN t.last_access_at IS NULL OR t.last_access_at < s.last_access " +
+            "THEN s.last_access ELSE t.last_access_at END " +
+            "WHEN NOT MATCHED THEN INSERT (share_id, view_count, download_count, last_access_at) " +
+            "VALUES (s.share_id, s.views, s.downloads, s.last_access);";
+
+    // Thời điểm truy cập cuối chỉ ghi lại khi đã cũ hơn mức này, tránh mọi request cùng ghi một biến volatile
+    private static final long LAST_ACCESS_RESOLUTION_MILLIS = 1000;
+
+    private final ShareStatsRepository shareStatsRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long bucketMillis;
+    private final int buckets;
+    private final long idleEvictMillis;
+
+    private final Map<Long, ShareCounter> counters = new ConcurrentHashMap<>();
+    // Bộ đếm vừa bị bỏ khỏi map, được flush thêm một lượt cho các request còn giữ tham chiếu
+    private List<ShareCounter> retiring = new ArrayList<>();
+
+    private final LongAdder recordedViews = new LongAdder();
+    private final LongAdder recordedDownloads = new LongAdder();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong evictedCounters = new AtomicLong();
+    private volatile long lastFlushMillis;
+
+    public ShareStatsService(
+            ShareStatsRepository shareStatsRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${file.share-stats.batch-size:500}") int batchSize,
+            @Value("${file.share-stats.window-seconds:60}") int windowSeconds,
+            @Value("${file.share-stats.bucket-seconds:5}") int bucketSeconds,
+            @Value("${file.share-stats.idle-evict-minutes:30}") long idleEvictMinutes
+    ) {
+        this.shareStatsRepository = shareStatsRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = Math.max(1, batchSize);
+        this.bucketMillis = Math.max(1, bucketSeconds) * 1000L;
+        this.buckets = Math.max(1, windowSeconds / Math.max(1, bucketSeconds));
+        this.idleEvictMillis = idleEvictMinutes * 60_000;
+    }
+
+    public void recordView(Long shareId) {
+        counter(shareId).record(false);
+        recordedViews.increment();
+    }
+
+    public void recordDownload(Long shareId) {
+        counter(shareId).record(true);
+        recordedDownloads.increment();
+    }
+
+    private ShareCounter counter(Long shareId) {
+        // Đường nóng: share đã có bộ đếm chỉ cần get, không lock
+        ShareCounter counter = counters.get(shareId);
+        return counter != null ? counter : counters.computeIfAbsent(shareId, ShareCounter::new);
+    }
+
+    // Share bị xóa: bỏ bộ đếm, không flush phần còn lại
+    public void forget(Long shareId) {
+        counters.remove(shareId);
+    }
+
+    // Tổng đã lưu cộng phần chưa flush, kèm tốc độ trong cửa sổ hiện tại
+    public ShareActivity getActivity(Long shareId) {
+        ShareActivity activity = toActivity(shareId, counters.get(shareId), System.currentTimeMillis());
+        shareStatsRepository.findById(shareId).ifPresent(stats -> addPersisted(activity, stats));
+        return activity;
+    }
+
+    // Top-N share có tổng tốc độ xem + tải cao nhất trong cửa sổ gần đây
+    public List<ShareActivity> getHottest(int limit) {
+        long now = System.currentTimeMillis();
+        long slot = now / bucketMillis;
+        Comparator<Map.Entry<ShareCounter, Long>> byRate = Map.Entry.comparingByValue();
+        PriorityQueue<Map.Entry<ShareCounter, Long>> top = new PriorityQueue<>(limit + 1, byRate);
+        for (ShareCounter counter : counters.values()) {
+            long recent = counter.viewWindow.sum(slot) + counter.downloadWindow.sum(slot);
+            if (recent == 0) {
+                continue;
+            }
+            top.add(Map.entry(counter, recent));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<Map.Entry<ShareCounter, Long>> ranked = new ArrayList<>(top);
+        ranked.sort(byRate.reversed());
+
+        Map<Long, ShareActivity> result = new LinkedHashMap<>();
+        for (Map.Entry<ShareCounter, Long> entry : ranked) {
+            result.put(entry.getKey().shareId, toActivity(entry.getKey().shareId, entry.getKey(), now));
+        }
+        for (ShareStats stats : shareStatsRepository.findAllById(result.keySet())) {
+            addPersisted(result.get(stats.getShareId()), stats);
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    private ShareActivity toActivity(Long shareId, ShareCounter counter, long now) {
+        ShareActivity activity = new ShareActivity();
+        activity.setShareId(shareId);
+        if (counter != null) {
+            long slot = now / bucketMillis;
+            double windowMinutes = buckets * bucketMillis / 60_000.0;
+            activity.setViews(counter.views.sum() - counter.flushedViews);
+            activity.setDownloads(counter.downloads.sum() - counter.flushedDownloads);
+            activity.setLastAccessAt(toLocalDateTime(counter.lastAccessMillis));
+            activity.setViewsPerMinute(counter.viewWindow.sum(slot) / windowMinutes);
+            activity.setDownloadsPerMinute(counter.downloadWindow.sum(slot) / windowMinutes);
+        }
+        return activity;
+    }
+
+    private void addPersisted(ShareActivity activity, ShareStats stats) {
+        activity.setViews(activity.getViews() + stats.getViewCount());
+        activity.setDownloads(activity.getDownloads() + stats.getDownloadCount());
+        if (activity.getLastAccessAt() == null
+                || (stats.getLastAccessAt() != null && stats.getLastAccessAt().isAfter(activity.getLastAccessAt()))) {
+            activity.setLastAccessAt(stats.getLastAccessAt());
+        }
+    }
+
+    // Chỉ một lượt flush chạy tại một thời điểm (fixedDelay)
+    @Scheduled(fixedDelayString = "${file.share-stats.flush-interval-ms:10000}")
+    public void flush() {
+        List<ShareCounter> retired = retiring;
+        retiring = new ArrayList<>();
+        List<ShareCounter> candidates = new ArrayList<>(counters.values());
+        candidates.addAll(retired);
+
+        List<Snapshot> pending = new ArrayList<>();
+        for (ShareCounter counter : candidates) {
+            Snapshot snapshot = counter.snapshot();
+            if (snapshot.hasChanges()) {
+                pending.add(snapshot);
+            }
+        }
+        for (int from = 0; from < pending.size(); from += batchSize) {
+            List<Snapshot> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+            try {
+                writeBatch(batch);
+            } catch (DataAccessException ex) {
+                // Phần chưa ghi vẫn nằm trong bộ đếm, lượt sau gửi lại
+                failedFlushes.incrementAndGet();
+                log.warn("Share stats flush failed: {}", ex.getMessage());
+                retiring.addAll(retired);
+                return;
+            }
+            batch.forEach(Snapshot::markFlushed);
+            flushedRows.addAndGet(batch.size());
+        }
+        flushes.incrementAndGet();
+        lastFlushMillis = System.currentTimeMillis();
+        evictIdle(lastFlushMillis);
+    }
+
+    private void writeBatch(List<Snapshot> batch) {
+        List<Object[]> args = new ArrayList<>(batch.size());
+        for (Snapshot snapshot : batch) {
+            args.add(new Object[]{snapshot.viewDelta(), snapshot.downloadDelta(),
+                    Timestamp.valueOf(toLocalDateTime(snapshot.lastAccessMillis)), snapshot.counter.shareId});
+        }
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(UPSERT_SQL, args));
+    }
+
+    // Bộ đếm đã flush hết và lâu không được truy cập thì bỏ khỏi bộ nhớ
+    private void evictIdle(long now) {
+        for (ShareCounter counter : counters.values()) {
+            if (now - counter.lastAccessMillis > idleEvictMillis && !counter.snapshot().hasChanges()
+                    && counters.remove(counter.shareId, counter)) {
+                retiring.add(counter);
+                evictedCounters.incrementAndGet();
+            }
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("trackedShares", counters.size());
+        stats.put("recordedViews", recordedViews.sum());
+        stats.put("recordedDownloads", recordedDownloads.sum());
+        stats.put("flushes", flushes.get());
+        stats.put("flushedRows", flushedRows.get());
+        stats.put("failedFlushes", failedFlushes.get());
+        stats.put("evictedCounters", evictedCounters.get());
+        stats.put("lastFlushAt", lastFlushMillis == 0 ? null : toLocalDateTime(lastFlushMillis));
+        stats.put("windowSeconds", buckets * bucketMillis / 1000);
+        return stats;
+    }
+
+    private final class ShareCounter {
+
+        private final Long shareId;
+        private final LongAdder views = new LongAdder();
+        private final LongAdder downloads = new LongAdder();
+        private final RateWindow viewWindow = new RateWindow(buckets);
+        private final RateWindow downloadWindow = new RateWindow(buckets);
+        private volatile long lastAccessMillis;
+
+        // Chỉ thread flush đọc / ghi
+        private long flushedViews;
+        private long flushedDownloads;
+        private long flushedLastAccessMillis;
+
+        private ShareCounter(Long shareId) {
+            this.shareId = shareId;
+        }
+
+        private void record(boolean download) {
+            long now = System.currentTimeMillis();
+            if (download) {
+                downloads.increment();
+                downloadWindow.record(now / bucketMillis);
+            } else {
+                views.increment();
+                viewWindow.record(now / bucketMillis);
+            }
+            if (now - lastAccessMillis >= LAST_ACCESS_RESOLUTION_MILLIS) {
+                lastAccessMillis = now;
+            }
+        }
+
+        private Snapshot snapshot() {
+            return new Snapshot(this, views.sum(), downloads.sum(), lastAccessMillis);
+        }
+    }
+
+    // Giá trị cộng dồn đọc tại lúc flush; phần chênh lệch so với lần flush trước là thứ được ghi
+    private static final class Snapshot {
+
+        private final ShareCounter counter;
+        private final long views;
+        private final long downloads;
+        private final long lastAccessMillis;
+
+        private Snapshot(ShareCounter counter, long views, long downloads, long lastAccessMillis) {
+            this.counter = counter;
+            this.views = views;
+            this.downloads = downloads;
+            this.lastAccessMillis = lastAccessMillis;
+        }
+
+        private long viewDelta() {
+            return views - counter.flushedViews;
+        }
+
+        private long downloadDelta() {
+            return downloads - counter.flushedDownloads;
+        }
+
+        private boolean hasChanges() {
+            return viewDelta() != 0 || downloadDelta() != 0 || lastAccessMillis != counter.flushedLastAccessMillis;
+        }
+
+        private void markFlushed() {
+            counter.flushedViews = views;
+            counter.flushedDownloads = downloads;
+            counter.flushedLastAccessMillis = lastAccessMillis;
+        }
+    }
+
+    // Cửa sổ trượt gồm các bucket theo thời gian, mỗi bucket là một LongAdder; bucket được tái sử dụng
+    // khi sang vòng mới. Lượt đếm trùng đúng lúc bucket được reset có thể bị mất: tốc độ chỉ là gần đúng.
+    private static final class RateWindow {
+
+        private final LongAdder[] counts;
+        private final AtomicLongArray slots;
+
+        private RateWindow(int buckets) {
+            this.counts = new LongAdder[buckets];
+            this.slots = new AtomicLongArray(buckets);
+            for (int i = 0; i < buckets; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        private void record(long slot) {
+            int index = (int) (slot % counts.length);
+            long current = slots.get(index);
+            if (current != slot && slots.compareAndSet(index, current, slot)) {
+                counts[index].reset();
+            }
+            counts[index].increment();
+        }
+
+        private long sum(long slot) {
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (slot - slots.get(i) < counts.length) {
+                    total += counts[i].sum();
+                }
+            }
+            return total;
+        }
+    }
+}
@@ -6,13 +6,17 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class UserService {
 
     private final UserRepository userRepository;
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    // username -> id của user đã đăng nhập: username không đổi sau khi tạo, chỉ bỏ khi xóa user
+    private final Map<String, Long> idsByUsername = new ConcurrentHashMap<>();
 
     public UserService(UserRepository userRepository) {
         this.userRepository = userRepository;
@@ -35,10 +39,25 @@ public class UserService {
 
     public void deleteUser(Long id) {
         userRepository.deleteById(id);
+        idsByUsername.values().remove(id);
     }
 
     public User findByUsername(String username) {
         return userRepository.findByUsername(username);
     }
+
+    // Id theo username, nhớ lại sau lần đầu để các request đã xác thực không phải truy vấn DB mỗi lần
+    public Long findIdByUsername(String username) {
+        Long id = idsByUsername.get(username);
+        if (id == null) {
+            User user = userRepository.findByUsername(username);
+            if (user == null) {
+                return null;
+            }
+            id = user.getId();
+            idsByUsername.put(username, id);
+        }
+        return id;
+    }
 }
 
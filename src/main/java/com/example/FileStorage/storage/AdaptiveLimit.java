@@ -0,0 +1,215 @@
+package com.example.FileStorage.storage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Giới hạn số thao tác đĩa đồng thời, tự điều chỉnh theo độ trễ đĩa đo được (AIMD):
+// - độ trễ trung bình vượt ngưỡng -> giảm limit theo cấp số nhân
+// - độ trễ tốt và limit đang được dùng hết -> tăng limit thêm 1
+// Request mới vượt limit được xếp hàng tối đa maxQueue phần tử và chờ tối đa maxWait.
+// Transfer dài có thể chỉ xin chỗ lúc nhận request (awaitCapacity) rồi giữ permit quanh từng lần đọc / ghi đĩa
+// (acquireAdmitted), để thời gian chờ client / chờ băng thông không chiếm chỗ của người khác.
+// Mỗi lần xin permit giữa transfer cũng chỉ chờ tối đa maxWait: quá tải kéo dài thì transfer bị hủy thay vì treo mãi.
+public class AdaptiveLimit {
+
+    private static final double DECREASE_FACTOR = 0.9;
+    private static final double EWMA_ALPHA = 0.2;
+    private static final long ADJUST_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final long targetLatencyNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+    private double avgLatencyNanos;
+    private double avgHoldNanos;
+    private long lastAdjust = System.nanoTime();
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public AdaptiveLimit(String name, int initialLimit, int minLimit, int maxLimit,
+                         int maxQueue, long maxWaitMillis, long targetLatencyMillis) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+    }
+
+    public Permit acquire() {
+        return acquire(true);
+    }
+
+    // Quyết định nhận hay từ chối (xếp hàng, 503) như acquire() nhưng không giữ permit
+    public void awaitCapacity() {
+        acquire(false);
+    }
+
+    // Permit cho một thao tác đĩa của transfer đã được nhận: không bị từ chối vì hàng đợi đầy,
+    // nhưng chờ quá maxWait thì ném AdmissionRejectedException
+    public Permit acquireAdmitted() throws InterruptedException {
+        lock.lock();
+        try {
+            waiting++;
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        throw reject();
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+            } finally {
+                waiting--;
+            }
+            inFlight++;
+            return new Permit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Permit acquire(boolean hold) {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                return admit(hold);
+            }
+            if (waiting >= maxQueue) {
+                throw reject();
+            }
+            queued.incrementAndGet();
+            waiting++;
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        throw reject();
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                return admit(hold);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw reject();
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Permit admit(boolean hold) {
+        admitted.incrementAndGet();
+        if (!hold) {
+            // Chỗ trống vẫn còn: chuyển tín hiệu cho người chờ kế tiếp
+            released.signal();
+            return null;
+        }
+        inFlight++;
+        return new Permit();
+    }
+
+    private AdmissionRejectedException reject() {
+        rejected.incrementAndGet();
+        // Little's law: thời gian chờ ước lượng = số request phía trước * thời gian giữ permit / limit
+        double seconds = avgHoldNanos * (waiting + 1) / Math.max(1, limit) / 1_000_000_000.0;
+        return new AdmissionRejectedException("❌ Server is busy (" + name + "), please retry later",
+                Math.max(1, (long) Math.ceil(seconds)));
+    }
+
+    private void sample(long latencyNanos) {
+        lock.lock();
+        try {
+            avgLatencyNanos = avgLatencyNanos == 0 ? latencyNanos
+                    : avgLatencyNanos + EWMA_ALPHA * (latencyNanos - avgLatencyNanos);
+            long now = System.nanoTime();
+            if (now - lastAdjust < ADJUST_INTERVAL_NANOS) {
+                return;
+            }
+            lastAdjust = now;
+            if (avgLatencyNanos > targetLatencyNanos) {
+                limit = Math.max(minLimit, limit * DECREASE_FACTOR);
+            } else if (inFlight >= (int) limit) {
+                limit = Math.min(maxLimit, limit + 1);
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Đang chịu tải nặng: gần chạm limit hoặc độ trễ vượt ngưỡng (dùng cho các tác vụ nền nhường đường)
+    public boolean isUnderPressure() {
+        lock.lock();
+        try {
+            return waiting > 0 || inFlight >= limit * 0.8 || avgLatencyNanos > targetLatencyNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("limit", (int) limit);
+            stats.put("inFlight", inFlight);
+            stats.put("waiting", waiting);
+            stats.put("avgLatencyMicros", (long) (avgLatencyNanos / 1000));
+            stats.put("avgHoldMillis", (long) (avgHoldNanos / 1_000_000));
+            stats.put("admitted", admitted.get());
+            stats.put("queued", queued.get());
+            stats.put("rejected", rejected.get());
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Quyền thực hiện một transfer hoặc một thao tác đĩa; phải close() khi xong
+    public class Permit implements AutoCloseable {
+
+        private final long acquiredAt = System.nanoTime();
+        private boolean closed;
+
+        // Ghi nhận độ trễ của một thao tác đọc/ghi đĩa
+        public void recordLatency(long nanos) {
+            sample(nanos);
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                inFlight--;
+                long held = System.nanoTime() - acquiredAt;
+                avgHoldNanos = avgHoldNanos == 0 ? held : avgHoldNanos + EWMA_ALPHA * (held - avgHoldNanos);
+                released.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.FileStorage.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Admission control cho các transfer nặng về đĩa, với ngân sách đọc (download) và ghi (upload) riêng.
+// Các endpoint chỉ đọc metadata không đi qua đây.
+@Component
+public class AdmissionLimiter {
+
+    private final AdaptiveLimit reads;
+    private final AdaptiveLimit writes;
+
+    public AdmissionLimiter(
+            @Value("${file.admission.read.initial-limit:32}") int readInitial,
+            @Value("${file.admission.read.max-limit:256}") int readMax,
+            @Value("${file.admission.write.initial-limit:16}") int writeInitial,
+            @Value("${file.admission.write.max-limit:128}") int writeMax,
+            @Value("${file.admission.min-limit:2}") int minLimit,
+            @Value("${file.admission.max-queue:200}") int maxQueue,
+            @Value("${file.admission.max-wait-ms:2000}") long maxWaitMillis,
+            @Value("${file.admission.target-latency-ms:20}") long targetLatencyMillis
+    ) {
+        this.reads = new AdaptiveLimit("read", readInitial, minLimit, readMax, maxQueue, maxWaitMillis, targetLatencyMillis);
+        this.writes = new AdaptiveLimit("write", writeInitial, minLimit, writeMax, maxQueue, maxWaitMillis, targetLatencyMillis);
+    }
+
+    public AdaptiveLimit.Permit acquireRead() {
+        return reads.acquire();
+    }
+
+    // Download: xin chỗ lúc nhận request (503 nếu quá tải), permit thật được giữ quanh từng lần đọc
+    public void admitRead() {
+        reads.awaitCapacity();
+    }
+
+    public AdaptiveLimit.Permit acquireReadSlot() throws InterruptedException {
+        return reads.acquireAdmitted();
+    }
+
+    public AdaptiveLimit.Permit acquireWrite() {
+        return writes.acquire();
+    }
+
+    // Upload: như download, xin chỗ lúc nhận request; permit ghi chỉ giữ quanh từng lần ghi đĩa,
+    // không qua lúc đọc từ client hay chờ băng thông
+    public void admitWrite() {
+        writes.awaitCapacity();
+    }
+
+    public AdaptiveLimit.Permit acquireWriteSlot() throws InterruptedException {
+        return writes.acquireAdmitted();
+    }
+
+    public boolean isReadUnderPressure() {
+        return reads.isUnderPressure();
+    }
+
+    public boolean isWriteUnderPressure() {
+        return writes.isUnderPressure();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("read", reads.getStats());
+        stats.put("write", writes.getStats());
+        return stats;
+    }
+}
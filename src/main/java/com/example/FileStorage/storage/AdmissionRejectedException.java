@@ -0,0 +1,16 @@
+package com.example.FileStorage.storage;
+
+// Ném ra khi hàng đợi admission đầy hoặc chờ quá lâu; controller trả 503 kèm Retry-After
+public class AdmissionRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.FileStorage.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Giới hạn băng thông upload/download theo token bucket ở ba mức: toàn hệ thống, từng user (theo tier), từng share.
+// Mỗi chunk phải lấy đủ token ở cả ba bucket; bucket cho phép nợ nên các transfer xếp hàng lần lượt
+// theo từng chunk, nhờ vậy băng thông chung được chia đều cho các transfer đang chạy.
+// Burst chỉ giúp khi bucket đang rảnh: nếu bucket đang nợ vì một transfer khác chạy hết tốc thì các chunk sau
+// phải chờ trả nợ. Riêng first-burst-bytes đầu tiên của mỗi transfer được đi ngay nếu còn token trong bucket ưu tiên
+// (first-burst-bytes-per-second, chung toàn hệ thống): vẫn trừ token ở ba bucket nên phần nợ dồn sang các transfer
+// lớn đang chạy, nhưng file nhỏ / thumbnail không phải xếp sau chúng. Bucket ưu tiên cạn thì quay về đường thường.
+// Giới hạn theo user là tùy chọn: tier mặc định "unlimited" không có tốc độ nên không tạo bucket.
+// Bucket của user / share không còn transfer nào và đã nạp đầy được dọn định kỳ.
+@Component
+public class BandwidthManager {
+
+    private final TokenBucket globalBucket;
+    private final TokenBucket firstBurstBucket;
+    private final long burstBytes;
+    private final long firstBurstBytes;
+    private final long shareBytesPerSecond;
+    private final String defaultTier;
+    private final Map<String, Long> tierRates;
+    private final Map<Long, String> userTiers;
+
+    private final Map<Long, SharedBucket> userBuckets = new ConcurrentHashMap<>();
+    private final Map<Long, SharedBucket> shareBuckets = new ConcurrentHashMap<>();
+
+    private final AtomicInteger activeTransfers = new AtomicInteger();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong throttledBytes = new AtomicLong();
+    private final AtomicLong throttledNanos = new AtomicLong();
+    private final AtomicLong firstBurstBytesServed = new AtomicLong();
+    private final AtomicLong evictedBuckets = new AtomicLong();
+
+    public BandwidthManager(
+            @Value("${file.bandwidth.global-bytes-per-second:0}") long globalBytesPerSecond,
+            @Value("${file.bandwidth.burst-bytes:1048576}") long burstBytes,
+            @Value("${file.bandwidth.first-burst-bytes:65536}") long firstBurstBytes,
+            @Value("${file.bandwidth.first-burst-bytes-per-second:16777216}") long firstBurstBytesPerSecond,
+            @Value("${file.bandwidth.share-bytes-per-second:0}") long shareBytesPerSecond,
+            @Value("${file.bandwidth.default-tier:unlimited}") String defaultTier,
+            @Value("${file.bandwidth.tiers:}") String tiers,
+            @Value("${file.bandwidth.user-tiers:}") String userTiers
+    ) {
+        this.burstBytes = burstBytes;
+        this.globalBucket = new TokenBucket(globalBytesPerSecond, Math.max(burstBytes, globalBytesPerSecond));
+        this.firstBurstBytes = firstBurstBytes;
+        this.firstBurstBucket = new TokenBucket(firstBurstBytesPerSecond, Math.max(firstBurstBytes, firstBurstBytesPerSecond));
+        this.shareBytesPerSecond = shareBytesPerSecond;
+        this.defaultTier = defaultTier;
+        this.tierRates = new HashMap<>();
+        parsePairs(tiers).forEach((tier, rate) -> tierRates.put(tier, Long.parseLong(rate)));
+        this.userTiers = new HashMap<>();
+        parsePairs(userTiers).forEach((userId, tier) -> this.userTiers.put(Long.parseLong(userId), tier));
+    }
+
+    // "a:1,b:2" -> {a=1, b=2}
+    private static Map<String, String> parsePairs(String value) {
+        Map<String, String> pairs = new HashMap<>();
+        for (String entry : value.split(",")) {
+            int colon = entry.indexOf(':');
+            if (colon > 0) {
+                pairs.put(entry.substring(0, colon).trim(), entry.substring(colon + 1).trim());
+            }
+        }
+        return pairs;
+    }
+
+    public Transfer open(Long userId, Long shareId) {
+        long userRate = userId == null ? 0 : userRate(userId);
+        SharedBucket user = userRate <= 0 ? null : attach(userBuckets, userId, userRate);
+        SharedBucket share = shareId == null || shareBytesPerSecond <= 0 ? null
+                : attach(shareBuckets, shareId, shareBytesPerSecond);
+        activeTransfers.incrementAndGet();
+        return new Transfer(user, share);
+    }
+
+    private long userRate(Long userId) {
+        return tierRates.getOrDefault(userTiers.getOrDefault(userId, defaultTier), 0L);
+    }
+
+    // Tạo hoặc lấy bucket và tăng số transfer đang dùng nó trong cùng một thao tác trên map,
+    // để lần dọn không thể xóa bucket ngay khi một transfer vừa lấy được nó
+    private SharedBucket attach(Map<Long, SharedBucket> buckets, Long id, long rate) {
+        return buckets.compute(id, (key, existing) -> {
+            SharedBucket bucket = existing != null ? existing : new SharedBucket(id, new TokenBucket(rate, burst(rate)));
+            bucket.users++;
+            return bucket;
+        });
+    }
+
+    private void detach(Map<Long, SharedBucket> buckets, Long id) {
+        buckets.computeIfPresent(id, (key, bucket) -> {
+            bucket.users--;
+            return bucket;
+        });
+    }
+
+    // Bỏ bucket không còn transfer nào dùng và đã nạp đầy: tạo lại sau này cho kết quả y hệt
+    @Scheduled(fixedDelayString = "${file.bandwidth.evict-interval-ms:60000}")
+    public void evictIdleBuckets() {
+        evictIdle(userBuckets);
+        evictIdle(shareBuckets);
+    }
+
+    private void evictIdle(Map<Long, SharedBucket> buckets) {
+        for (Long id : buckets.keySet()) {
+            buckets.computeIfPresent(id, (key, bucket) -> {
+                if (bucket.users > 0 || !bucket.tokens.isFull()) {
+                    return bucket;
+                }
+                evictedBuckets.incrementAndGet();
+                return null;
+            });
+        }
+    }
+
+    private double burst(long rate) {
+        return Math.max(burstBytes, rate / 4.0);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("activeTransfers", activeTransfers.get());
+        stats.put("totalBytes", totalBytes.get());
+        stats.put("throttledBytes", throttledBytes.get());
+        stats.put("throttledMillis", TimeUnit.NANOSECONDS.toMillis(throttledNanos.get()));
+        stats.put("firstBurstBytes", firstBurstBytesServed.get());
+        stats.put("globalBytesPerSecond", (long) globalBucket.getRatePerSecond());
+        stats.put("trackedUsers", userBuckets.size());
+        stats.put("trackedShares", shareBuckets.size());
+        stats.put("evictedBuckets", evictedBuckets.get());
+        return stats;
+    }
+
+    // Một lượt upload/download đang chạy; gọi consume() sau mỗi chunk đã đọc/ghi
+    public class Transfer implements AutoCloseable {
+
+        private final SharedBucket user;
+        private final SharedBucket share;
+        // Phần đầu transfer còn được miễn chờ; về 0 ngay khi một chunk không được miễn
+        private long firstBurstRemaining = firstBurstBytes;
+        private boolean closed;
+
+        private Transfer(SharedBucket user, SharedBucket share) {
+            this.user = user;
+            this.share = share;
+        }
+
+        public void consume(int bytes) throws InterruptedException {
+            if (bytes <= 0) {
+                return;
+            }
+            totalBytes.addAndGet(bytes);
+            boolean exempt = false;
+            if (firstBurstRemaining > 0) {
+                exempt = bytes <= firstBurstRemaining && firstBurstBucket.tryAcquire(bytes);
+                firstBurstRemaining = exempt ? firstBurstRemaining - bytes : 0;
+            }
+            long waitNanos = globalBucket.reserve(bytes);
+            if (user != null) {
+                waitNanos = Math.max(waitNanos, user.tokens.reserve(bytes));
+            }
+            if (share != null) {
+                waitNanos = Math.max(waitNanos, share.tokens.reserve(bytes));
+            }
+            if (exempt) {
+                firstBurstBytesServed.addAndGet(bytes);
+            } else if (waitNanos > 0) {
+                throttledBytes.addAndGet(bytes);
+                throttledNanos.addAndGet(waitNanos);
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                activeTransfers.decrementAndGet();
+                if (user != null) {
+                    detach(userBuckets, user.id);
+                }
+                if (share != null) {
+                    detach(shareBuckets, share.id);
+                }
+            }
+        }
+    }
+
+    // Bucket dùng chung giữa các transfer của cùng một user / share; users chỉ được sửa trong compute của map
+    private static final class SharedBucket {
+
+        private final Long id;
+        private final TokenBucket tokens;
+        private int users;
+
+        private SharedBucket(Long id, TokenBucket tokens) {
+            this.id = id;
+            this.tokens = tokens;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.FileStorage.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+// SHA-256 của nội dung blob, lưu dạng hex trong cột checksum để IntegrityScrubber phát hiện bit rot
+public final class BlobChecksum {
+
+    static final int READ_CHUNK_SIZE = 1024 * 1024;
+
+    private BlobChecksum() {
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static String of(byte[] data) {
+        MessageDigest digest = newDigest();
+        digest.update(data);
+        return hex(digest);
+    }
+
+    // Băm vùng [offset, offset + length) của file (blob riêng hoặc bản ghi trong segment)
+    public static String of(Path path, long offset, long length) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_CHUNK_SIZE, Math.max(length, 1)));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = offset;
+            long remaining = length;
+            while (remaining > 0) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Blob is shorter than expected: " + path);
+                }
+                buffer.flip();
+                digest.update(buffer);
+                position += read;
+                remaining -= read;
+            }
+        }
+        return hex(digest);
+    }
+}
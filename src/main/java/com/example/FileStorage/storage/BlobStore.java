@@ -0,0 +1,410 @@
+package com.example.FileStorage.storage;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Quản lý nơi lưu blob trên đĩa: sinh đường dẫn duy nhất, ghi và xóa blob.
+// Mọi blob mới đều được ghi vào .staging trước, fsync theo mức Durability,
+// rồi mới rename nguyên tử sang đường dẫn cuối cùng; nhờ vậy sau crash không có blob bị cắt cụt
+// mà DB trỏ tới (file .part còn sót lại được StorageReconciler dọn).
+// Volume đích do VolumeManager chọn theo tên blob; khi bật replication, bản sao giữ nguyên tên blob
+// trên các volume kế tiếp trong thứ hạng.
+// Từ lúc blob xuất hiện ở đường dẫn cuối tới khi dòng DB trỏ tới nó được lưu, đường dẫn nằm trong tập in-flight;
+// người gọi release() sau khi lưu (hoặc bỏ) dòng DB, StorageReconciler không cách ly blob in-flight.
+@Component
+public class BlobStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobStore.class);
+    private static final int WRITE_CHUNK_SIZE = 64 * 1024;
+    private static final String PART_SUFFIX = ".part";
+
+    static final String STAGING_DIR = ".staging";
+
+    private final VolumeManager volumeManager;
+    private final Durability durability;
+    private final GroupCommitter groupCommitter;
+    private final boolean reflinkEnabled;
+    // Volume (root) -> filesystem có hỗ trợ FICLONE không; dò một lần lúc khởi động, volume lạ được dò khi gặp lần đầu
+    private final Map<Path, Boolean> reflinkSupport = new ConcurrentHashMap<>();
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong reflinkCopies = new AtomicLong();
+    private final AtomicLong hardLinkCopies = new AtomicLong();
+    private final AtomicLong streamedCopies = new AtomicLong();
+
+    @Autowired
+    public BlobStore(VolumeManager volumeManager,
+                     @Value("${file.copy.reflink:true}") boolean reflinkEnabled,
+                     @Value("${file.durability.mode:per-file}") String durability,
+                     GroupCommitter groupCommitter) {
+        this(volumeManager, reflinkEnabled, Durability.parse(durability), groupCommitter);
+    }
+
+    public BlobStore(VolumeManager volumeManager, boolean reflinkEnabled, Durability durability, GroupCommitter groupCommitter) {
+        this.volumeManager = volumeManager;
+        this.reflinkEnabled = reflinkEnabled && System.getProperty("os.name", "").toLowerCase().contains("linux");
+        this.durability = durability;
+        this.groupCommitter = groupCommitter;
+    }
+
+    // Dò reflink trên từng volume bằng một file nhỏ; chỉ kết quả dò quyết định có dùng reflink hay không,
+    // lỗi của một lần copy cụ thể (file nguồn mất, hết chỗ, timeout) chỉ làm lần đó rơi xuống hard link
+    @PostConstruct
+    public void probeReflink() {
+        if (!reflinkEnabled) {
+            return;
+        }
+        for (Volume volume : volumeManager.getVolumes()) {
+            reflinkSupported(volume.getRoot());
+        }
+    }
+
+    private boolean reflinkSupported(Path root) {
+        return reflinkEnabled && reflinkSupport.computeIfAbsent(root.toAbsolutePath().normalize(), this::probeReflink);
+    }
+
+    private boolean probeReflink(Path root) {
+        Path probe = null;
+        Path clone = null;
+        try {
+            probe = stagingPath(root, ".reflink-probe-" + UUID.randomUUID());
+            clone = probe.resolveSibling(probe.getFileName() + ".clone");
+            Files.write(probe, new byte[]{1});
+            boolean supported = reflink(probe, clone);
+            log.info("Reflink copy {} on {}", supported ? "supported" : "not supported, using hard links", root);
+            return supported;
+        } catch (IOException ex) {
+            log.info("Reflink probe failed on {}, using hard links: {}", root, ex.getMessage());
+            return false;
+        } finally {
+            deleteQuietly(probe);
+            deleteQuietly(clone);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+        }
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    // Tạo tên file duy nhất và loại bỏ mọi path traversal
+    private static String newBlobName(String originalFileName) {
+        String safeFileName = originalFileName == null ? "file" : Paths.get(originalFileName).getFileName().toString();
+        return System.currentTimeMillis() + "_" + UUID.randomUUID().toString().substring(0, 8) + "_" + safeFileName;
+    }
+
+    // File tạm nằm cùng filesystem với thư mục đích để rename được nguyên tử;
+    // tên file tạm mang theo tên blob cuối cùng để commit biết đích đến
+    private static Path stagingPath(Path root, String blobName) throws IOException {
+        Path stagingDir = root.resolve(STAGING_DIR);
+        Files.createDirectories(stagingDir);
+        return stagingDir.resolve(blobName + PART_SUFFIX);
+    }
+
+    // File tạm cho một blob mới, đặt trên volume chính mà VolumeManager chọn
+    public Path newStagingPath(String originalFileName) throws IOException {
+        String blobName = volumeManager.placeName(() -> newBlobName(originalFileName));
+        return stagingPath(volumeManager.place(blobName).get(0).getRoot(), blobName);
+    }
+
+    public StoredBlob write(InputStream inputStream, String originalFileName) throws IOException {
+        return write(inputStream, originalFileName, null);
+    }
+
+    // admission (nếu có): permit ghi chỉ được giữ quanh từng lần ghi xuống đĩa, không qua lúc đọc từ client
+    // hay chờ băng thông, và độ trễ ghi được báo cho AIMD; SHA-256 được tính ngay trên luồng ghi
+    public StoredBlob write(InputStream inputStream, String originalFileName, AdmissionLimiter admission) throws IOException {
+        Path staging = newStagingPath(originalFileName);
+        MessageDigest digest = BlobChecksum.newDigest();
+        Volume volume = volumeManager.volumeOf(staging.getParent());
+        if (volume != null) {
+            volume.beginIo();
+        }
+        try (FileChannel out = FileChannel.open(staging, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[WRITE_CHUNK_SIZE];
+            int n;
+            while ((n = inputStream.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                if (admission == null) {
+                    writeFully(out, chunk);
+                    continue;
+                }
+                try (AdaptiveLimit.Permit permit = admission.acquireWriteSlot()) {
+                    long started = System.nanoTime();
+                    writeFully(out, chunk);
+                    permit.recordLatency(System.nanoTime() - started);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            Files.deleteIfExists(staging);
+            throw new InterruptedIOException("Upload interrupted");
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(staging);
+            throw ex;
+        } finally {
+            if (volume != null) {
+                volume.endIo();
+            }
+        }
+        return commit(staging, BlobChecksum.hex(digest));
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer chunk) throws IOException {
+        while (chunk.hasRemaining()) {
+            out.write(chunk);
+        }
+    }
+
+    public StoredBlob commit(Path staging) throws IOException {
+        return commit(staging, null);
+    }
+
+    // fsync file tạm, rename nguyên tử sang tên cuối, fsync thư mục để rename cũng bền vững,
+    // rồi ghi các bản sao (nếu bật replication) lên những volume khác
+    public StoredBlob commit(Path staging, String checksum) throws IOException {
+        Path target;
+        try {
+            target = publish(staging);
+        } catch (IOException ex) {
+            Files.deleteIfExists(staging);
+            throw ex;
+        }
+        List<Path> replicas = new ArrayList<>();
+        try {
+            for (Volume volume : volumeManager.place(target.getFileName().toString())) {
+                if (replicas.size() + 1 >= volumeManager.getReplication()) {
+                    break;
+                }
+                if (!volume.getRoot().equals(target.getParent())) {
+                    replicas.add(copyTo(target, volume));
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(target);
+            replicas.forEach(replica -> delete(replica.toString()));
+            release(new StoredBlob(target, replicas));
+            throw ex;
+        }
+        return new StoredBlob(target, replicas, checksum);
+    }
+
+    // Đăng ký in-flight trước khi rename để không có lúc nào blob nằm ở đường dẫn cuối mà reconciler thấy được
+    // trong khi cả DB lẫn tập in-flight đều chưa biết tới nó
+    private Path publish(Path staging) throws IOException {
+        String name = staging.getFileName().toString();
+        Path target = staging.getParent().getParent().resolve(name.substring(0, name.length() - PART_SUFFIX.length()));
+        inFlight.add(key(target));
+        try {
+            publish(staging, target);
+        } catch (IOException | RuntimeException ex) {
+            inFlight.remove(key(target));
+            throw ex;
+        }
+        return target;
+    }
+
+    private void publish(Path staging, Path target) throws IOException {
+        sync(staging);
+        Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            sync(target.getParent());
+        } catch (IOException ex) {
+            // Rename chưa chắc đã bền mà người gọi sẽ không ghi dòng DB nào: không để lại blob mồ côi
+            deleteQuietly(target);
+            throw ex;
+        }
+    }
+
+    // Dòng DB trỏ tới blob đã được lưu (hoặc đã bỏ): blob thôi được bảo vệ khỏi reconciler
+    public void release(StoredBlob blob) {
+        release(blob.getPath());
+        blob.getReplicas().forEach(this::release);
+    }
+
+    public void release(Path path) {
+        inFlight.remove(key(path));
+    }
+
+    public boolean isInFlight(Path path) {
+        return inFlight.contains(key(path));
+    }
+
+    private static Path key(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+
+    // Chép blob sang volume khác, giữ nguyên tên blob (dùng cho bản sao và rebalancer); bản mới ở trạng thái in-flight
+    public Path copyTo(Path source, Volume volume) throws IOException {
+        return copyTo(source, volume, null);
+    }
+
+    // linkFrom: blob trên chính volume đích có cùng nội dung (cùng inode với source trước khi dời);
+    // hard link tới nó thay vì chép để các bản copy phía server vẫn dùng chung dữ liệu sau khi rebalance
+    public Path copyTo(Path source, Volume volume, Path linkFrom) throws IOException {
+        Path staging = stagingPath(volume.getRoot(), source.getFileName().toString());
+        volume.beginIo();
+        try {
+            Files.deleteIfExists(staging);
+            if (linkFrom != null && hardLink(linkFrom, staging)) {
+                Files.setLastModifiedTime(staging, FileTime.from(Instant.now()));
+                hardLinkCopies.incrementAndGet();
+            } else {
+                Files.copy(source, staging, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return publish(staging);
+        } catch (IOException ex) {
+            Files.deleteIfExists(staging);
+            throw ex;
+        } finally {
+            volume.endIo();
+        }
+    }
+
+    // File riêng của một blob: không ai khác chờ chung nên GROUPED cũng fsync ngay; thư mục thì nhiều upload dùng chung
+    void sync(Path path) throws IOException {
+        switch (durability) {
+            case PER_FILE -> GroupCommitter.fsync(path);
+            case GROUPED -> {
+                if (Files.isDirectory(path)) {
+                    groupCommitter.sync(path);
+                } else {
+                    GroupCommitter.fsync(path);
+                }
+            }
+            case NONE -> { }
+        }
+    }
+
+    // Sau khi nối bản ghi vào file dùng chung (segment): với GROUPED các append đồng thời chờ chung một lần fsync
+    void syncAppend(Path path) throws IOException {
+        switch (durability) {
+            case PER_FILE -> GroupCommitter.fsync(path);
+            case GROUPED -> groupCommitter.sync(path);
+            case NONE -> { }
+        }
+    }
+
+    // Nhân bản blob phía server mà không truyền byte qua mạng.
+    // Thứ tự ưu tiên: reflink (FICLONE, qua cp --reflink) -> hard link -> copy thường.
+    // Hard link an toàn vì blob không bao giờ bị ghi đè tại chỗ: mọi thay đổi đều ghi ra blob mới.
+    // Bản chính của bản copy nằm cùng volume với blob nguồn để reflink/hard link dùng được,
+    // và được đặt tên sao cho volume đó cũng là vị trí HRW của nó, nên rebalancer không phải dời.
+    // Volume nguồn đang rút (hoặc không có tên nào thuộc về nó): chép thường sang vị trí HRW của blob mới.
+    public StoredBlob copy(String sourcePath, String originalFileName) throws IOException {
+        Path source = Paths.get(sourcePath).toAbsolutePath().normalize();
+        Volume volume = volumeManager.volumeOf(source);
+        String blobName = volume == null ? newBlobName(originalFileName)
+                : volumeManager.nameOn(volume, () -> newBlobName(originalFileName));
+        if (blobName == null) {
+            Path staging = newStagingPath(originalFileName);
+            Files.copy(source, staging);
+            streamedCopies.incrementAndGet();
+            return commit(staging);
+        }
+        Path staging = stagingPath(source.getParent(), blobName);
+        if (reflinkSupported(source.getParent()) && reflink(source, staging)) {
+            reflinkCopies.incrementAndGet();
+        } else if (hardLink(source, staging)) {
+            // Hard link dùng chung inode nên mang mtime cũ của blob nguồn: đóng dấu lại để bản copy
+            // không lọt qua thời gian ân hạn (tính theo mtime) của reconciler ngay khi vừa tạo
+            Files.setLastModifiedTime(staging, FileTime.from(Instant.now()));
+            hardLinkCopies.incrementAndGet();
+        } else {
+            Files.copy(source, staging);
+            streamedCopies.incrementAndGet();
+        }
+        return commit(staging);
+    }
+
+    private static boolean hardLink(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (UnsupportedOperationException | IOException ex) {
+            Files.deleteIfExists(target);
+            return false;
+        }
+    }
+
+    private static boolean reflink(Path source, Path target) {
+        try {
+            Process process = new ProcessBuilder("cp", "--reflink=always", source.toString(), target.toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (process.waitFor(30, TimeUnit.SECONDS) && process.exitValue() == 0) {
+                return true;
+            }
+            process.destroyForcibly();
+        } catch (IOException ex) {
+            log.debug("Reflink copy of {} failed: {}", source, ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        deleteQuietly(target);
+        return false;
+    }
+
+    public Map<String, Object> getCopyStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("reflinkEnabled", reflinkEnabled);
+        stats.put("reflinkVolumes", reflinkSupport.entrySet().stream()
+                .filter(Map.Entry::getValue).map(entry -> entry.getKey().toString()).toList());
+        stats.put("reflinkCopies", reflinkCopies.get());
+        stats.put("hardLinkCopies", hardLinkCopies.get());
+        stats.put("streamedCopies", streamedCopies.get());
+        stats.put("inFlightBlobs", inFlight.size());
+        return stats;
+    }
+
+    public void deleteAll(String storagePath, List<String> replicaPaths) {
+        delete(storagePath);
+        replicaPaths.forEach(this::delete);
+    }
+
+    public boolean delete(String storagePath) {
+        try {
+            return Files.deleteIfExists(Paths.get(storagePath));
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.FileStorage.storage;
+
+import com.example.FileStorage.entity.FileEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+// Stream blob về client theo từng chunk, đi qua admission control (ngân sách đọc)
+// và giới hạn băng thông của BandwidthManager. Khi blob có bản sao, đọc từ volume đang ít I/O nhất;
+// file nhỏ nằm trong segment được đọc từ vùng mmap (không syscall đọc), chép qua một buffer nhỏ dùng lại ra response.
+// Admission chỉ quyết định nhận request (503 nếu quá tải); permit đọc được giữ quanh từng lần đọc đĩa,
+// không qua lúc ghi ra client hay lúc chờ băng thông; chờ permit quá max-wait-ms thì transfer bị hủy.
+// Permit và Transfer đều được lấy bên trong body,
+// nên request bị hủy trước khi body chạy (client ngắt, async timeout) không giữ lại gì.
+@Component
+public class BlobStreamer {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // Đánh dấu request đang trả body dạng stream để DownloadAsyncConfig nới async timeout cho riêng nó
+    static final String STREAMING_DOWNLOAD_ATTRIBUTE = BlobStreamer.class.getName() + ".streaming";
+
+    private final BandwidthManager bandwidthManager;
+    private final AdmissionLimiter admissionLimiter;
+    private final VolumeManager volumeManager;
+    private final SegmentStore segmentStore;
+    private final HotFileCache hotFileCache;
+
+    public BlobStreamer(BandwidthManager bandwidthManager, AdmissionLimiter admissionLimiter,
+                        VolumeManager volumeManager, SegmentStore segmentStore, HotFileCache hotFileCache) {
+        this.bandwidthManager = bandwidthManager;
+        this.admissionLimiter = admissionLimiter;
+        this.volumeManager = volumeManager;
+        this.segmentStore = segmentStore;
+        this.hotFileCache = hotFileCache;
+    }
+
+    // Phiên bản hiện tại của file khi cache miss: nếu file đủ nóng thì nạp vào HotFileCache rồi trả từ cache,
+    // nếu không thì đọc từ segment / blob như bình thường.
+    // cacheGeneration lấy từ hotFileCache.generation() trước khi đọc metadata trong DB.
+    // userId là người đang tải (bị tính băng thông), không phải chủ file.
+    public ResponseEntity<StreamingResponseBody> downloadFile(FileEntity file, Long userId, Long shareId,
+                                                              long cacheGeneration) throws IOException {
+        boolean packed = file.getSegmentId() != null;
+        List<Path> candidates = locations(file.getStoragePath(), file.getReplicaPaths());
+        Path path = packed ? candidates.get(0) : volumeManager.pickReplica(candidates);
+        if (path != null) {
+            long length = packed ? file.getFileSize() : Files.size(path);
+            if (hotFileCache.recordMiss(file.getId(), length)) {
+                try (AdaptiveLimit.Permit permit = admissionLimiter.acquireRead()) {
+                    HotFileCache.Entry entry = hotFileCache.load(file.getId(), cacheGeneration, path,
+                            packed ? file.getSegmentOffset() : 0, length, file.getFileName(), file.getFileType(),
+                            file.getUser().getId());
+                    // null: ngân sách off-heap của cache đã hết, đi đường đọc thường bên dưới
+                    if (entry != null) {
+                        return downloadCached(entry, userId, shareId);
+                    }
+                } catch (AdmissionRejectedException ex) {
+                    return serviceUnavailable(ex);
+                } catch (IOException ex) {
+                    // Không nạp được (blob vừa bị dời / xóa): đi đường đọc thường bên dưới
+                }
+            }
+        }
+        if (packed) {
+            return downloadSegment(file.getSegmentId(), file.getSegmentOffset(), file.getFileSize(),
+                    file.getFileName(), file.getFileType(), userId, shareId);
+        }
+        return download(candidates, file.getFileName(), file.getFileType(), userId, shareId);
+    }
+
+    // Cache hit: nội dung nằm sẵn trong direct buffer, không cần DB, không chạm đĩa nên không qua admission
+    public ResponseEntity<StreamingResponseBody> downloadCached(HotFileCache.Entry entry, Long userId, Long shareId) {
+        ByteBuffer data = entry.getData();
+        StreamingResponseBody body = out -> {
+            try (BandwidthManager.Transfer transfer = bandwidthManager.open(userId, shareId)) {
+                writeBuffer(data, false, out, transfer);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Download interrupted");
+            }
+        };
+        return ok(entry.getFileName(), entry.getFileType(), entry.getLength(), body);
+    }
+
+    // Vùng mmap của segment: trang được nạp từ đĩa dưới permit đọc, sau đó mới ghi ra client.
+    // OutputStream của servlet chỉ nhận byte[], nên mỗi chunk được chép qua một buffer heap duy nhất
+    // dùng lại suốt transfer (không sinh rác theo chunk); bản trong cache / segment vẫn nằm ngoài heap
+    private void writeBuffer(ByteBuffer data, boolean mapped, OutputStream out, BandwidthManager.Transfer transfer)
+            throws IOException, InterruptedException {
+        byte[] buffer = new byte[(int) Math.min(CHUNK_SIZE, data.remaining())];
+        while (data.hasRemaining()) {
+            ByteBuffer chunk = data.slice(data.position(), Math.min(CHUNK_SIZE, data.remaining()));
+            if (mapped) {
+                try (AdaptiveLimit.Permit permit = readSlot()) {
+                    long started = System.nanoTime();
+                    ((MappedByteBuffer) chunk).load();
+                    permit.recordLatency(System.nanoTime() - started);
+                }
+            }
+            int n = chunk.remaining();
+            chunk.get(buffer, 0, n);
+            out.write(buffer, 0, n);
+            data.position(data.position() + n);
+            transfer.consume(n);
+        }
+    }
+
+    // Bản ghi trong segment: không mở file, không syscall đọc với segment đã sealed
+    public ResponseEntity<StreamingResponseBody> downloadSegment(long segmentId, long offset, long length, String fileName,
+                                                                 String fileType, Long userId, Long shareId) throws IOException {
+        ByteBuffer record;
+        try (AdaptiveLimit.Permit permit = admissionLimiter.acquireRead()) {
+            // Segment đang ghi dở được đọc bằng một lần đọc đĩa ngay tại đây
+            record = segmentStore.read(segmentId, offset, (int) length);
+        } catch (AdmissionRejectedException ex) {
+            return serviceUnavailable(ex);
+        } catch (NoSuchFileException | EOFException ex) {
+            return ResponseEntity.notFound().build();
+        }
+        // Segment đã sealed trả về slice của vùng mmap (direct), segment đang ghi trả về bản sao trên heap
+        boolean mapped = record.isDirect();
+        StreamingResponseBody body = out -> {
+            try (BandwidthManager.Transfer transfer = bandwidthManager.open(userId, shareId)) {
+                writeBuffer(record, mapped, out, transfer);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Download interrupted");
+            }
+        };
+        return ok(fileName, fileType, length, body);
+    }
+
+    public ResponseEntity<StreamingResponseBody> download(Path path, String fileName, String fileType,
+                                                          Long userId, Long shareId) throws IOException {
+        return download(List.of(path), fileName, fileType, userId, shareId);
+    }
+
+    // candidates: bản chính và các bản sao của cùng một blob
+    public ResponseEntity<StreamingResponseBody> download(List<Path> candidates, String fileName, String fileType,
+                                                          Long userId, Long shareId) throws IOException {
+        Path path = volumeManager.pickReplica(candidates);
+        if (path == null) {
+            return ResponseEntity.notFound().build();
+        }
+        Volume volume = volumeManager.volumeOf(path);
+        long length = Files.size(path);
+        try {
+            admissionLimiter.admitRead();
+        } catch (AdmissionRejectedException ex) {
+            return serviceUnavailable(ex);
+        }
+        StreamingResponseBody body = out -> {
+            try (BandwidthManager.Transfer transfer = bandwidthManager.open(userId, shareId);
+                 InputStream in = Files.newInputStream(path)) {
+                byte[] buffer = new byte[CHUNK_SIZE];
+                while (true) {
+                    int n = readChunk(in, buffer, volume);
+                    if (n <= 0) {
+                        break;
+                    }
+                    out.write(buffer, 0, n);
+                    transfer.consume(n);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Download interrupted");
+            }
+        };
+
+        return ok(fileName, fileType, length, body);
+    }
+
+    // Một lần đọc đĩa: permit và bộ đếm I/O của volume chỉ được giữ trong lúc đọc,
+    // độ trễ ghi nhận cho AIMD vì vậy không gồm thời gian ghi ra client hay chờ băng thông
+    private int readChunk(InputStream in, byte[] buffer, Volume volume) throws IOException, InterruptedException {
+        if (volume != null) {
+            volume.beginIo();
+        }
+        try (AdaptiveLimit.Permit permit = readSlot()) {
+            long started = System.nanoTime();
+            int n = in.read(buffer);
+            permit.recordLatency(System.nanoTime() - started);
+            return n;
+        } finally {
+            if (volume != null) {
+                volume.endIo();
+            }
+        }
+    }
+
+    // Response đã bắt đầu nên không còn trả 503 được: hết thời gian chờ permit thì hủy transfer như một lỗi I/O
+    private AdaptiveLimit.Permit readSlot() throws IOException, InterruptedException {
+        try {
+            return admissionLimiter.acquireReadSlot();
+        } catch (AdmissionRejectedException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    private static ResponseEntity<StreamingResponseBody> ok(String fileName, String fileType, long length,
+                                                            StreamingResponseBody body) {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            request.setAttribute(STREAMING_DOWNLOAD_ATTRIBUTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + fileName + "\"")
+                .contentType(fileType == null ? MediaType.APPLICATION_OCTET_STREAM : MediaType.parseMediaType(fileType))
+                .contentLength(length)
+                .body(body);
+    }
+
+    public static List<Path> locations(String storagePath, List<String> replicaPaths) {
+        List<Path> paths = new ArrayList<>();
+        paths.add(Paths.get(storagePath));
+        replicaPaths.forEach(replica -> paths.add(Paths.get(replica)));
+        return paths;
+    }
+
+    public static <T> ResponseEntity<T> serviceUnavailable(AdmissionRejectedException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .build();
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.FileStorage.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.concurrent.Callable;
+
+// Async timeout dài chỉ cho download dạng stream (response do BlobStreamer dựng); SSE và các request async khác
+// giữ timeout mặc định. Timeout được đặt ngay trước khi request chuyển sang xử lý bất đồng bộ
+@Configuration
+public class DownloadAsyncConfig implements WebMvcConfigurer {
+
+    private final long downloadTimeoutMillis;
+
+    public DownloadAsyncConfig(@Value("${file.download.async-timeout-ms:86400000}") long downloadTimeoutMillis) {
+        this.downloadTimeoutMillis = downloadTimeoutMillis;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+            @Override
+            public <T> void beforeConcurrentHandling(NativeWebRequest request, Callable<T> task) {
+                Object streaming = request.getAttribute(BlobStreamer.STREAMING_DOWNLOAD_ATTRIBUTE,
+                        RequestAttributes.SCOPE_REQUEST);
+                if (Boolean.TRUE.equals(streaming) && request instanceof AsyncWebRequest asyncRequest) {
+                    asyncRequest.setTimeout(downloadTimeoutMillis);
+                }
+            }
+        });
+    }
+}
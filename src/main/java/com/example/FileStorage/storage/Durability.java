@@ -0,0 +1,16 @@
+package com.example.FileStorage.storage;
+
+// Mức độ bền vững khi ghi blob:
+// NONE     - không fsync, nhanh nhất, có thể mất dữ liệu khi mất điện
+// PER_FILE - fsync từng file và thư mục ngay khi ghi xong
+// GROUPED  - group commit: upload nhỏ nối vào segment dùng chung, các append đồng thời chờ chung một lần fsync;
+//            fsync thư mục cũng được gom. Upload lớn vẫn fsync file riêng như PER_FILE
+public enum Durability {
+    NONE,
+    PER_FILE,
+    GROUPED;
+
+    public static Durability parse(String value) {
+        return valueOf(value.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.FileStorage.storage;
+
+// Count-min sketch 4 hàng, bộ đếm bão hòa ở 15, ước lượng tần suất truy cập gần đây của một khóa.
+// Sau mỗi sampleSize lần tăng, mọi bộ đếm bị chia đôi (aging) để tần suất cũ phai dần.
+// Không thread-safe: người gọi tự giữ lock.
+public class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final long[] SEEDS = {
+            0x9e3779b97f4a7c15L, 0xc2b2ae3d27d4eb4fL, 0x165667b19e3779f9L, 0xd6e8feb86659fd93L
+    };
+
+    private final byte[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    public FrequencySketch(int expectedEntries) {
+        int width = Integer.highestOneBit(Math.max(64, expectedEntries - 1)) << 1;
+        this.table = new byte[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    public int frequency(long key) {
+        int min = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, table[row][index(key, row)]);
+        }
+        return min;
+    }
+
+    public void increment(long key) {
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int i = index(key, row);
+            if (table[row][i] < MAX_COUNT) {
+                table[row][i]++;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            age();
+        }
+    }
+
+    private void age() {
+        for (byte[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>= 1;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int index(long key, int row) {
+        long hash = (key + SEEDS[row]) * SEEDS[row];
+        hash ^= hash >>> 32;
+        return (int) hash & mask;
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.FileStorage.storage;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Group commit: các yêu cầu đến trong cùng một cửa sổ thời gian (hoặc trong lúc lô trước đang fsync) được gom
+// thành một lô, mỗi đường dẫn khác nhau trong lô chỉ fsync một lần rồi mới đánh thức mọi người chờ.
+// Chỉ những thứ nhiều người ghi dùng chung mới đi qua đây: segment đang ghi (mọi upload nhỏ nối vào cùng một file,
+// một fsync phủ mọi bản ghi đã write trước nó) và thư mục volume sau khi rename. File riêng của upload lớn
+// được BlobStore fsync trực tiếp vì gom cũng không bớt được lần fsync nào.
+@Component
+public class GroupCommitter {
+
+    private final long windowNanos;
+    private final int maxBatch;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private final ExecutorService syncPool;
+    private volatile boolean running = true;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong fsyncs = new AtomicLong();
+
+    public GroupCommitter(
+            @Value("${file.durability.group-window-ms:1}") long windowMillis,
+            @Value("${file.durability.group-max-batch:256}") int maxBatch,
+            @Value("${file.durability.group-sync-threads:8}") int syncThreads
+    ) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatch = maxBatch;
+        this.syncPool = Executors.newFixedThreadPool(Math.max(1, syncThreads), runnable -> {
+            Thread thread = new Thread(runnable, "group-commit-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher = new Thread(this::run, "group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // Chặn tới khi path đã được fsync trong một lô
+    public void sync(Path path) throws IOException {
+        Pending pending = new Pending(path);
+        requests.incrementAndGet();
+        queue.add(pending);
+        try {
+            pending.future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for group commit");
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException io ? io : new IOException(ex.getCause());
+        }
+    }
+
+    // fsync một file hoặc thư mục; một số hệ điều hành (Windows) không cho fsync thư mục nên bỏ qua lỗi đó
+    public static void fsync(Path path) throws IOException {
+        boolean directory = Files.isDirectory(path);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            if (!directory) {
+                throw ex;
+            }
+        }
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>();
+        while (running) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) throws InterruptedException {
+        Map<Path, Future<?>> syncs = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            syncs.computeIfAbsent(pending.path, path -> syncPool.submit(() -> {
+                fsync(path);
+                return null;
+            }));
+        }
+        Map<Path, Throwable> failures = new HashMap<>();
+        for (Map.Entry<Path, Future<?>> sync : syncs.entrySet()) {
+            try {
+                sync.getValue().get();
+                fsyncs.incrementAndGet();
+            } catch (ExecutionException ex) {
+                failures.put(sync.getKey(), ex.getCause());
+            }
+        }
+        batches.incrementAndGet();
+        for (Pending pending : batch) {
+            Throwable failure = failures.get(pending.path);
+            if (failure == null) {
+                pending.future.complete(null);
+            } else {
+                pending.future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.get());
+        stats.put("batches", batches.get());
+        stats.put("fsyncs", fsyncs.get());
+        stats.put("pending", queue.size());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        flusher.interrupt();
+        syncPool.shutdownNow();
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.future.completeExceptionally(new IOException("Group committer is shutting down"));
+        }
+    }
+
+    private static final class Pending {
+        private final Path path;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Pending(Path path) {
+            this.path = path;
+        }
+    }
+}
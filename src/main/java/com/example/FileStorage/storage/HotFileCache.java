@@ -0,0 +1,399 @@
+package com.example.FileStorage.storage;
+
+import com.example.FileStorage.dto.ChangeEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Cache nội dung file nóng ngoài heap (direct ByteBuffer) đặt trước download, kiểu W-TinyLFU:
+// - mọi truy cập đều được đếm trong FrequencySketch;
+// - entry mới vào vùng window LRU nhỏ (1% dung lượng), khi bị đẩy khỏi window phải "thắng"
+//   entry sắp bị loại của vùng chính (so tần suất) mới được giữ lại;
+// - vùng chính là SLRU: probation (20%) và protected (80%), hit trong probation được thăng lên protected.
+// Chỉ nạp file vào cache từ lần truy cập thứ min-frequency, và chỉ khi nó thắng được entry sắp bị loại
+// của vùng chính, để file chỉ tải một lần hoặc nguội hơn nội dung hiện có không tốn một lần cấp phát.
+// Entry bị xóa khi file bị xóa / đổi tên / có phiên bản mới / chuyển chủ (qua ChangeEvent).
+// Cache hit không lấy lock: tra ConcurrentHashMap rồi ghi nhận truy cập vào ReadBuffer; thứ tự LRU và
+// bộ đếm tần suất được cập nhật khi bộ đệm được xả dưới lock (khi đầy, hoặc trước mỗi thao tác ghi).
+// Cache miss cũng không chờ lock: quyết định nạp chỉ được đưa ra khi lấy được lock ngay, nếu không thì
+// lần miss này đọc đĩa như bình thường (truy cập vẫn đã được đếm qua ReadBuffer, lần miss sau thử lại).
+// Direct buffer chỉ được GC giải phóng (entry bị loại có thể vẫn đang được stream), nên mọi byte đã cấp phát
+// được tính vào max-off-heap-bytes cho tới khi Cleaner báo buffer đã được thu hồi; hết ngân sách thì không nạp.
+@Component
+public class HotFileCache {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+    private final int minFrequency;
+    private final long maxOffHeapBytes;
+    private final long windowMaxBytes;
+    private final long protectedMaxBytes;
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final ReadBuffer readBuffer = new ReadBuffer();
+    private final AtomicLong offHeapBytes = new AtomicLong();
+
+    // Các trường dưới đây chỉ được đọc / ghi khi giữ lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final LinkedHashMap<Long, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Long, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Long, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long windowBytes;
+    private long probationBytes;
+    private long protectedBytes;
+
+    // Tăng mỗi lần invalidate: lần nạp bắt đầu trước một invalidate sẽ bị bỏ qua để không cache dữ liệu cũ
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong requestedBytes = new AtomicLong();
+    private final AtomicLong hitBytes = new AtomicLong();
+    private final AtomicLong admissions = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong skippedLoads = new AtomicLong();
+    private final AtomicLong contendedMisses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong evictedBytes = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public HotFileCache(
+            @Value("${file.cache.enabled:true}") boolean enabled,
+            @Value("${file.cache.max-bytes:268435456}") long maxBytes,
+            @Value("${file.cache.max-entry-bytes:8388608}") long maxEntryBytes,
+            @Value("${file.cache.min-frequency:2}") int minFrequency,
+            @Value("${file.cache.max-off-heap-bytes:0}") long maxOffHeapBytes
+    ) {
+        this.enabled = enabled && maxBytes > 0;
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, Integer.MAX_VALUE);
+        this.minFrequency = minFrequency;
+        // 0: gấp đôi max-bytes, chừa chỗ cho entry đã bị loại nhưng GC chưa thu hồi
+        this.maxOffHeapBytes = maxOffHeapBytes > 0 ? maxOffHeapBytes : 2 * maxBytes;
+        this.windowMaxBytes = Math.max(maxBytes / 100, 1);
+        this.protectedMaxBytes = (maxBytes - windowMaxBytes) * 8 / 10;
+        // Ước lượng số entry theo kích thước trung bình 64 KB
+        this.sketch = new FrequencySketch((int) Math.min(1 << 20, Math.max(1024, maxBytes / 65536)));
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    // Trả về entry (buffer riêng cho người gọi) hoặc null; mọi lần gọi đều được đếm tần suất.
+    // Không lấy lock: chỉ tra map và ghi nhận truy cập, chỉ xả bộ đệm khi sọc đầy và lock đang rảnh
+    public Entry get(long fileId) {
+        if (!enabled) {
+            return null;
+        }
+        requests.incrementAndGet();
+        Entry entry = entries.get(fileId);
+        if (readBuffer.offer(fileId) && lock.tryLock()) {
+            try {
+                drainReadBuffer();
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (entry == null) {
+            return null;
+        }
+        hits.incrementAndGet();
+        hitBytes.addAndGet(entry.length);
+        requestedBytes.addAndGet(entry.length);
+        return entry.duplicate();
+    }
+
+    // Gọi khi cache miss: báo số byte để tính byte hit ratio, cho biết có nên nạp file vào cache không.
+    // Kiểm tra admission trước khi cấp phát: file phải đủ nóng và thắng được entry sắp bị loại của vùng chính.
+    // Lock đang bận thì trả false ngay thay vì xếp hàng sau các luồng khác trên đường download
+    public boolean recordMiss(long fileId, long length) {
+        if (!enabled) {
+            return false;
+        }
+        requestedBytes.addAndGet(length);
+        if (length > maxEntryBytes) {
+            return false;
+        }
+        if (!lock.tryLock()) {
+            contendedMisses.incrementAndGet();
+            return false;
+        }
+        try {
+            drainReadBuffer();
+            int frequency = sketch.frequency(fileId);
+            if (frequency < minFrequency) {
+                return false;
+            }
+            if (!wouldAdmit(frequency, length)) {
+                skippedLoads.incrementAndGet();
+                return false;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean wouldAdmit(int frequency, long length) {
+        if (probationBytes + protectedBytes + length <= maxBytes - windowMaxBytes) {
+            return true;
+        }
+        LinkedHashMap<Long, Entry> victims = probation.isEmpty() ? protectedSegment : probation;
+        return !victims.isEmpty() && frequency > sketch.frequency(victims.values().iterator().next().fileId);
+    }
+
+    // Đọc [offset, offset + length) của file vào direct buffer rồi đưa vào window;
+    // trả về null nếu ngân sách off-heap đã hết (người gọi đọc từ đĩa như bình thường)
+    public Entry load(long fileId, long generationAtLookup, Path path, long offset, long length,
+                      String fileName, String fileType, Long userId) throws IOException {
+        ByteBuffer data = allocate((int) length);
+        if (data == null) {
+            skippedLoads.incrementAndGet();
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (data.hasRemaining()) {
+                if (channel.read(data, offset + data.position()) < 0) {
+                    throw new EOFException("Blob is shorter than expected: " + path);
+                }
+            }
+        }
+        Entry entry = new Entry(fileId, data.flip().asReadOnlyBuffer(), (int) length, fileName, fileType, userId);
+        lock.lock();
+        try {
+            drainReadBuffer();
+            if (generation.get() != generationAtLookup || contains(fileId)) {
+                return entry.duplicate();
+            }
+            window.put(fileId, entry);
+            entries.put(fileId, entry);
+            windowBytes += length;
+            admissions.incrementAndGet();
+            evictWindow();
+        } finally {
+            lock.unlock();
+        }
+        return entry.duplicate();
+    }
+
+    // Giữ chỗ trong ngân sách off-heap trước khi cấp phát; phần giữ chỗ được trả lại khi GC thu hồi buffer
+    private ByteBuffer allocate(int length) {
+        long current;
+        do {
+            current = offHeapBytes.get();
+            if (current + length > maxOffHeapBytes) {
+                return null;
+            }
+        } while (!offHeapBytes.compareAndSet(current, current + length));
+        ByteBuffer data;
+        try {
+            data = ByteBuffer.allocateDirect(length);
+        } catch (OutOfMemoryError ex) {
+            offHeapBytes.addAndGet(-length);
+            return null;
+        }
+        AtomicLong budget = offHeapBytes;
+        CLEANER.register(data, () -> budget.addAndGet(-length));
+        return data;
+    }
+
+    // Xả các truy cập đã ghi nhận: đếm tần suất, làm mới thứ tự LRU, thăng entry probation lên protected
+    private void drainReadBuffer() {
+        readBuffer.drainTo(this::onAccess);
+    }
+
+    private void onAccess(long fileId) {
+        sketch.increment(fileId);
+        if (window.get(fileId) != null || protectedSegment.get(fileId) != null) {
+            return;
+        }
+        Entry entry = probation.remove(fileId);
+        if (entry != null) {
+            probationBytes -= entry.length;
+            protectedSegment.put(fileId, entry);
+            protectedBytes += entry.length;
+            demoteProtected();
+        }
+    }
+
+    // Xả bộ đệm truy cập ngay (dùng trong test và trước khi đọc thống kê)
+    void cleanUp() {
+        lock.lock();
+        try {
+            drainReadBuffer();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean contains(long fileId) {
+        return window.containsKey(fileId) || probation.containsKey(fileId) || protectedSegment.containsKey(fileId);
+    }
+
+    // Entry bị đẩy khỏi window cạnh tranh với các entry sắp bị loại của vùng chính
+    private void evictWindow() {
+        while (windowBytes > windowMaxBytes && !window.isEmpty()) {
+            Iterator<Map.Entry<Long, Entry>> it = window.entrySet().iterator();
+            Entry candidate = it.next().getValue();
+            it.remove();
+            windowBytes -= candidate.length;
+
+            long mainMaxBytes = maxBytes - windowMaxBytes;
+            int candidateFrequency = sketch.frequency(candidate.fileId);
+            boolean admitted = true;
+            while (probationBytes + protectedBytes + candidate.length > mainMaxBytes) {
+                LinkedHashMap<Long, Entry> victims = probation.isEmpty() ? protectedSegment : probation;
+                if (victims.isEmpty()) {
+                    admitted = false;
+                    break;
+                }
+                Entry victim = victims.values().iterator().next();
+                if (candidateFrequency <= sketch.frequency(victim.fileId)) {
+                    admitted = false;
+                    break;
+                }
+                remove(victim.fileId);
+                evictions.incrementAndGet();
+                evictedBytes.addAndGet(victim.length);
+            }
+            if (admitted) {
+                probation.put(candidate.fileId, candidate);
+                probationBytes += candidate.length;
+            } else {
+                entries.remove(candidate.fileId);
+                rejections.incrementAndGet();
+                evictions.incrementAndGet();
+                evictedBytes.addAndGet(candidate.length);
+            }
+        }
+    }
+
+    private void demoteProtected() {
+        while (protectedBytes > protectedMaxBytes && !protectedSegment.isEmpty()) {
+            Iterator<Map.Entry<Long, Entry>> it = protectedSegment.entrySet().iterator();
+            Entry entry = it.next().getValue();
+            it.remove();
+            protectedBytes -= entry.length;
+            probation.put(entry.fileId, entry);
+            probationBytes += entry.length;
+        }
+    }
+
+    private void remove(long fileId) {
+        entries.remove(fileId);
+        Entry entry;
+        if ((entry = window.remove(fileId)) != null) {
+            windowBytes -= entry.length;
+        } else if ((entry = probation.remove(fileId)) != null) {
+            probationBytes -= entry.length;
+        } else if ((entry = protectedSegment.remove(fileId)) != null) {
+            protectedBytes -= entry.length;
+        }
+    }
+
+    public void invalidate(long fileId) {
+        generation.incrementAndGet();
+        lock.lock();
+        try {
+            drainReadBuffer();
+            if (contains(fileId)) {
+                remove(fileId);
+                invalidations.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Nội dung hoặc metadata (tên, chủ sở hữu) thay đổi: bỏ entry cũ
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(ChangeEvent event) {
+        switch (event.getType()) {
+            case ChangeEvent.FILE_UPDATED, ChangeEvent.FILE_RENAMED, ChangeEvent.FILE_DELETED -> invalidate(event.getFileId());
+            case ChangeEvent.FILES_DELETED -> event.getFileIds().forEach(this::invalidate);
+            default -> { }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long requestCount = requests.get();
+        long requestByteCount = requestedBytes.get();
+        stats.put("enabled", enabled);
+        stats.put("maxBytes", maxBytes);
+        stats.put("maxOffHeapBytes", maxOffHeapBytes);
+        stats.put("offHeapBytes", offHeapBytes.get());
+        lock.lock();
+        try {
+            drainReadBuffer();
+            stats.put("entries", window.size() + probation.size() + protectedSegment.size());
+            stats.put("windowBytes", windowBytes);
+            stats.put("probationBytes", probationBytes);
+            stats.put("protectedBytes", protectedBytes);
+        } finally {
+            lock.unlock();
+        }
+        stats.put("requests", requestCount);
+        stats.put("hits", hits.get());
+        stats.put("hitRatio", requestCount == 0 ? 0.0 : (double) hits.get() / requestCount);
+        stats.put("byteHitRatio", requestByteCount == 0 ? 0.0 : (double) hitBytes.get() / requestByteCount);
+        stats.put("admissions", admissions.get());
+        stats.put("rejections", rejections.get());
+        stats.put("skippedLoads", skippedLoads.get());
+        stats.put("contendedMisses", contendedMisses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("evictedBytes", evictedBytes.get());
+        stats.put("invalidations", invalidations.get());
+        return stats;
+    }
+
+    // Nội dung file nằm trong direct buffer (ngoài heap) kèm metadata để trả response không cần DB;
+    // userId là chủ file, băng thông được tính cho người tải chứ không theo trường này
+    public static class Entry {
+
+        private final long fileId;
+        private final ByteBuffer data;
+        private final int length;
+        private final String fileName;
+        private final String fileType;
+        private final Long userId;
+
+        private Entry(long fileId, ByteBuffer data, int length, String fileName, String fileType, Long userId) {
+            this.fileId = fileId;
+            this.data = data;
+            this.length = length;
+            this.fileName = fileName;
+            this.fileType = fileType;
+            this.userId = userId;
+        }
+
+        private Entry duplicate() {
+            return new Entry(fileId, data.duplicate(), length, fileName, fileType, userId);
+        }
+
+        public ByteBuffer getData() { return data; }
+        public int getLength() { return length; }
+        public String getFileName() { return fileName; }
+        public String getFileType() { return fileType; }
+        public Long getUserId() { return userId; }
+    }
+}
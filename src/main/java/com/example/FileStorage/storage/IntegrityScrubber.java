@@ -0,0 +1,431 @@
+package com.example.FileStorage.storage;
+
+import com.example.FileStorage.repository.CorruptedFile;
+import com.example.FileStorage.repository.FileRepository;
+import com.example.FileStorage.repository.FileVersionRepository;
+import com.example.FileStorage.repository.ScrubTarget;
+import com.sun.nio.file.ExtendedOpenOption;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Quét nền liên tục: đọc lại nội dung từng file (mọi bản sao) rồi từng phiên bản cũ, so với SHA-256 đã lưu
+// để phát hiện bit rot. Mỗi lượt lấy một lô dòng theo id (keyset) và băm song song trên một pool thread riêng.
+// Để không ảnh hưởng download:
+// - tổng tốc độ đọc bị giới hạn bởi token bucket;
+// - đọc bằng O_DIRECT (trên volume mà filesystem hỗ trợ, dò một lần lúc khởi động) để không đẩy dữ liệu nóng
+//   ra khỏi page cache;
+// - dừng lại giữa các chunk khi admission control báo đĩa đang chịu tải.
+// Bản sao hỏng được chép lại từ một bản còn khớp; file không còn bản nào khớp bị đánh dấu corrupted.
+// Chỉ checksum sai (kể cả blob ngắn hơn kích thước đã lưu) mới tính là hỏng: bản không đọc được (mất file,
+// lỗi I/O) được đọc lại một lần qua page cache rồi chỉ báo qua unreadableCopies, lượt quét sau kiểm tra lại.
+@Component
+public class IntegrityScrubber {
+
+    private static final Logger log = LoggerFactory.getLogger(IntegrityScrubber.class);
+    private static final int DIRECT_IO_ALIGNMENT = 4096;
+    private static final long PRESSURE_PAUSE_MS = 200;
+
+    private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final VolumeManager volumeManager;
+    private final BlobStore blobStore;
+    private final AdmissionLimiter admissionLimiter;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int threads;
+    private final TokenBucket bandwidth;
+    private final ExecutorService hashers;
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() ->
+            ByteBuffer.allocateDirect(BlobChecksum.READ_CHUNK_SIZE + DIRECT_IO_ALIGNMENT)
+                    .alignedSlice(DIRECT_IO_ALIGNMENT)
+                    .slice(0, BlobChecksum.READ_CHUNK_SIZE));
+    private final boolean directIo;
+    // Volume (root) -> filesystem có nhận O_DIRECT không; dò lúc khởi động, volume lạ được dò khi gặp lần đầu
+    private final Map<Path, Boolean> directIoSupport = new ConcurrentHashMap<>();
+
+    // ReentrantLock thay cho synchronized: job chạy trên virtual thread và chặn ở Future.get() bên trong,
+    // synchronized sẽ ghim (pin) virtual thread vào carrier thread suốt thời gian đó (JDK 21)
+    private final ReentrantLock runLock = new ReentrantLock();
+    private volatile long cursor = 0;
+    // Đang ở nửa sau của một vòng quét: phiên bản cũ, theo id của file_versions
+    private volatile boolean scanningVersions;
+    private final AtomicLong scannedFiles = new AtomicLong();
+    private final AtomicLong scannedVersions = new AtomicLong();
+    private final AtomicLong unreadableCopies = new AtomicLong();
+    private final AtomicLong verifiedBytes = new AtomicLong();
+    private final AtomicLong mismatchedCopies = new AtomicLong();
+    private final AtomicLong repairedCopies = new AtomicLong();
+    private final AtomicLong backfilledChecksums = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong pausedMillis = new AtomicLong();
+    private final AtomicLong completedPasses = new AtomicLong();
+    private volatile LocalDateTime lastPassCompletedAt;
+
+    public IntegrityScrubber(
+            FileRepository fileRepository,
+            FileVersionRepository fileVersionRepository,
+            VolumeManager volumeManager,
+            BlobStore blobStore,
+            AdmissionLimiter admissionLimiter,
+            @Value("${file.scrub.enabled:true}") boolean enabled,
+            @Value("${file.scrub.batch-size:32}") int batchSize,
+            @Value("${file.scrub.threads:0}") int threads,
+            @Value("${file.scrub.bytes-per-second:52428800}") long bytesPerSecond,
+            @Value("${file.scrub.direct-io:true}") boolean directIo
+    ) {
+        this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.volumeManager = volumeManager;
+        this.blobStore = blobStore;
+        this.admissionLimiter = admissionLimiter;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        // 0 = nửa số core: SHA-256 tốn CPU nhưng không được tranh hết core với request
+        this.threads = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.bandwidth = new TokenBucket(bytesPerSecond, Math.max(bytesPerSecond, BlobChecksum.READ_CHUNK_SIZE));
+        this.directIo = directIo;
+        AtomicInteger counter = new AtomicInteger();
+        this.hashers = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread thread = new Thread(r, "integrity-scrubber-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    // tmpfs, một số filesystem mạng... từ chối O_DIRECT: volume đó được quét qua page cache như bình thường.
+    // Lỗi khi mở một file cụ thể (mất file, lỗi I/O) chỉ làm bản đó bị tính là không đọc được
+    @PostConstruct
+    public void probeDirectIo() {
+        if (!directIo) {
+            return;
+        }
+        for (Volume volume : volumeManager.getVolumes()) {
+            directIoSupported(volume);
+        }
+    }
+
+    private boolean directIoSupported(Volume volume) {
+        return directIo && volume != null && directIoSupport.computeIfAbsent(volume.getRoot(), this::probeDirectIo);
+    }
+
+    private boolean probeDirectIo(Path root) {
+        Path probe = root.resolve(BlobStore.STAGING_DIR).resolve(".direct-io-probe-" + UUID.randomUUID());
+        try {
+            Files.createDirectories(probe.getParent());
+            Files.write(probe, new byte[DIRECT_IO_ALIGNMENT]);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(2 * DIRECT_IO_ALIGNMENT)
+                    .alignedSlice(DIRECT_IO_ALIGNMENT)
+                    .slice(0, DIRECT_IO_ALIGNMENT);
+            try (FileChannel channel = FileChannel.open(probe, StandardOpenOption.READ, ExtendedOpenOption.DIRECT)) {
+                channel.read(buffer, 0);
+            }
+            log.info("Direct I/O supported on {}", root);
+            return true;
+        } catch (UnsupportedOperationException | IOException ex) {
+            log.info("Direct I/O not supported on {}, scrubbing through the page cache: {}", root, ex.getMessage());
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(probe);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${file.scrub.interval-ms:1000}")
+    public void scrubOnce() {
+        runLock.lock();
+        try {
+            scrubBatch();
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    private void scrubBatch() {
+        if (!enabled || admissionLimiter.isReadUnderPressure()) {
+            return;
+        }
+        boolean versions = scanningVersions;
+        List<ScrubTarget> rows = versions
+                ? fileVersionRepository.findScrubTargetsAfter(cursor, PageRequest.of(0, batchSize))
+                : fileRepository.findScrubTargetsAfter(cursor, PageRequest.of(0, batchSize));
+        if (rows.isEmpty()) {
+            cursor = 0;
+            scanningVersions = !versions;
+            if (versions) {
+                completedPasses.incrementAndGet();
+                lastPassCompletedAt = LocalDateTime.now();
+            }
+            return;
+        }
+        List<Future<?>> pending = new ArrayList<>();
+        for (ScrubTarget row : rows) {
+            pending.add(hashers.submit(() -> {
+                if (versions) {
+                    verifyVersion(row);
+                } else {
+                    verify(row);
+                }
+                return null;
+            }));
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            try {
+                pending.get(i).get();
+            } catch (ExecutionException ex) {
+                failures.incrementAndGet();
+                log.warn("Scrub of {} {} failed: {}", versions ? "version" : "file", rows.get(i).getId(),
+                        ex.getCause().getMessage());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        cursor = rows.get(rows.size() - 1).getId();
+    }
+
+    private void verify(ScrubTarget row) throws InterruptedException {
+        List<Path> copies = new ArrayList<>();
+        copies.add(Paths.get(row.getStoragePath()));
+        long offset = 0;
+        if (row.getSegmentId() == null) {
+            fileRepository.findReplicaPaths(row.getId()).forEach(replica -> copies.add(Paths.get(replica)));
+        } else {
+            offset = row.getSegmentOffset();
+        }
+
+        String expected = row.getChecksum();
+        boolean backfill = expected == null;
+        Path good = null;
+        List<Path> bad = new ArrayList<>();
+        for (Path copy : copies) {
+            String actual = hash(copy, offset, row.getFileSize());
+            if (actual == null) {
+                continue;
+            }
+            if (expected == null) {
+                // Chưa có checksum: tin bản đọc được đầu tiên
+                expected = actual;
+            }
+            if (actual.equals(expected)) {
+                good = good == null ? copy : good;
+            } else {
+                bad.add(copy);
+                mismatchedCopies.incrementAndGet();
+                log.warn("File {}: copy {} does not match its checksum", row.getId(), copy);
+            }
+        }
+        scannedFiles.incrementAndGet();
+        if (good == null && bad.isEmpty()) {
+            // Không bản nào đọc được: chưa biết có hỏng hay không, để lượt quét sau
+            return;
+        }
+
+        // Bản ghi trong segment chỉ có một bản, không tự sửa được
+        if (good != null && row.getSegmentId() == null) {
+            for (Path copy : bad) {
+                repair(good, copy);
+            }
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        if (backfill && good != null) {
+            if (fileRepository.backfillChecksum(row.getId(), row.getStoragePath(), expected, now) > 0) {
+                backfilledChecksums.incrementAndGet();
+            }
+        } else if (fileRepository.markVerified(row.getId(), row.getStoragePath(), now, good == null) > 0 && good == null) {
+            log.error("File {} is corrupted: no copy matches checksum {}", row.getId(), row.getChecksum());
+        }
+    }
+
+    // Phiên bản cũ chỉ có một bản (không có bản sao), nên không tự sửa được: khớp hay hỏng
+    private void verifyVersion(ScrubTarget row) throws InterruptedException {
+        long offset = row.getSegmentId() == null ? 0 : row.getSegmentOffset();
+        String actual = hash(Paths.get(row.getStoragePath()), offset, row.getFileSize());
+        scannedVersions.incrementAndGet();
+        if (actual == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (row.getChecksum() == null) {
+            if (fileVersionRepository.backfillChecksum(row.getId(), row.getStoragePath(), actual, now) > 0) {
+                backfilledChecksums.incrementAndGet();
+            }
+            return;
+        }
+        boolean corrupted = !actual.equals(row.getChecksum());
+        if (corrupted) {
+            mismatchedCopies.incrementAndGet();
+        }
+        if (fileVersionRepository.markVerified(row.getId(), row.getStoragePath(), now, corrupted) > 0 && corrupted) {
+            log.error("Version {} is corrupted: blob {} does not match checksum {}",
+                    row.getId(), row.getStoragePath(), row.getChecksum());
+        }
+    }
+
+    // Trả về null nếu bản này không đọc được (mất file, lỗi I/O), kể cả sau khi đọc lại qua page cache.
+    // Blob ngắn hơn kích thước đã lưu trả về checksum của phần đọc được: chắc chắn không khớp
+    private String hash(Path path, long offset, long length) throws InterruptedException {
+        Volume volume = volumeFor(path);
+        boolean direct = directIoSupported(volume);
+        try {
+            return hash(path, volume, direct, offset, length);
+        } catch (IOException ex) {
+            if (direct) {
+                try {
+                    return hash(path, volume, false, offset, length);
+                } catch (IOException retry) {
+                    ex = retry;
+                }
+            }
+            unreadableCopies.incrementAndGet();
+            log.warn("Scrub could not read {}: {}", path, ex.getMessage());
+            return null;
+        }
+    }
+
+    private String hash(Path path, Volume volume, boolean direct, long offset, long length)
+            throws IOException, InterruptedException {
+        if (volume != null) {
+            volume.beginIo();
+        }
+        try (FileChannel in = direct
+                ? FileChannel.open(path, StandardOpenOption.READ, ExtendedOpenOption.DIRECT)
+                : FileChannel.open(path, StandardOpenOption.READ)) {
+            return hash(in, offset, length, direct ? DIRECT_IO_ALIGNMENT : 1);
+        } finally {
+            if (volume != null) {
+                volume.endIo();
+            }
+        }
+    }
+
+    // O_DIRECT yêu cầu vị trí đọc và buffer căn theo block: đọc từ biên block rồi bỏ phần thừa ở đầu.
+    // Lần đọc ngắn giữa chừng để lại vị trí lệch biên: lần đọc sau lùi về biên và bỏ qua phần đã băm
+    private String hash(FileChannel channel, long offset, long length, int alignment) throws IOException, InterruptedException {
+        MessageDigest digest = BlobChecksum.newDigest();
+        ByteBuffer buffer = buffers.get();
+        long position = offset - offset % alignment;
+        int skip = (int) (offset - position);
+        long remaining = length;
+        while (remaining > 0) {
+            awaitIdleDisk();
+            // Lấy token trước khi đọc để cả chunk đầu tiên cũng nằm trong giới hạn băng thông
+            bandwidth.acquire(Math.min(buffer.capacity(), skip + remaining));
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= skip) {
+                // Hết file trước khi đủ length: checksum của phần đã đọc không thể khớp
+                break;
+            }
+            buffer.flip().position(skip);
+            if (buffer.remaining() > remaining) {
+                buffer.limit(skip + (int) remaining);
+            }
+            int hashed = buffer.remaining();
+            digest.update(buffer);
+            position += read;
+            remaining -= hashed;
+            verifiedBytes.addAndGet(hashed);
+            skip = (int) (position % alignment);
+            position -= skip;
+        }
+        return BlobChecksum.hex(digest);
+    }
+
+    // Blob nằm ngay dưới root của volume, segment nằm trong thư mục con của root
+    private Volume volumeFor(Path path) {
+        Volume volume = volumeManager.volumeOf(path);
+        return volume != null ? volume : volumeManager.volumeOf(path.getParent());
+    }
+
+    // Nhường đĩa cho upload / download: chờ tới khi admission control hết báo quá tải
+    private void awaitIdleDisk() throws InterruptedException {
+        while (admissionLimiter.isReadUnderPressure() || admissionLimiter.isWriteUnderPressure()) {
+            Thread.sleep(PRESSURE_PAUSE_MS);
+            pausedMillis.addAndGet(PRESSURE_PAUSE_MS);
+        }
+    }
+
+    // Mọi bản cùng tên blob trên các volume khác nhau: ghi đè bản hỏng bằng bản tốt qua staging + rename
+    private void repair(Path good, Path bad) {
+        Volume volume = volumeManager.volumeOf(bad);
+        if (volume == null) {
+            return;
+        }
+        try {
+            // Bản bị ghi đè đã có dòng DB trỏ tới
+            blobStore.release(blobStore.copyTo(good, volume));
+            repairedCopies.incrementAndGet();
+            log.info("Repaired {} from {}", bad, good);
+        } catch (IOException ex) {
+            log.warn("Could not repair {}: {}", bad, ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashers.shutdownNow();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("threads", threads);
+        stats.put("directIo", directIo);
+        stats.put("directIoVolumes", directIoSupport.entrySet().stream()
+                .filter(Map.Entry::getValue).map(entry -> entry.getKey().toString()).toList());
+        stats.put("bytesPerSecond", bandwidth.getRatePerSecond());
+        stats.put("cursor", cursor);
+        stats.put("scanningVersions", scanningVersions);
+        stats.put("scannedFiles", scannedFiles.get());
+        stats.put("scannedVersions", scannedVersions.get());
+        stats.put("unreadableCopies", unreadableCopies.get());
+        stats.put("verifiedBytes", verifiedBytes.get());
+        stats.put("mismatchedCopies", mismatchedCopies.get());
+        stats.put("repairedCopies", repairedCopies.get());
+        stats.put("backfilledChecksums", backfilledChecksums.get());
+        stats.put("corruptedFiles", fileRepository.countByCorruptedTrue());
+        stats.put("corruptedVersions", fileVersionRepository.countByCorruptedTrue());
+        stats.put("failures", failures.get());
+        stats.put("pausedMillis", pausedMillis.get());
+        stats.put("completedPasses", completedPasses.get());
+        stats.put("lastPassCompletedAt", lastPassCompletedAt);
+        return stats;
+    }
+
+    public List<CorruptedFile> getCorruptedFiles() {
+        return fileRepository.findCorrupted();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.FileStorage.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+// Bộ đệm ghi nhận truy cập kiểu Caffeine: mỗi lần đọc chỉ ghi khóa vào một ô của vòng đệm (chia sọc theo thread),
+// không lấy lock. Chủ sở hữu xả bộ đệm dưới lock của mình để cập nhật thứ tự LRU và bộ đếm tần suất.
+// Có mất mát: khi sọc đầy hoặc tranh chấp, lần ghi nhận bị bỏ qua (chính sách thay thế chỉ cần xấp xỉ).
+// Nhiều thread được ghi cùng lúc; drainTo chỉ được gọi bởi một thread tại một thời điểm.
+public class ReadBuffer {
+
+    static final int STRIPE_SIZE = 32;
+    private static final int STRIPE_MASK = STRIPE_SIZE - 1;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public ReadBuffer() {
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    // Ghi nhận một truy cập; trả về true khi sọc đã đầy và nên được xả
+    public boolean offer(long key) {
+        long threadHash = Thread.currentThread().threadId() * 0x9e3779b97f4a7c15L;
+        return stripes[(int) (threadHash >>> 32) & stripeMask].offer(key);
+    }
+
+    public void drainTo(LongConsumer consumer) {
+        for (Stripe stripe : stripes) {
+            stripe.drainTo(consumer);
+        }
+    }
+
+    private static final class Stripe {
+
+        // Ô trống = 0, ô có giá trị lưu key + 1
+        private final AtomicLongArray slots = new AtomicLongArray(STRIPE_SIZE);
+        private final AtomicLong writes = new AtomicLong();
+        private volatile long reads;
+
+        private boolean offer(long key) {
+            long head = reads;
+            long tail = writes.get();
+            if (tail - head >= STRIPE_SIZE) {
+                return true;
+            }
+            if (!writes.compareAndSet(tail, tail + 1)) {
+                return false;
+            }
+            slots.lazySet((int) tail & STRIPE_MASK, key + 1);
+            return tail + 1 - head >= STRIPE_SIZE;
+        }
+
+        private void drainTo(LongConsumer consumer) {
+            long head = reads;
+            long tail = writes.get();
+            for (; head < tail; head++) {
+                int index = (int) head & STRIPE_MASK;
+                long value = slots.get(index);
+                if (value == 0) {
+                    // Người ghi đã giành ô nhưng chưa kịp đặt giá trị: lần xả sau sẽ đọc tiếp
+                    break;
+                }
+                slots.lazySet(index, 0);
+                consumer.accept(value - 1);
+            }
+            reads = head;
+        }
+    }
+}
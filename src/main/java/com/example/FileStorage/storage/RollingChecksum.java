@@ -0,0 +1,42 @@
+package com.example.FileStorage.storage;
+
+// Checksum cuộn kiểu rsync: a = tổng các byte, b = tổng có trọng số, mỗi phần mod 2^16.
+// Client dùng roll() để trượt cửa sổ từng byte và dò khối trùng với chữ ký của server.
+public class RollingChecksum {
+
+    private static final int MOD = 1 << 16;
+
+    private int a;
+    private int b;
+    private int length;
+
+    public static int of(byte[] data, int offset, int length) {
+        RollingChecksum checksum = new RollingChecksum();
+        checksum.reset(data, offset, length);
+        return checksum.value();
+    }
+
+    public void reset(byte[] data, int offset, int length) {
+        this.a = 0;
+        this.b = 0;
+        this.length = length;
+        for (int i = 0; i < length; i++) {
+            int x = data[offset + i] & 0xff;
+            a += x;
+            b += (length - i) * x;
+        }
+        a %= MOD;
+        b %= MOD;
+    }
+
+    // Bỏ byte đầu cửa sổ (out) và thêm byte mới vào cuối (in)
+    public void roll(byte out, byte in) {
+        int x = out & 0xff;
+        a = Math.floorMod(a - x + (in & 0xff), MOD);
+        b = Math.floorMod(b - length * x + a, MOD);
+    }
+
+    public int value() {
+        return (b << 16) | a;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.FileStorage.storage;
+
+import com.example.FileStorage.repository.FileRepository;
+import com.example.FileStorage.repository.FileVersionRepository;
+import com.example.FileStorage.repository.SegmentRecord;
+import com.example.FileStorage.repository.SegmentUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Thu hồi chỗ trống trong segment sau khi file bị xóa / có phiên bản mới.
+// Số byte còn sống được tính lại từ DB (không cần đánh dấu xóa trong segment):
+// mỗi lượt chọn segment sealed có tỉ lệ sống thấp nhất dưới ngưỡng, chép các bản ghi còn sống
+// sang segment đang ghi và trỏ lại các dòng DB. Segment cũ chỉ bị xóa ở lượt sau,
+// khi chắc chắn không còn dòng nào (kể cả từ copy/delta chạy song song) tham chiếu tới nó.
+// Segment còn bản ghi pending (upload đã nối vào nhưng chưa lưu dòng DB) không bị chọn cũng không bị xóa.
+@Component
+public class SegmentCompactor {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentCompactor.class);
+
+    private final SegmentStore segmentStore;
+    private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final AdmissionLimiter admissionLimiter;
+    private final double liveRatioThreshold;
+
+    // Bảo vệ retired và một lượt compaction; không dùng synchronized vì lượt chạy đọc / ghi segment và cập nhật DB
+    private final ReentrantLock runLock = new ReentrantLock();
+    private final Set<Long> retired = new LinkedHashSet<>();
+    private final AtomicLong compactedSegments = new AtomicLong();
+    private final AtomicLong movedRecords = new AtomicLong();
+    private final AtomicLong reclaimedBytes = new AtomicLong();
+
+    public SegmentCompactor(
+            SegmentStore segmentStore,
+            FileRepository fileRepository,
+            FileVersionRepository fileVersionRepository,
+            AdmissionLimiter admissionLimiter,
+            @Value("${file.segments.compact-live-ratio:0.5}") double liveRatioThreshold
+    ) {
+        this.segmentStore = segmentStore;
+        this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.admissionLimiter = admissionLimiter;
+        this.liveRatioThreshold = liveRatioThreshold;
+    }
+
+    @Scheduled(fixedDelayString = "${file.segments.compact-interval-ms:60000}")
+    public void compactOnce() {
+        runLock.lock();
+        try {
+            compactBatch();
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    private void compactBatch() {
+        // Nhường đĩa cho upload đang chạy
+        if (admissionLimiter.isWriteUnderPressure()) {
+            return;
+        }
+        try {
+            deleteRetired();
+            Long candidate = pickCandidate();
+            if (candidate != null) {
+                compact(candidate);
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Segment compaction failed: {}", ex.getMessage());
+        }
+    }
+
+    private void deleteRetired() throws IOException {
+        for (Long segmentId : List.copyOf(retired)) {
+            if (segmentStore.hasPendingAppends(segmentId)) {
+                continue;
+            }
+            if (fileRepository.countBySegmentId(segmentId) + fileVersionRepository.countBySegmentId(segmentId) > 0) {
+                // Có dòng mới trỏ vào trong lúc dời: để lượt sau dời tiếp
+                retired.remove(segmentId);
+                continue;
+            }
+            long size = segmentStore.sizeOf(segmentId);
+            if (segmentStore.delete(segmentId)) {
+                reclaimedBytes.addAndGet(size);
+                compactedSegments.incrementAndGet();
+            }
+            retired.remove(segmentId);
+        }
+    }
+
+    private Long pickCandidate() throws IOException {
+        Map<Long, Long> live = new HashMap<>();
+        for (SegmentUsage usage : fileRepository.sumLiveBytesBySegment()) {
+            live.merge(usage.getSegmentId(), usage.getLiveBytes(), Long::sum);
+        }
+        for (SegmentUsage usage : fileVersionRepository.sumLiveBytesBySegment()) {
+            live.merge(usage.getSegmentId(), usage.getLiveBytes(), Long::sum);
+        }
+        Long best = null;
+        double bestRatio = liveRatioThreshold;
+        for (Long segmentId : segmentStore.getSegmentIds()) {
+            if (segmentStore.isActive(segmentId) || segmentStore.hasPendingAppends(segmentId) || retired.contains(segmentId)) {
+                continue;
+            }
+            long size = segmentStore.sizeOf(segmentId);
+            double ratio = size == 0 ? 0 : (double) live.getOrDefault(segmentId, 0L) / size;
+            if (ratio < bestRatio) {
+                best = segmentId;
+                bestRatio = ratio;
+            }
+        }
+        return best;
+    }
+
+    private void compact(long segmentId) throws IOException {
+        Map<Long, Long> records = new LinkedHashMap<>();
+        for (SegmentRecord record : fileRepository.findSegmentRecords(segmentId)) {
+            records.put(record.getSegmentOffset(), record.getFileSize());
+        }
+        for (SegmentRecord record : fileVersionRepository.findSegmentRecords(segmentId)) {
+            records.put(record.getSegmentOffset(), record.getFileSize());
+        }
+        for (Map.Entry<Long, Long> record : records.entrySet()) {
+            ByteBuffer data = segmentStore.read(segmentId, record.getKey(), record.getValue().intValue());
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            SegmentStore.Record moved = segmentStore.append(bytes);
+            try {
+                fileRepository.relocateSegmentRecord(segmentId, record.getKey(),
+                        moved.getSegmentId(), moved.getOffset(), moved.getPath().toString());
+                fileVersionRepository.relocateSegmentRecord(segmentId, record.getKey(),
+                        moved.getSegmentId(), moved.getOffset(), moved.getPath().toString());
+            } finally {
+                segmentStore.release(moved);
+            }
+            movedRecords.incrementAndGet();
+        }
+        retired.add(segmentId);
+        log.info("Compacted segment {} ({} live records moved)", segmentId, records.size());
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(segmentStore.getStats());
+        stats.put("liveRatioThreshold", liveRatioThreshold);
+        runLock.lock();
+        try {
+            stats.put("retiredSegments", retired.size());
+        } finally {
+            runLock.unlock();
+        }
+        stats.put("compactedSegments", compactedSegments.get());
+        stats.put("movedRecords", movedRecords.get());
+        stats.put("reclaimedBytes", reclaimedBytes.get());
+        return stats;
+    }
+}
@@ -0,0 +1,351 @@
+package com.example.FileStorage.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Lưu file nhỏ bằng cách nối liên tiếp vào các segment lớn (.segments/seg-<id>.dat trên từng volume)
+// thay vì mỗi file một inode. Bản ghi không có header: vị trí và độ dài nằm trong DB (segment_id,
+// segment_offset, file_size), nên byte của bản ghi chưa kịp vào DB chỉ là vùng chết để compactor thu hồi.
+// Có nhiều segment đang ghi cùng lúc (stripe, chọn theo thread) để upload nhỏ đồng thời không xếp hàng
+// sau một lock duy nhất; segment đã đầy (sealed) được mmap một lần và đọc bằng slice không copy.
+// Bản ghi vừa nối mà dòng DB chưa lưu được đếm là pending cho tới release(): compactor và rebalancer
+// không đụng tới segment còn bản ghi pending.
+@Component
+public class SegmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentStore.class);
+
+    static final String SEGMENTS_DIR = ".segments";
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final String PART_SUFFIX = ".part";
+
+    private final boolean enabled;
+    private final int thresholdBytes;
+    private final long segmentSize;
+    private final VolumeManager volumeManager;
+    private final BlobStore blobStore;
+
+    private final Map<Long, Path> segments = new ConcurrentHashMap<>();
+    private final Map<Long, MappedByteBuffer> sealed = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private final Stripe[] stripes;
+    // Segment đang ghi -> stripe giữ nó
+    private final Map<Long, Stripe> active = new ConcurrentHashMap<>();
+    // Segment -> số bản ghi đã nối nhưng dòng DB chưa lưu
+    private final Map<Long, Integer> pending = new ConcurrentHashMap<>();
+    // Dời segment sang volume khác và xóa segment không loại trừ lẫn nhau
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+
+    private final AtomicLong appendedRecords = new AtomicLong();
+    private final AtomicLong appendedBytes = new AtomicLong();
+    private final AtomicLong relocatedSegments = new AtomicLong();
+
+    public SegmentStore(
+            VolumeManager volumeManager,
+            BlobStore blobStore,
+            @Value("${file.segments.enabled:true}") boolean enabled,
+            @Value("${file.segments.threshold-bytes:65536}") int thresholdBytes,
+            @Value("${file.segments.segment-size:268435456}") long segmentSize,
+            @Value("${file.segments.stripes:4}") int stripes
+    ) {
+        this.volumeManager = volumeManager;
+        this.blobStore = blobStore;
+        this.enabled = enabled;
+        // MappedByteBuffer đánh chỉ số bằng int nên một segment tối đa 2 GB
+        this.segmentSize = Math.min(segmentSize, Integer.MAX_VALUE);
+        this.thresholdBytes = (int) Math.min(thresholdBytes, this.segmentSize);
+        this.stripes = new Stripe[Math.max(1, stripes)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        loadExistingSegments();
+    }
+
+    // Segment còn dở từ lần chạy trước không được ghi tiếp: đuôi có thể chứa bản ghi chưa commit.
+    // Lần dời segment bị ngắt giữa chừng có thể để lại hai bản giống hệt nhau trên hai volume: giữ bản đầu tiên
+    private void loadExistingSegments() {
+        for (Volume volume : volumeManager.getVolumes()) {
+            Path dir = volume.getRoot().resolve(SEGMENTS_DIR);
+            if (!Files.isDirectory(dir)) {
+                continue;
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                    Path previous = segments.putIfAbsent(id, path);
+                    if (previous != null) {
+                        log.warn("Segment {} exists on two volumes ({} and {}), using the first", id, previous, path);
+                    }
+                    nextId.accumulateAndGet(id + 1, Math::max);
+                }
+            } catch (IOException | NumberFormatException ex) {
+                log.warn("Failed to scan segments in {}: {}", dir, ex.getMessage());
+            }
+        }
+    }
+
+    // File có kích thước tới ngưỡng này được đóng gói vào segment
+    public boolean accepts(long size) {
+        return enabled && size >= 0 && size <= thresholdBytes;
+    }
+
+    // Người gọi phải release(record) sau khi dòng DB trỏ tới bản ghi đã lưu (hoặc đã bỏ)
+    public Record append(byte[] data) throws IOException {
+        Stripe stripe = stripes[(int) (Thread.currentThread().threadId() % stripes.length)];
+        Record record;
+        stripe.lock.lock();
+        try {
+            // Volume chuyển sang draining: segment đang ghi trên đó được đóng lại để volume rút hết được
+            if (stripe.channel == null || stripe.size + data.length > segmentSize || stripe.volume.isDraining()) {
+                roll(stripe);
+            }
+            long offset = stripe.size;
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += stripe.channel.write(buffer, position);
+            }
+            stripe.size = position;
+            pending.merge(stripe.id, 1, Integer::sum);
+            record = new Record(stripe.id, stripe.path, offset, data.length);
+        } finally {
+            stripe.lock.unlock();
+        }
+        try {
+            // fsync ngoài lock: với durability grouped các append đồng thời được GroupCommitter gom chung một lần fsync
+            blobStore.syncAppend(record.getPath());
+        } catch (IOException ex) {
+            release(record);
+            throw ex;
+        }
+        appendedRecords.incrementAndGet();
+        appendedBytes.addAndGet(data.length);
+        return record;
+    }
+
+    public void release(Record record) {
+        pending.computeIfPresent(record.getSegmentId(), (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    public boolean hasPendingAppends(long segmentId) {
+        return pending.containsKey(segmentId);
+    }
+
+    private void roll(Stripe stripe) throws IOException {
+        if (stripe.channel != null) {
+            stripe.channel.close();
+            stripe.channel = null;
+            active.remove(stripe.id);
+        }
+        long id = nextId.getAndIncrement();
+        String name = SEGMENT_PREFIX + id + SEGMENT_SUFFIX;
+        Volume volume = volumeManager.place(name).get(0);
+        Path dir = volume.getRoot().resolve(SEGMENTS_DIR);
+        Files.createDirectories(dir);
+        Path path = dir.resolve(name);
+        stripe.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        stripe.path = path;
+        stripe.volume = volume;
+        stripe.size = 0;
+        stripe.id = id;
+        segments.put(id, path);
+        active.put(id, stripe);
+        blobStore.sync(dir);
+    }
+
+    // Đọc một bản ghi: segment sealed trả về slice của vùng mmap, segment đang ghi đọc bằng pread
+    public ByteBuffer read(long segmentId, long offset, int length) throws IOException {
+        Stripe stripe = active.get(segmentId);
+        if (stripe != null) {
+            stripe.lock.lock();
+            try {
+                if (segmentId == stripe.id) {
+                    ByteBuffer buffer = ByteBuffer.allocate(length);
+                    while (buffer.hasRemaining()) {
+                        if (stripe.channel.read(buffer, offset + buffer.position()) < 0) {
+                            throw new EOFException("Segment " + segmentId + " is shorter than expected");
+                        }
+                    }
+                    return buffer.flip();
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        MappedByteBuffer mapped = map(segmentId);
+        if (offset < 0 || offset + length > mapped.capacity()) {
+            throw new EOFException("Record " + offset + "+" + length + " is outside segment " + segmentId);
+        }
+        return mapped.slice((int) offset, length);
+    }
+
+    private MappedByteBuffer map(long segmentId) throws IOException {
+        MappedByteBuffer mapped = sealed.get(segmentId);
+        if (mapped != null) {
+            return mapped;
+        }
+        Path path = segments.get(segmentId);
+        if (path == null) {
+            throw new NoSuchFileException("Segment " + segmentId);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException ex) {
+            // Segment vừa được dời sang volume khác giữa lúc lấy path và lúc mở: đọc lại theo path mới
+            Path moved = segments.get(segmentId);
+            if (moved == null || moved.equals(path)) {
+                throw ex;
+            }
+            return map(segmentId);
+        }
+        MappedByteBuffer previous = sealed.putIfAbsent(segmentId, mapped);
+        return previous != null ? previous : mapped;
+    }
+
+    public Set<Long> getSegmentIds() {
+        return Set.copyOf(segments.keySet());
+    }
+
+    public boolean isActive(long segmentId) {
+        return active.containsKey(segmentId);
+    }
+
+    public Path pathOf(long segmentId) {
+        return segments.get(segmentId);
+    }
+
+    public long sizeOf(long segmentId) throws IOException {
+        Path path = segments.get(segmentId);
+        if (path == null) {
+            throw new NoSuchFileException("Segment " + segmentId);
+        }
+        return Files.size(path);
+    }
+
+    // Dời một segment sealed sang volume khác (rebalancer): chép sang .segments của volume đích dưới tên tạm,
+    // rename, để updateRows trỏ các dòng DB sang path mới, rồi mới đổi path trong bộ nhớ và xóa bản cũ.
+    // Vùng mmap cũ vẫn đọc được sau khi file bị xóa nên download đang chạy không bị ảnh hưởng.
+    // Trả về path mới, hoặc null nếu segment đang ghi, còn bản ghi pending hoặc đã bị xóa.
+    public Path relocate(long segmentId, Volume target, Consumer<Path> updateRows) throws IOException {
+        maintenanceLock.lock();
+        try {
+            Path source = segments.get(segmentId);
+            if (source == null || isActive(segmentId) || hasPendingAppends(segmentId)) {
+                return null;
+            }
+            Path dir = target.getRoot().resolve(SEGMENTS_DIR);
+            Files.createDirectories(dir);
+            Path moved = dir.resolve(source.getFileName().toString());
+            Path part = dir.resolve(source.getFileName() + PART_SUFFIX);
+            target.beginIo();
+            try {
+                Files.copy(source, part, StandardCopyOption.REPLACE_EXISTING);
+                blobStore.sync(part);
+                Files.move(part, moved, StandardCopyOption.ATOMIC_MOVE);
+                blobStore.sync(dir);
+            } catch (IOException ex) {
+                Files.deleteIfExists(part);
+                throw ex;
+            } finally {
+                target.endIo();
+            }
+            // updateRows lỗi giữa chừng thì một phần dòng DB đã trỏ sang bản mới: giữ cả hai bản (giống hệt nhau),
+            // lần dời sau ghi đè bản mới và cập nhật nốt
+            updateRows.accept(moved);
+            segments.put(segmentId, moved);
+            sealed.remove(segmentId);
+            Files.deleteIfExists(source);
+            relocatedSegments.incrementAndGet();
+            return moved;
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    // Chỉ gọi cho segment sealed không còn dòng DB nào tham chiếu; vùng mmap được GC giải phóng
+    boolean delete(long segmentId) throws IOException {
+        maintenanceLock.lock();
+        try {
+            if (isActive(segmentId) || hasPendingAppends(segmentId)) {
+                return false;
+            }
+            sealed.remove(segmentId);
+            Path path = segments.remove(segmentId);
+            return path != null && Files.deleteIfExists(path);
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("thresholdBytes", thresholdBytes);
+        stats.put("segmentSize", segmentSize);
+        stats.put("stripes", stripes.length);
+        stats.put("segments", segments.size());
+        stats.put("activeSegments", Set.copyOf(active.keySet()));
+        stats.put("pendingSegments", pending.size());
+        stats.put("mappedSegments", sealed.size());
+        stats.put("appendedRecords", appendedRecords.get());
+        stats.put("appendedBytes", appendedBytes.get());
+        stats.put("relocatedSegments", relocatedSegments.get());
+        return stats;
+    }
+
+    // Một segment đang ghi cùng lock riêng của nó
+    private static final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private FileChannel channel;
+        private Path path;
+        private Volume volume;
+        private long size;
+        private volatile long id = -1;
+    }
+
+    // Vị trí của một bản ghi vừa ghi vào segment
+    public static class Record {
+
+        private final long segmentId;
+        private final Path path;
+        private final long offset;
+        private final int length;
+
+        public Record(long segmentId, Path path, long offset, int length) {
+            this.segmentId = segmentId;
+            this.path = path;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public long getSegmentId() { return segmentId; }
+        public Path getPath() { return path; }
+        public long getOffset() { return offset; }
+        public int getLength() { return length; }
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.FileStorage.storage;
+
+import com.example.FileStorage.repository.FileRepository;
+import com.example.FileStorage.repository.FileSummary;
+import com.example.FileStorage.repository.FileVersionRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Đối soát nền giữa các volume lưu blob và bảng files.
+// Mỗi lượt chạy xử lý một lô file trên đĩa (lần lượt từng volume, đọc tiếp từ DirectoryStream đang mở)
+// và một lô dòng DB (theo id), nhớ vị trí để lượt sau đi tiếp. File mồ côi được chuyển vào .quarantine,
+// dòng DB trỏ tới file không tồn tại được đánh dấu và báo qua metrics.
+// Blob vừa ghi / vừa copy mà dòng DB chưa commit nằm trong tập in-flight của BlobStore và không bị cách ly,
+// kể cả khi mtime đã cũ (hard link mang mtime của blob nguồn).
+@Component
+public class StorageReconciler {
+
+    private static final Logger log = LoggerFactory.getLogger(StorageReconciler.class);
+
+    static final String QUARANTINE_DIR = ".quarantine";
+
+    private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final boolean enabled;
+    private final int batchSize;
+    private final TokenBucket ioBudget;
+    private final double cpuDutyCycle;
+    private final Duration gracePeriod;
+    private final VolumeManager volumeManager;
+    private final BlobStore blobStore;
+
+    // ReentrantLock thay cho synchronized: job chạy trên virtual thread và chặn ở JDBC / I/O bên trong,
+    // synchronized sẽ ghim (pin) virtual thread vào carrier thread suốt thời gian đó (JDK 21)
+    private final ReentrantLock runLock = new ReentrantLock();
+    private volatile int diskVolume = 0;
+    // Tên entry cuối cùng đã xử lý trên volume hiện tại (chỉ để theo dõi)
+    private volatile String diskCursor = "";
+    private DirectoryStream<Path> diskStream;
+    private Iterator<Path> diskIterator;
+    private final List<Path> carriedEntries = new ArrayList<>();
+    private volatile long dbCursor = 0;
+    private boolean diskPassDone;
+    private boolean dbPassDone;
+    private long nextRunAt;
+
+    private final Map<Long, String> missingBlobs = new ConcurrentHashMap<>();
+    private final Set<Long> missingThisPass = new HashSet<>();
+    private final AtomicLong scannedBlobs = new AtomicLong();
+    private final AtomicLong scannedRows = new AtomicLong();
+    private final AtomicLong quarantined = new AtomicLong();
+    private final AtomicLong completedPasses = new AtomicLong();
+    private final AtomicLong throttledRuns = new AtomicLong();
+    private final AtomicLong abandonedStagingFiles = new AtomicLong();
+    private final AtomicLong skippedInFlight = new AtomicLong();
+    private volatile LocalDateTime lastPassCompletedAt;
+
+    public StorageReconciler(
+            FileRepository fileRepository,
+            FileVersionRepository fileVersionRepository,
+            VolumeManager volumeManager,
+            BlobStore blobStore,
+            @Value("${file.reconciler.enabled:true}") boolean enabled,
+            @Value("${file.reconciler.batch-size:200}") int batchSize,
+            @Value("${file.reconciler.max-ops-per-second:200}") double maxOpsPerSecond,
+            @Value("${file.reconciler.cpu-duty-cycle:0.1}") double cpuDutyCycle,
+            @Value("${file.reconciler.grace-period-minutes:60}") long gracePeriodMinutes
+    ) {
+        this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.volumeManager = volumeManager;
+        this.blobStore = blobStore;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.ioBudget = new TokenBucket(maxOpsPerSecond, maxOpsPerSecond);
+        this.cpuDutyCycle = Math.min(1.0, Math.max(0.01, cpuDutyCycle));
+        this.gracePeriod = Duration.ofMinutes(gracePeriodMinutes);
+        this.nextRunAt = System.nanoTime();
+    }
+
+    @Scheduled(fixedDelayString = "${file.reconciler.interval-ms:1000}")
+    public void runOnce() {
+        runLock.lock();
+        try {
+            runBatch();
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    private void runBatch() {
+        if (!enabled || System.nanoTime() - nextRunAt < 0) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            reconcileDiskBatch();
+            reconcileDbBatch();
+            if (diskPassDone && dbPassDone) {
+                diskPassDone = false;
+                dbPassDone = false;
+                completedPasses.incrementAndGet();
+                lastPassCompletedAt = LocalDateTime.now();
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Reconciler batch failed: {}", ex.getMessage());
+        }
+        // Giữ tỉ lệ thời gian làm việc / tổng thời gian <= cpuDutyCycle
+        long worked = System.nanoTime() - started;
+        nextRunAt = System.nanoTime() + (long) (worked * (1 - cpuDutyCycle) / cpuDutyCycle);
+    }
+
+    // Duyệt volume bằng một DirectoryStream mở xuyên suốt các lượt: mỗi lượt đọc tiếp tối đa batchSize entry,
+    // mỗi entry đọc và mỗi lần stat đều trừ vào ngân sách I/O. Entry đã đọc mà hết ngân sách được giữ lại cho lượt sau.
+    private void reconcileDiskBatch() throws IOException {
+        List<Volume> volumes = volumeManager.getVolumes();
+        Path root = volumes.get(Math.min(diskVolume, volumes.size() - 1)).getRoot();
+        if (diskIterator == null) {
+            if (!Files.isDirectory(root)) {
+                finishVolume(root, volumes.size());
+                return;
+            }
+            diskStream = Files.newDirectoryStream(root);
+            diskIterator = diskStream.iterator();
+        }
+
+        List<Path> batch = new ArrayList<>(carriedEntries);
+        carriedEntries.clear();
+        try {
+            while (batch.size() < batchSize && diskIterator.hasNext()) {
+                if (!ioBudget.tryAcquire(1)) {
+                    throttledRuns.incrementAndGet();
+                    break;
+                }
+                Path entry = diskIterator.next();
+                if (!entry.getFileName().toString().startsWith(".")) {
+                    batch.add(entry);
+                }
+            }
+            if (batch.isEmpty()) {
+                if (!diskIterator.hasNext()) {
+                    // Hết volume này: dọn .staging rồi sang volume kế tiếp
+                    finishVolume(root, volumes.size());
+                }
+                return;
+            }
+        } catch (DirectoryIteratorException ex) {
+            closeDiskStream();
+            throw ex.getCause();
+        }
+
+        // DirectoryStream trả entry theo thứ tự của hệ thống file: sắp xếp lô theo tên để stat/cách ly đi theo thứ tự ổn định
+        // và diskCursor phản ánh đúng tiến độ trong lô
+        batch.sort(null);
+
+        // Chụp tập in-flight TRƯỚC khi hỏi DB: người ghi đăng ký blob trước khi nó xuất hiện và chỉ release sau khi
+        // dòng DB đã commit, nên mỗi entry hoặc nằm trong ảnh chụp này hoặc đã có dòng DB mà truy vấn bên dưới thấy
+        Set<Path> inFlight = new HashSet<>();
+        List<String> paths = new ArrayList<>();
+        for (Path entry : batch) {
+            if (blobStore.isInFlight(entry)) {
+                inFlight.add(entry);
+            }
+            paths.add(entry.toString());
+        }
+        Set<String> known;
+        try {
+            known = new HashSet<>(fileRepository.findExistingStoragePaths(paths));
+            known.addAll(fileRepository.findExistingReplicaPaths(paths));
+            known.addAll(fileVersionRepository.findExistingStoragePaths(paths));
+        } catch (RuntimeException ex) {
+            // DB lỗi: giữ lại lô đã đọc để lượt sau thử lại, không bỏ sót entry
+            carriedEntries.addAll(batch);
+            throw ex;
+        }
+
+        Instant cutoff = Instant.now().minus(gracePeriod);
+        for (int i = 0; i < batch.size(); i++) {
+            Path path = batch.get(i);
+            if (known.contains(path.toString())) {
+                scannedBlobs.incrementAndGet();
+                diskCursor = path.getFileName().toString();
+                continue;
+            }
+            if (inFlight.contains(path)) {
+                scannedBlobs.incrementAndGet();
+                skippedInFlight.incrementAndGet();
+                diskCursor = path.getFileName().toString();
+                continue;
+            }
+            if (!ioBudget.tryAcquire(1)) {
+                throttledRuns.incrementAndGet();
+                carriedEntries.addAll(batch.subList(i, batch.size()));
+                return;
+            }
+            scannedBlobs.incrementAndGet();
+            diskCursor = path.getFileName().toString();
+            if (!Files.isRegularFile(path)) {
+                continue;
+            }
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attrs.lastModifiedTime().toInstant().isBefore(cutoff)) {
+                quarantine(root, path);
+            }
+        }
+    }
+
+    private void finishVolume(Path root, int volumeCount) throws IOException {
+        closeDiskStream();
+        cleanStaging(root);
+        diskCursor = "";
+        diskVolume = (diskVolume + 1) % volumeCount;
+        diskPassDone = diskVolume == 0;
+    }
+
+    private void closeDiskStream() throws IOException {
+        carriedEntries.clear();
+        diskIterator = null;
+        if (diskStream != null) {
+            DirectoryStream<Path> stream = diskStream;
+            diskStream = null;
+            stream.close();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        runLock.lock();
+        try {
+            closeDiskStream();
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    private void reconcileDbBatch() {
+        List<FileSummary> rows = fileRepository.findSummariesAfter(dbCursor, PageRequest.of(0, batchSize));
+        if (rows.isEmpty()) {
+            // Hết một vòng: dòng không còn thiếu blob trong vòng này (đã xóa, đã purge, blob đã có lại) được bỏ khỏi danh sách
+            missingBlobs.keySet().retainAll(missingThisPass);
+            missingThisPass.clear();
+            dbCursor = 0;
+            dbPassDone = true;
+            return;
+        }
+        for (FileSummary row : rows) {
+            if (!ioBudget.tryAcquire(1)) {
+                throttledRuns.incrementAndGet();
+                return;
+            }
+            scannedRows.incrementAndGet();
+            dbCursor = row.getId();
+            // File đã tombstone đang chờ bulk delete dọn, blob có thể đã bị unlink
+            if (row.getDeletedAt() != null || Files.exists(Paths.get(row.getStoragePath()))) {
+                missingBlobs.remove(row.getId());
+                continue;
+            }
+            missingThisPass.add(row.getId());
+            if (missingBlobs.put(row.getId(), row.getStoragePath()) == null) {
+                log.warn("File {} points to missing blob {}", row.getId(), row.getStoragePath());
+            }
+        }
+    }
+
+    // File .part còn sót lại trong .staging là upload bị crash giữa chừng, chưa từng được commit
+    private void cleanStaging(Path root) throws IOException {
+        Path stagingDir = root.resolve(BlobStore.STAGING_DIR);
+        if (!Files.isDirectory(stagingDir)) {
+            return;
+        }
+        Instant cutoff = Instant.now().minus(gracePeriod);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(stagingDir)) {
+            for (Path part : stream) {
+                if (!ioBudget.tryAcquire(1)) {
+                    throttledRuns.incrementAndGet();
+                    return;
+                }
+                if (Files.getLastModifiedTime(part).toInstant().isBefore(cutoff) && Files.deleteIfExists(part)) {
+                    abandonedStagingFiles.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    // Không ghi đè file đã cách ly trước đó cùng tên: thêm hậu tố thời gian khi trùng
+    private void quarantine(Path root, Path path) throws IOException {
+        Path quarantineDir = root.resolve(QUARANTINE_DIR);
+        Files.createDirectories(quarantineDir);
+        String name = path.getFileName().toString();
+        Path target = quarantineDir.resolve(name);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Files.move(path, target);
+                break;
+            } catch (FileAlreadyExistsException ex) {
+                target = quarantineDir.resolve(name + "." + System.currentTimeMillis() + "-" + attempt);
+            }
+        }
+        quarantined.incrementAndGet();
+        log.warn("Quarantined orphan blob {} as {}", path, target);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("scannedBlobs", scannedBlobs.get());
+        stats.put("scannedRows", scannedRows.get());
+        stats.put("quarantinedBlobs", quarantined.get());
+        stats.put("missingBlobs", missingBlobs.size());
+        stats.put("abandonedStagingFiles", abandonedStagingFiles.get());
+        stats.put("skippedInFlight", skippedInFlight.get());
+        stats.put("completedPasses", completedPasses.get());
+        stats.put("throttledRuns", throttledRuns.get());
+        stats.put("lastPassCompletedAt", lastPassCompletedAt);
+        stats.put("diskVolume", volumeManager.getVolumes().get(Math.min(diskVolume, volumeManager.getVolumes().size() - 1)).getRoot().toString());
+        stats.put("diskCursor", diskCursor);
+        stats.put("dbCursor", dbCursor);
+        return stats;
+    }
+
+    public Map<Long, String> getMissingBlobs() {
+        return Map.copyOf(missingBlobs);
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.FileStorage.storage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Kết quả ghi một blob: bản chính, các bản sao trên volume khác và SHA-256 (null nếu nơi ghi không tính)
+public class StoredBlob {
+
+    private final Path path;
+    private final List<Path> replicas;
+    private final String checksum;
+
+    public StoredBlob(Path path, List<Path> replicas) {
+        this(path, replicas, null);
+    }
+
+    public StoredBlob(Path path, List<Path> replicas, String checksum) {
+        this.path = path;
+        this.replicas = replicas;
+        this.checksum = checksum;
+    }
+
+    public Path getPath() { return path; }
+    public List<Path> getReplicas() { return replicas; }
+    public String getChecksum() { return checksum; }
+
+    public List<String> getReplicaPaths() {
+        List<String> paths = new ArrayList<>();
+        for (Path replica : replicas) {
+            paths.add(replica.toString());
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.FileStorage.storage;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+// InputStream bị giới hạn tốc độ bởi một BandwidthManager.Transfer
+public class ThrottledInputStream extends FilterInputStream {
+
+    private final BandwidthManager.Transfer transfer;
+
+    public ThrottledInputStream(InputStream in, BandwidthManager.Transfer transfer) {
+        super(in);
+        this.transfer = transfer;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            throttle(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int n = super.read(buffer, offset, length);
+        throttle(n);
+        return n;
+    }
+
+    private void throttle(int bytes) throws IOException {
+        try {
+            transfer.consume(bytes);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Transfer interrupted");
+        }
+    }
+}
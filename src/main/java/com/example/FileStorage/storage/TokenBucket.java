@@ -0,0 +1,78 @@
+package com.example.FileStorage.storage;
+
+import java.util.concurrent.TimeUnit;
+
+// Token bucket đơn giản: nạp lại ratePerSecond token mỗi giây, tối đa capacity token.
+// rate <= 0 nghĩa là không giới hạn.
+public class TokenBucket {
+
+    private final double ratePerSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double ratePerSecond, double capacity) {
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public boolean isUnlimited() {
+        return ratePerSecond <= 0;
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    // Đã nạp đầy (không nợ, không còn gì để trả): bucket mới tạo lại sẽ ở đúng trạng thái này
+    public synchronized boolean isFull() {
+        if (isUnlimited()) {
+            return true;
+        }
+        refill();
+        return tokens >= capacity;
+    }
+
+    public synchronized boolean tryAcquire(long permits) {
+        if (isUnlimited()) {
+            return true;
+        }
+        refill();
+        if (tokens >= permits) {
+            tokens -= permits;
+            return true;
+        }
+        return false;
+    }
+
+    // Trừ token ngay (có thể âm) và trả về số nano giây cần chờ để trả hết nợ
+    public synchronized long reserve(long permits) {
+        if (isUnlimited()) {
+            return 0;
+        }
+        refill();
+        tokens -= permits;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) (-tokens / ratePerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    // Chặn tới khi đủ token, trả về số nano giây đã phải chờ
+    public long acquire(long permits) throws InterruptedException {
+        long waitNanos = reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        return waitNanos;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - lastRefill) / 1_000_000_000.0;
+        lastRefill = now;
+        tokens = Math.min(capacity, tokens + elapsedSeconds * ratePerSecond);
+    }
+}
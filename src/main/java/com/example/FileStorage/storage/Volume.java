@@ -0,0 +1,56 @@
+package com.example.FileStorage.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Một ổ đĩa / mount chứa blob. Blob nằm phẳng ngay dưới root, file tạm nằm trong root/.staging
+public class Volume {
+
+    private static final long SPACE_PROBE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Path root;
+    private final double weight;
+    private final boolean draining;
+    private final AtomicInteger activeIo = new AtomicInteger();
+
+    private volatile long usableBytes = Long.MAX_VALUE;
+    private volatile long lastProbe;
+
+    public Volume(Path root, double weight, boolean draining) {
+        this.root = root;
+        this.weight = weight;
+        this.draining = draining;
+        this.lastProbe = System.nanoTime() - SPACE_PROBE_INTERVAL_NANOS;
+    }
+
+    public Path getRoot() { return root; }
+    public double getWeight() { return weight; }
+    public boolean isDraining() { return draining; }
+    public int getActiveIo() { return activeIo.get(); }
+
+    public void beginIo() {
+        activeIo.incrementAndGet();
+    }
+
+    public void endIo() {
+        activeIo.decrementAndGet();
+    }
+
+    // Dung lượng trống, đọc lại từ filesystem tối đa mỗi 5 giây
+    public long getUsableBytes() {
+        long now = System.nanoTime();
+        if (now - lastProbe >= SPACE_PROBE_INTERVAL_NANOS) {
+            lastProbe = now;
+            try {
+                Files.createDirectories(root);
+                usableBytes = Files.getFileStore(root).getUsableSpace();
+            } catch (IOException ex) {
+                usableBytes = 0;
+            }
+        }
+        return usableBytes;
+    }
+}
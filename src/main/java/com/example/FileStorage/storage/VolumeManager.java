@@ -0,0 +1,218 @@
+package com.example.FileStorage.storage;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+// Phân bổ blob lên nhiều volume bằng rendezvous hashing có trọng số (weighted HRW):
+// mỗi volume có điểm -weight / ln(hash(tên blob, volume)), volume điểm cao nhất giữ bản chính,
+// các volume tiếp theo giữ bản sao. Thêm hoặc rút một volume chỉ làm thay đổi thứ hạng
+// của các blob liên quan tới volume đó, nên rebalancer chỉ phải di chuyển tối thiểu.
+// Tải I/O không làm lệch thứ hạng: khi volume đứng đầu đang bận, blob mới được đặt tên khác
+// (placeName) cho tới khi thứ hạng của chính tên đó rơi vào volume nhàn rỗi. Nhờ vậy place() và desired()
+// luôn cùng một thứ hạng và rebalancer không kéo blob vừa tránh tải quay lại volume bận.
+@Component
+public class VolumeManager {
+
+    private static final int MAX_NAME_ATTEMPTS = 32;
+
+    private final List<Volume> volumes;
+    private final long minFreeBytes;
+    private final int maxActiveIo;
+    private final int replication;
+
+    @Autowired
+    public VolumeManager(
+            @Value("${file.upload-dir}") String uploadDir,
+            @Value("${file.volumes:}") String volumes,
+            @Value("${file.volumes.draining:}") String draining,
+            @Value("${file.volumes.min-free-bytes:1073741824}") long minFreeBytes,
+            @Value("${file.volumes.max-active-io:64}") int maxActiveIo,
+            @Value("${file.replication:1}") int replication
+    ) {
+        Set<Path> drainingRoots = new HashSet<>();
+        for (String entry : draining.split(",")) {
+            if (!entry.isBlank()) {
+                drainingRoots.add(Paths.get(entry.trim()).toAbsolutePath().normalize());
+            }
+        }
+        List<Volume> parsed = new ArrayList<>();
+        for (String entry : volumes.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            // path=weight, trọng số mặc định 1
+            int eq = entry.lastIndexOf('=');
+            Path root = Paths.get(eq > 0 ? entry.substring(0, eq).trim() : entry.trim()).toAbsolutePath().normalize();
+            double weight = eq > 0 ? Double.parseDouble(entry.substring(eq + 1).trim()) : 1.0;
+            parsed.add(new Volume(root, weight, drainingRoots.contains(root)));
+        }
+        if (parsed.isEmpty()) {
+            parsed.add(new Volume(Paths.get(uploadDir).toAbsolutePath().normalize(), 1.0, false));
+        }
+        this.volumes = List.copyOf(parsed);
+        this.minFreeBytes = minFreeBytes;
+        this.maxActiveIo = maxActiveIo;
+        this.replication = Math.max(1, Math.min(replication, this.volumes.size()));
+    }
+
+    // Một volume duy nhất, không replication (dùng cho benchmark / công cụ)
+    public VolumeManager(String uploadDir) {
+        this(uploadDir, "", "", 0, Integer.MAX_VALUE, 1);
+    }
+
+    public List<Volume> getVolumes() {
+        return volumes;
+    }
+
+    public int getReplication() {
+        return replication;
+    }
+
+    // Thứ hạng HRW của mọi volume cho một tên blob (không phụ thuộc tải hay dung lượng)
+    public List<Volume> rank(String blobName) {
+        List<Volume> ranked = new ArrayList<>(volumes);
+        Map<Volume, Double> scores = new LinkedHashMap<>();
+        for (Volume volume : ranked) {
+            scores.put(volume, score(blobName, volume));
+        }
+        ranked.sort(Comparator.comparing((Volume v) -> scores.get(v)).reversed());
+        return ranked;
+    }
+
+    // Vị trí "đúng" của blob: replication volume đứng đầu thứ hạng, bỏ qua volume đang rút hoặc sắp đầy
+    public List<Volume> desired(String blobName) {
+        List<Volume> eligible = eligible(blobName);
+        return eligible.subList(0, Math.min(replication, eligible.size()));
+    }
+
+    // Vị trí cho blob mới: cùng thứ hạng với desired(), tên blob đã được chọn sẵn để tránh volume bận
+    public List<Volume> place(String blobName) {
+        List<Volume> placed = desired(blobName);
+        if (placed.isEmpty()) {
+            throw new IllegalStateException("❌ No storage volume has enough free space");
+        }
+        return placed;
+    }
+
+    // Chọn tên cho blob mới sao cho mọi volume nó được đặt lên đều đang nhàn rỗi;
+    // nếu mọi lần thử đều rơi vào volume bận thì dùng tên đầu tiên
+    public String placeName(Supplier<String> names) {
+        String first = null;
+        for (int attempt = 0; attempt < MAX_NAME_ATTEMPTS; attempt++) {
+            String name = names.get();
+            List<Volume> placed = place(name);
+            if (first == null) {
+                first = name;
+            }
+            if (placed.stream().allMatch(volume -> volume.getActiveIo() < maxActiveIo)) {
+                return name;
+            }
+        }
+        return first;
+    }
+
+    // Chọn tên cho blob mới sao cho bản chính của nó thuộc về volume cho trước
+    // (bản copy bằng reflink / hard link phải nằm cùng volume với blob nguồn).
+    // null nếu volume đang rút / sắp đầy hoặc không tìm được tên nào: người gọi đặt blob theo HRW như thường
+    public String nameOn(Volume volume, Supplier<String> names) {
+        if (volume.isDraining() || volume.getUsableBytes() < minFreeBytes) {
+            return null;
+        }
+        for (int attempt = 0; attempt < MAX_NAME_ATTEMPTS; attempt++) {
+            String name = names.get();
+            List<Volume> placed = desired(name);
+            if (!placed.isEmpty() && placed.get(0).equals(volume)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    private List<Volume> eligible(String blobName) {
+        List<Volume> eligible = new ArrayList<>();
+        for (Volume volume : rank(blobName)) {
+            if (!volume.isDraining() && volume.getUsableBytes() >= minFreeBytes) {
+                eligible.add(volume);
+            }
+        }
+        return eligible;
+    }
+
+    public Volume volumeOf(Path blobPath) {
+        Path parent = blobPath.toAbsolutePath().normalize().getParent();
+        for (Volume volume : volumes) {
+            if (volume.getRoot().equals(parent)) {
+                return volume;
+            }
+        }
+        return null;
+    }
+
+    // Chọn bản sao còn tồn tại nằm trên volume đang ít I/O nhất
+    public Path pickReplica(List<Path> candidates) {
+        Path best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (Path candidate : candidates) {
+            if (!Files.isRegularFile(candidate)) {
+                continue;
+            }
+            Volume volume = volumeOf(candidate);
+            int load = volume == null ? Integer.MAX_VALUE - 1 : volume.getActiveIo();
+            if (best == null || load < bestLoad) {
+                best = candidate;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    public List<Map<String, Object>> getStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (Volume volume : volumes) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("root", volume.getRoot().toString());
+            entry.put("weight", volume.getWeight());
+            entry.put("draining", volume.isDraining());
+            entry.put("activeIo", volume.getActiveIo());
+            entry.put("usableBytes", volume.getUsableBytes());
+            stats.add(entry);
+        }
+        return stats;
+    }
+
+    private static double score(String blobName, Volume volume) {
+        long hash = hash64(blobName + "#" + volume.getRoot());
+        // 53 bit cao -> số thực trong (0, 1)
+        double unit = ((hash >>> 11) + 0.5) * 0x1.0p-53;
+        return -volume.getWeight() / Math.log(unit);
+    }
+
+    // FNV-1a 64 bit + bước trộn cuối của MurmurHash3
+    private static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
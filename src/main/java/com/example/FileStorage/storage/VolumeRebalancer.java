@@ -0,0 +1,273 @@
+package com.example.FileStorage.storage;
+
+import com.example.FileStorage.repository.BlobRef;
+import com.example.FileStorage.repository.FileRepository;
+import com.example.FileStorage.repository.FileSummary;
+import com.example.FileStorage.repository.FileVersionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+// Dời blob về đúng vị trí HRW sau khi thêm volume hoặc đánh dấu volume đang rút (draining).
+// Chỉ blob nào có volume hiện tại không còn nằm trong tập volume mong muốn mới bị chép,
+// DB được cập nhật có điều kiện rồi mới xóa bản cũ; chạy nền với ngân sách băng thông riêng
+// và tạm dừng khi upload/download đang chịu tải.
+// Blob có nhiều hard link (bản copy phía server) vẫn được dời, nếu không volume đang rút sẽ không bao giờ trống:
+// bản đầu tiên của một inode được chép sang volume đích, các bản sau cùng inode đi tới cùng volume đó
+// được hard link vào bản đã dời nên vẫn dùng chung dữ liệu; bản đi tới volume khác thì tách thành bản riêng.
+// File nhỏ không dời riêng lẻ mà đi cùng segment chứa nó.
+@Component
+public class VolumeRebalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(VolumeRebalancer.class);
+    private static final int BATCH_SIZE = 500;
+
+    private final FileRepository fileRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final VolumeManager volumeManager;
+    private final BlobStore blobStore;
+    private final SegmentStore segmentStore;
+    private final AdmissionLimiter admissionLimiter;
+    private final TokenBucket bandwidth;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong scannedBlobs = new AtomicLong();
+    private final AtomicLong movedBlobs = new AtomicLong();
+    private final AtomicLong movedBytes = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+    // Inode (fileKey) của blob có nhiều hard link -> bản đã dời của nó trên từng volume đích trong lượt này
+    private final Map<Object, Map<Volume, Path>> movedLinks = new HashMap<>();
+    private final AtomicLong relinkedBlobs = new AtomicLong();
+    private final AtomicLong movedSegments = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    public VolumeRebalancer(
+            FileRepository fileRepository,
+            FileVersionRepository fileVersionRepository,
+            VolumeManager volumeManager,
+            BlobStore blobStore,
+            SegmentStore segmentStore,
+            AdmissionLimiter admissionLimiter,
+            @Value("${file.rebalance.bytes-per-second:52428800}") long bytesPerSecond
+    ) {
+        this.fileRepository = fileRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.volumeManager = volumeManager;
+        this.blobStore = blobStore;
+        this.segmentStore = segmentStore;
+        this.admissionLimiter = admissionLimiter;
+        this.bandwidth = new TokenBucket(bytesPerSecond, bytesPerSecond);
+    }
+
+    // Trả về false nếu đang có một lượt rebalance chạy
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        scannedBlobs.set(0);
+        movedBlobs.set(0);
+        movedBytes.set(0);
+        conflicts.set(0);
+        relinkedBlobs.set(0);
+        movedSegments.set(0);
+        failures.set(0);
+        startedAt = LocalDateTime.now();
+        finishedAt = null;
+        Thread thread = new Thread(this::run, "volume-rebalancer");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    private void run() {
+        try {
+            long afterId = 0;
+            List<FileSummary> rows;
+            while (!(rows = fileRepository.findSummariesAfter(afterId, PageRequest.of(0, BATCH_SIZE))).isEmpty()) {
+                for (FileSummary row : rows) {
+                    afterId = row.getId();
+                    // File nằm trong segment đi theo segment, không dời riêng lẻ; file đã tombstone sắp bị xóa
+                    if (row.getSegmentId() != null || row.getDeletedAt() != null) {
+                        continue;
+                    }
+                    rebalanceFile(row.getId(), row.getStoragePath());
+                }
+            }
+            afterId = 0;
+            List<BlobRef> versions;
+            while (!(versions = fileVersionRepository.findBlobRefsAfter(afterId, PageRequest.of(0, BATCH_SIZE))).isEmpty()) {
+                for (BlobRef version : versions) {
+                    afterId = version.getId();
+                    if (version.getSegmentId() != null) {
+                        continue;
+                    }
+                    String path = version.getStoragePath();
+                    // Phiên bản cũ không có bản sao: chỉ cần nằm trên volume đứng đầu
+                    List<Volume> desired = volumeManager.desired(Paths.get(path).getFileName().toString());
+                    desired = desired.subList(0, Math.min(1, desired.size()));
+                    rebalanceBlob(path, desired, new ArrayList<>(desired),
+                            newPath -> fileVersionRepository.relocateBlob(version.getId(), path, newPath));
+                }
+            }
+            rebalanceSegments();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            log.warn("Volume rebalance aborted: {}", ex.getMessage());
+        } finally {
+            movedLinks.clear();
+            finishedAt = LocalDateTime.now();
+            running.set(false);
+        }
+    }
+
+    private void rebalanceFile(Long fileId, String primary) throws InterruptedException {
+        List<String> current = new ArrayList<>();
+        current.add(primary);
+        current.addAll(fileRepository.findReplicaPaths(fileId));
+
+        List<Volume> desired = volumeManager.desired(Paths.get(primary).getFileName().toString());
+        // Volume mong muốn chưa giữ bản nào là đích cho các bản đang nằm sai chỗ
+        List<Volume> targets = new ArrayList<>(desired);
+        for (String path : current) {
+            targets.remove(volumeManager.volumeOf(Paths.get(path)));
+        }
+        for (int i = 0; i < current.size(); i++) {
+            String path = current.get(i);
+            ToIntFunction<String> relocate = i == 0
+                    ? newPath -> fileRepository.relocateBlob(fileId, path, newPath)
+                    : newPath -> fileRepository.relocateReplica(fileId, path, newPath);
+            rebalanceBlob(path, desired, targets, relocate);
+        }
+    }
+
+    // Cả segment sealed được dời về volume đứng đầu thứ hạng của tên segment (segment không có bản sao).
+    // Segment đang ghi trên volume đang rút được SegmentStore đóng lại ở lần append kế tiếp và dời ở lượt sau
+    private void rebalanceSegments() throws InterruptedException {
+        for (Long segmentId : segmentStore.getSegmentIds()) {
+            Path path = segmentStore.pathOf(segmentId);
+            if (path == null || segmentStore.isActive(segmentId)) {
+                continue;
+            }
+            scannedBlobs.incrementAndGet();
+            List<Volume> desired = volumeManager.desired(path.getFileName().toString());
+            if (desired.isEmpty() || desired.get(0).equals(volumeManager.volumeOf(path.getParent()))) {
+                continue;
+            }
+            Volume target = desired.get(0);
+            while (admissionLimiter.isReadUnderPressure() || admissionLimiter.isWriteUnderPressure()) {
+                Thread.sleep(100);
+            }
+            try {
+                long size = segmentStore.sizeOf(segmentId);
+                bandwidth.acquire(size);
+                Path moved = segmentStore.relocate(segmentId, target, newPath -> {
+                    fileRepository.relocateSegment(segmentId, newPath.toString());
+                    fileVersionRepository.relocateSegment(segmentId, newPath.toString());
+                });
+                // null: segment còn bản ghi pending hoặc vừa bị compactor xóa, lượt rebalance sau thử lại
+                if (moved != null) {
+                    movedSegments.incrementAndGet();
+                    movedBytes.addAndGet(size);
+                }
+            } catch (IOException | RuntimeException ex) {
+                failures.incrementAndGet();
+                log.warn("Failed to move segment {} to {}: {}", segmentId, target.getRoot(), ex.getMessage());
+            }
+        }
+    }
+
+    private void rebalanceBlob(String storagePath, List<Volume> desired, List<Volume> targets,
+                               ToIntFunction<String> relocate) throws InterruptedException {
+        scannedBlobs.incrementAndGet();
+        Path source = Paths.get(storagePath);
+        if (desired.contains(volumeManager.volumeOf(source)) || targets.isEmpty() || !Files.isRegularFile(source)) {
+            return;
+        }
+        Volume target = targets.remove(0);
+        while (admissionLimiter.isReadUnderPressure() || admissionLimiter.isWriteUnderPressure()) {
+            Thread.sleep(100);
+        }
+        try {
+            long size = Files.size(source);
+            Object inode = linkCount(source) > 1
+                    ? Files.readAttributes(source, BasicFileAttributes.class).fileKey() : null;
+            Path linkFrom = inode == null ? null : movedLinks.getOrDefault(inode, Map.of()).get(target);
+            if (linkFrom == null) {
+                bandwidth.acquire(size);
+            }
+            Path moved = blobStore.copyTo(source, target, linkFrom);
+            try {
+                if (relocate.applyAsInt(moved.toString()) == 0) {
+                    // Dòng DB đã đổi trong lúc chép: bản mới thừa, giữ nguyên bản cũ
+                    blobStore.delete(moved.toString());
+                    conflicts.incrementAndGet();
+                    return;
+                }
+            } finally {
+                blobStore.release(moved);
+            }
+            blobStore.delete(storagePath);
+            movedBlobs.incrementAndGet();
+            if (inode != null) {
+                movedLinks.computeIfAbsent(inode, key -> new HashMap<>()).put(target, moved);
+            }
+            if (linkFrom != null && linkCount(moved) > 1) {
+                relinkedBlobs.incrementAndGet();
+            } else {
+                if (linkFrom != null) {
+                    // Không link được (bản đã dời vừa bị xóa): đã chép thường, trừ ngân sách sau
+                    bandwidth.acquire(size);
+                }
+                movedBytes.addAndGet(size);
+            }
+        } catch (IOException | RuntimeException ex) {
+            failures.incrementAndGet();
+            log.warn("Failed to move blob {} to {}: {}", storagePath, target.getRoot(), ex.getMessage());
+        }
+    }
+
+    // Số hard link của blob; filesystem không hỗ trợ thuộc tính unix coi như 1
+    private static int linkCount(Path path) {
+        try {
+            return (Integer) Files.getAttribute(path, "unix:nlink");
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException ex) {
+            return 1;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running.get());
+        stats.put("startedAt", startedAt);
+        stats.put("finishedAt", finishedAt);
+        stats.put("scannedBlobs", scannedBlobs.get());
+        stats.put("movedBlobs", movedBlobs.get());
+        stats.put("movedBytes", movedBytes.get());
+        stats.put("conflicts", conflicts.get());
+        stats.put("relinkedBlobs", relinkedBlobs.get());
+        stats.put("movedSegments", movedSegments.get());
+        stats.put("failures", failures.get());
+        stats.put("volumes", volumeManager.getStats());
+        return stats;
+    }
+}
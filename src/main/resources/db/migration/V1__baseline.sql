@@ -0,0 +1,81 @@
+-- Lược đồ ban đầu, trùng với những gì ddl-auto=update đã tạo trên SQL Server.
+-- DB đang chạy (đã có bảng) được Flyway baseline ở version 1 nên script này chỉ chạy trên DB trống.
+-- Chỉ dùng cú pháp mà H2 ở MODE=MSSQLServer cũng hiểu (dùng cho benchmark khởi động).
+
+CREATE TABLE users (
+    id         BIGINT IDENTITY(1,1) NOT NULL,
+    username   VARCHAR(50)  NOT NULL,
+    password   VARCHAR(255) NOT NULL,
+    email      VARCHAR(100) NOT NULL,
+    created_at DATETIME2(6),
+    CONSTRAINT pk_users PRIMARY KEY (id),
+    CONSTRAINT uk_users_username UNIQUE (username),
+    CONSTRAINT uk_users_email UNIQUE (email)
+);
+
+CREATE TABLE files (
+    id               BIGINT IDENTITY(1,1) NOT NULL,
+    file_name        VARCHAR(255) NOT NULL,
+    file_type        VARCHAR(50),
+    file_size        BIGINT,
+    storage_path     VARCHAR(500) NOT NULL,
+    segment_id       BIGINT,
+    segment_offset   BIGINT,
+    checksum         VARCHAR(64),
+    last_verified_at DATETIME2(6),
+    corrupted        BIT,
+    deleted_at       DATETIME2(6),
+    uploaded_at      DATETIME2(6),
+    updated_at       DATETIME2(6),
+    current_version  INT,
+    user_id          BIGINT NOT NULL,
+    CONSTRAINT pk_files PRIMARY KEY (id),
+    CONSTRAINT fk_files_user FOREIGN KEY (user_id) REFERENCES users (id)
+);
+
+CREATE TABLE file_replicas (
+    file_id      BIGINT NOT NULL,
+    storage_path VARCHAR(500) NOT NULL,
+    CONSTRAINT fk_file_replicas_file FOREIGN KEY (file_id) REFERENCES files (id)
+);
+
+CREATE TABLE file_versions (
+    id             BIGINT IDENTITY(1,1) NOT NULL,
+    version_number INT NOT NULL,
+    file_size      BIGINT,
+    storage_path   VARCHAR(500) NOT NULL,
+    segment_id     BIGINT,
+    segment_offset BIGINT,
+    checksum       VARCHAR(64),
+    created_at     DATETIME2(6),
+    file_id        BIGINT NOT NULL,
+    CONSTRAINT pk_file_versions PRIMARY KEY (id),
+    CONSTRAINT fk_file_versions_file FOREIGN KEY (file_id) REFERENCES files (id)
+);
+
+CREATE TABLE shares (
+    id         BIGINT IDENTITY(1,1) NOT NULL,
+    share_link VARCHAR(255) NOT NULL,
+    permission VARCHAR(20),
+    password   VARCHAR(255),
+    expire_at  DATETIME2(6),
+    created_at DATETIME2(6),
+    file_id    BIGINT NOT NULL,
+    owner_id   BIGINT NOT NULL,
+    CONSTRAINT pk_shares PRIMARY KEY (id),
+    CONSTRAINT uk_shares_share_link UNIQUE (share_link),
+    CONSTRAINT fk_shares_file FOREIGN KEY (file_id) REFERENCES files (id),
+    CONSTRAINT fk_shares_owner FOREIGN KEY (owner_id) REFERENCES users (id)
+);
+
+CREATE TABLE activity_logs (
+    id          BIGINT IDENTITY(1,1) NOT NULL,
+    action      VARCHAR(50) NOT NULL,
+    description VARCHAR(500),
+    created_at  DATETIME2(6),
+    user_id     BIGINT NOT NULL,
+    file_id     BIGINT,
+    CONSTRAINT pk_activity_logs PRIMARY KEY (id),
+    CONSTRAINT fk_activity_logs_user FOREIGN KEY (user_id) REFERENCES users (id),
+    CONSTRAINT fk_activity_logs_file FOREIGN KEY (file_id) REFERENCES files (id)
+);
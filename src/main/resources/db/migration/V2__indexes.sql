@@ -0,0 +1,21 @@
+-- Index cho các truy vấn nóng; ddl-auto=update chưa từng tạo chúng nên chạy cả trên DB đã baseline
+
+-- Danh sách file theo user (bỏ qua file đã tombstone)
+CREATE INDEX ix_files_user_deleted ON files (user_id, deleted_at);
+-- Đối soát / rebalancer tra blob theo đường dẫn
+CREATE INDEX ix_files_storage_path ON files (storage_path);
+-- Compactor gom bản ghi theo segment
+CREATE INDEX ix_files_segment ON files (segment_id, segment_offset);
+-- Lượt quét tombstone bị bỏ lại
+CREATE INDEX ix_files_deleted_at ON files (deleted_at);
+
+CREATE INDEX ix_file_replicas_file ON file_replicas (file_id);
+CREATE INDEX ix_file_replicas_storage_path ON file_replicas (storage_path);
+
+CREATE INDEX ix_file_versions_file ON file_versions (file_id, version_number);
+CREATE INDEX ix_file_versions_storage_path ON file_versions (storage_path);
+CREATE INDEX ix_file_versions_segment ON file_versions (segment_id, segment_offset);
+
+CREATE INDEX ix_shares_file ON shares (file_id);
+CREATE INDEX ix_activity_logs_user ON activity_logs (user_id);
+CREATE INDEX ix_activity_logs_file ON activity_logs (file_id);
@@ -0,0 +1,33 @@
+-- Thư mục phân cấp: folders giữ quan hệ cha-con trực tiếp, folder_closure giữ mọi cặp
+-- (tổ tiên, hậu duệ) kèm độ sâu để truy vấn cả cây con bằng một câu lệnh
+
+CREATE TABLE folders (
+    id         BIGINT IDENTITY(1,1) NOT NULL,
+    name       VARCHAR(255) NOT NULL,
+    parent_id  BIGINT,
+    user_id    BIGINT NOT NULL,
+    created_at DATETIME2(6),
+    updated_at DATETIME2(6),
+    CONSTRAINT pk_folders PRIMARY KEY (id),
+    CONSTRAINT fk_folders_parent FOREIGN KEY (parent_id) REFERENCES folders (id),
+    CONSTRAINT fk_folders_user FOREIGN KEY (user_id) REFERENCES users (id)
+);
+
+CREATE INDEX ix_folders_parent ON folders (parent_id);
+CREATE INDEX ix_folders_user_parent ON folders (user_id, parent_id);
+
+-- Không có khóa ngoại: cây con được xóa / nối lại bằng các câu lệnh tập hợp
+CREATE TABLE folder_closure (
+    ancestor_id   BIGINT NOT NULL,
+    descendant_id BIGINT NOT NULL,
+    depth         INT NOT NULL,
+    CONSTRAINT pk_folder_closure PRIMARY KEY (ancestor_id, descendant_id)
+);
+
+CREATE INDEX ix_folder_closure_descendant ON folder_closure (descendant_id, ancestor_id);
+
+ALTER TABLE files ADD folder_id BIGINT;
+ALTER TABLE files ADD CONSTRAINT fk_files_folder FOREIGN KEY (folder_id) REFERENCES folders (id);
+
+-- Liệt kê file trong một thư mục và tính kích thước cây con
+CREATE INDEX ix_files_folder ON files (folder_id, deleted_at);
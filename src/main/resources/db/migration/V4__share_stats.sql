@@ -0,0 +1,10 @@
+-- Bộ đếm truy cập share, tách khỏi bảng shares để việc cộng dồn không khóa dòng share.
+-- Không có khóa ngoại: dòng của share đã xóa được dọn cùng share, MERGE bỏ qua share không còn tồn tại
+
+CREATE TABLE share_stats (
+    share_id       BIGINT NOT NULL,
+    view_count     BIGINT NOT NULL,
+    download_count BIGINT NOT NULL,
+    last_access_at DATETIME2(6),
+    CONSTRAINT pk_share_stats PRIMARY KEY (share_id)
+);
@@ -0,0 +1,4 @@
+-- IntegrityScrubber quét cả blob của các phiên bản cũ: cùng hai cột theo dõi như bảng files
+
+ALTER TABLE file_versions ADD last_verified_at DATETIME2(6);
+ALTER TABLE file_versions ADD corrupted BIT;
@@ -0,0 +1,179 @@
+package com.example.FileStorage.repository;
+
+import com.example.FileStorage.entity.FileEntity;
+import com.example.FileStorage.entity.Folder;
+import com.example.FileStorage.entity.User;
+import com.example.FileStorage.service.BulkDeleteService;
+import com.example.FileStorage.service.FolderService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+// Chạy các câu lệnh native trên folder_closure với schema do Flyway tạo, H2 ở chế độ SQL Server
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:folders;MODE=MSSQLServer;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class FolderRepositoryTest {
+
+    @Autowired
+    FolderRepository folderRepository;
+
+    @Autowired
+    FileRepository fileRepository;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    TestEntityManager entityManager;
+
+    private final BulkDeleteService bulkDeleteService = mock(BulkDeleteService.class);
+    private FolderService folderService;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        folderService = new FolderService(folderRepository, fileRepository, bulkDeleteService);
+        user = new User();
+        user.setUsername("alice");
+        user.setPassword("secret");
+        user.setEmail("alice@example.com");
+        user = userRepository.save(user);
+    }
+
+    @Test
+    void createFolderLinksItToEveryAncestor() {
+        Folder root = folderService.createFolder(user, null, "root");
+        Folder a = folderService.createFolder(user, root.getId(), "a");
+        Folder b = folderService.createFolder(user, a.getId(), "b");
+
+        assertThat(folderRepository.countLink(b.getId(), b.getId())).isEqualTo(1);
+        assertThat(folderRepository.countLink(root.getId(), b.getId())).isEqualTo(1);
+        assertThat(folderRepository.countLink(b.getId(), root.getId())).isZero();
+        assertThat(names(folderRepository.findPath(b.getId()))).containsExactly("root", "a", "b");
+    }
+
+    @Test
+    void moveFolderRelinksWholeSubtree() {
+        Folder first = folderService.createFolder(user, null, "first");
+        Folder second = folderService.createFolder(user, null, "second");
+        Folder a = folderService.createFolder(user, first.getId(), "a");
+        Folder b = folderService.createFolder(user, a.getId(), "b");
+
+        folderService.moveFolder(a.getId(), second.getId());
+
+        assertThat(folderRepository.countLink(first.getId(), b.getId())).isZero();
+        assertThat(folderRepository.countLink(second.getId(), b.getId())).isEqualTo(1);
+        assertThat(folderRepository.countLink(a.getId(), b.getId())).isEqualTo(1);
+        assertThat(names(folderRepository.findPath(b.getId()))).containsExactly("second", "a", "b");
+
+        // Về thư mục gốc: chỉ còn liên kết bên trong cây con
+        folderService.moveFolder(a.getId(), null);
+
+        assertThat(folderRepository.countLink(second.getId(), b.getId())).isZero();
+        assertThat(names(folderRepository.findPath(b.getId()))).containsExactly("a", "b");
+    }
+
+    @Test
+    void moveIntoItselfOrDescendantIsRejected() {
+        Folder root = folderService.createFolder(user, null, "root");
+        Folder a = folderService.createFolder(user, root.getId(), "a");
+        Folder b = folderService.createFolder(user, a.getId(), "b");
+
+        assertThatThrownBy(() -> folderService.moveFolder(a.getId(), b.getId()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Cannot move a folder into itself or its subfolders");
+        assertThatThrownBy(() -> folderService.moveFolder(a.getId(), a.getId()))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        // Cây không bị đụng tới
+        assertThat(names(folderRepository.findPath(b.getId()))).containsExactly("root", "a", "b");
+    }
+
+    @Test
+    void sumSubtreeCountsFoldersAndLiveFilesRecursively() {
+        Folder root = folderService.createFolder(user, null, "root");
+        Folder a = folderService.createFolder(user, root.getId(), "a");
+        Folder b = folderService.createFolder(user, a.getId(), "b");
+        Folder empty = folderService.createFolder(user, null, "empty");
+        file(root, 100, false);
+        file(a, 200, false);
+        file(b, 300, false);
+        file(b, 1000, true);
+        file(null, 500, false);
+
+        FolderSize size = folderRepository.sumSubtree(root.getId());
+        assertThat(size.getFolderCount()).isEqualTo(2);
+        assertThat(size.getFileCount()).isEqualTo(3);
+        assertThat(size.getTotalBytes()).isEqualTo(600);
+
+        FolderSize leaf = folderRepository.sumSubtree(b.getId());
+        assertThat(leaf.getFolderCount()).isZero();
+        assertThat(leaf.getFileCount()).isEqualTo(1);
+        assertThat(leaf.getTotalBytes()).isEqualTo(300);
+
+        FolderSize none = folderRepository.sumSubtree(empty.getId());
+        assertThat(none.getFolderCount()).isZero();
+        assertThat(none.getFileCount()).isZero();
+        assertThat(none.getTotalBytes()).isZero();
+    }
+
+    @Test
+    void deleteFolderRemovesSubtreeAndKeepsSiblings() {
+        Folder root = folderService.createFolder(user, null, "root");
+        Folder a = folderService.createFolder(user, root.getId(), "a");
+        Folder b = folderService.createFolder(user, a.getId(), "b");
+        Folder sibling = folderService.createFolder(user, root.getId(), "sibling");
+        FileEntity inB = file(b, 300, false);
+        FileEntity inSibling = file(sibling, 100, false);
+
+        folderService.deleteFolder(a.getId());
+        entityManager.flush();
+        entityManager.clear();
+
+        // File sống trong cây con được giao cho bulk delete, file đã chuyển ra khỏi thư mục sắp xóa
+        verify(bulkDeleteService).submit(List.of(inB.getId()));
+        assertThat(fileRepository.findById(inB.getId()).orElseThrow().getFolderId()).isNull();
+        assertThat(fileRepository.findById(inSibling.getId()).orElseThrow().getFolderId()).isEqualTo(sibling.getId());
+
+        assertThat(folderRepository.findById(a.getId())).isEmpty();
+        assertThat(folderRepository.findById(b.getId())).isEmpty();
+        assertThat(folderRepository.countLink(b.getId(), b.getId())).isZero();
+        assertThat(folderRepository.countLink(root.getId(), b.getId())).isZero();
+        assertThat(folderRepository.findById(sibling.getId())).isPresent();
+        assertThat(names(folderRepository.findPath(sibling.getId()))).containsExactly("root", "sibling");
+    }
+
+    private FileEntity file(Folder folder, long size, boolean deleted) {
+        FileEntity file = new FileEntity();
+        file.setFileName("file-" + size + ".bin");
+        file.setStoragePath("/data/file-" + size + ".bin");
+        file.setFileSize(size);
+        file.setFolder(folder);
+        file.setUser(user);
+        if (deleted) {
+            file.setDeletedAt(LocalDateTime.now());
+        }
+        return fileRepository.save(file);
+    }
+
+    private static List<String> names(List<Folder> folders) {
+        return folders.stream().map(Folder::getName).toList();
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.FileStorage.service;
+
+import com.example.FileStorage.dto.BlockSignature;
+import com.example.FileStorage.dto.FileSignatures;
+import com.example.FileStorage.entity.FileEntity;
+import com.example.FileStorage.storage.BlobChecksum;
+import com.example.FileStorage.storage.AdmissionLimiter;
+import com.example.FileStorage.storage.BlobStore;
+import com.example.FileStorage.storage.RollingChecksum;
+import com.example.FileStorage.storage.StoredBlob;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DeltaServiceTest {
+
+    private static final int BLOCK = 2048;
+
+    @TempDir
+    Path tempDir;
+
+    private DeltaService deltaService;
+    private final AtomicReference<StoredBlob> committed = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        BlobStore blobStore = mock(BlobStore.class);
+        FileService fileService = mock(FileService.class);
+        AtomicInteger staged = new AtomicInteger();
+        when(blobStore.newStagingPath(anyString()))
+                .thenAnswer(invocation -> tempDir.resolve("staged-" + staged.incrementAndGet() + ".part"));
+        when(blobStore.commit(any(Path.class), anyString()))
+                .thenAnswer(invocation -> new StoredBlob(invocation.getArgument(0), List.of(), invocation.getArgument(1)));
+        when(fileService.commitNewVersion(anyLong(), anyInt(), any(StoredBlob.class), anyLong()))
+                .thenAnswer(invocation -> {
+                    committed.set(invocation.getArgument(2));
+                    return new FileEntity();
+                });
+        deltaService = new DeltaService(fileService, blobStore, new AdmissionLimiter(32, 256, 16, 128, 2, 200, 2000, 20));
+    }
+
+    @Test
+    void emptyBaseHasNoBlocksAndAcceptsEmptyOrLiteralDelta() throws IOException {
+        FileEntity base = baseFile(new byte[0]);
+
+        FileSignatures signatures = deltaService.computeSignatures(base, BLOCK);
+        assertThat(signatures.getFileSize()).isZero();
+        assertThat(signatures.getBlocks()).isEmpty();
+
+        assertThat(apply(base, new Delta().end())).isEmpty();
+        assertThat(apply(base, new Delta().data("hello".getBytes()).end())).isEqualTo("hello".getBytes());
+    }
+
+    @Test
+    void finalBlockShorterThanBlockSizeIsSignedAndCopiedExactly() throws IOException {
+        byte[] data = random(3 * BLOCK + 100, 1);
+        FileEntity base = baseFile(data);
+
+        FileSignatures signatures = deltaService.computeSignatures(base, BLOCK);
+        assertThat(signatures.getBlocks()).hasSize(4);
+        BlockSignature last = signatures.getBlocks().get(3);
+        assertThat(last.getWeak()).isEqualTo(RollingChecksum.of(data, 3 * BLOCK, 100));
+        assertThat(last.getStrong()).isEqualTo(md5(data, 3 * BLOCK, 100));
+
+        // Chỉ chép khối cuối: đúng 100 byte, không đọc lố sang phần sau của file
+        assertThat(apply(base, new Delta().copy(3, 1).end())).isEqualTo(slice(data, 3 * BLOCK, 100));
+    }
+
+    @Test
+    void allCopyDeltaReproducesBase() throws IOException {
+        byte[] data = random(5 * BLOCK + 17, 2);
+        FileEntity base = baseFile(data);
+
+        byte[] result = apply(base, new Delta().copy(0, 6).end());
+
+        assertThat(result).isEqualTo(data);
+        assertThat(committed.get().getChecksum()).isEqualTo(BlobChecksum.of(data));
+    }
+
+    @Test
+    void allLiteralDeltaReplacesContent() throws IOException {
+        FileEntity base = baseFile(random(2 * BLOCK, 3));
+        byte[] replacement = random(3 * BLOCK + 5, 4);
+
+        assertThat(apply(base, new Delta().data(replacement).end())).isEqualTo(replacement);
+    }
+
+    @Test
+    void encodedDeltaRoundTripsAndReusesUnchangedBlocks() throws IOException {
+        byte[] data = random(8 * BLOCK + 300, 5);
+        FileEntity base = baseFile(data);
+        FileSignatures signatures = deltaService.computeSignatures(base, BLOCK);
+
+        // Chèn vài byte ở đầu, sửa một khối ở giữa, bỏ khối thứ 6
+        ByteArrayOutputStream edited = new ByteArrayOutputStream();
+        edited.write(random(11, 6), 0, 11);
+        edited.write(data, 0, 3 * BLOCK);
+        edited.write(random(BLOCK, 7), 0, BLOCK);
+        edited.write(data, 4 * BLOCK, BLOCK);
+        edited.write(data, 6 * BLOCK, data.length - 6 * BLOCK);
+        byte[] target = edited.toByteArray();
+
+        byte[] delta = encode(target, signatures);
+
+        assertThat(apply(base, delta)).isEqualTo(target);
+        assertThat(delta.length).isLessThan(target.length / 2);
+    }
+
+    @Test
+    void rejectsOutOfRangeCopyAndRemovesStagedFile() throws IOException {
+        FileEntity base = baseFile(random(2 * BLOCK, 8));
+
+        assertThatThrownBy(() -> apply(base, new Delta().copy(1, 2).end()))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(Files.exists(tempDir.resolve("staged-1.part"))).isFalse();
+    }
+
+    @Test
+    void rejectsTruncatedDelta() throws IOException {
+        FileEntity base = baseFile(random(BLOCK, 9));
+
+        assertThatThrownBy(() -> apply(base, new Delta().copy(0, 1).bytes()))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("truncated");
+    }
+
+    private FileEntity baseFile(byte[] content) throws IOException {
+        Path path = tempDir.resolve("base.bin");
+        Files.write(path, content);
+        FileEntity file = new FileEntity();
+        file.setId(1L);
+        file.setFileName("base.bin");
+        file.setFileSize((long) content.length);
+        file.setStoragePath(path.toString());
+        return file;
+    }
+
+    private byte[] apply(FileEntity base, Delta delta) throws IOException {
+        return apply(base, delta.bytes());
+    }
+
+    private byte[] apply(FileEntity base, byte[] delta) throws IOException {
+        deltaService.applyDelta(base, base.getCurrentVersion(), BLOCK, new ByteArrayInputStream(delta));
+        return Files.readAllBytes(committed.get().getPath());
+    }
+
+    // Bộ mã hóa phía client tối giản: dò khối trùng bằng checksum cuộn + MD5, gộp các khối liên tiếp thành một lệnh COPY
+    private static byte[] encode(byte[] target, FileSignatures signatures) {
+        int blockSize = signatures.getBlockSize();
+        Map<Integer, List<BlockSignature>> byWeak = new HashMap<>();
+        for (BlockSignature block : signatures.getBlocks()) {
+            byWeak.computeIfAbsent(block.getWeak(), weak -> new ArrayList<>()).add(block);
+        }
+        Delta delta = new Delta();
+        ByteArrayOutputStream literal = new ByteArrayOutputStream();
+        RollingChecksum checksum = new RollingChecksum();
+        boolean primed = false;
+        int position = 0;
+        while (position < target.length) {
+            int length = Math.min(blockSize, target.length - position);
+            if (!primed) {
+                checksum.reset(target, position, length);
+                primed = true;
+            }
+            Integer match = null;
+            for (BlockSignature block : byWeak.getOrDefault(checksum.value(), List.of())) {
+                long blockLength = Math.min(blockSize, signatures.getFileSize() - (long) block.getIndex() * blockSize);
+                if (blockLength == length && block.getStrong().equals(md5(target, position, length))) {
+                    match = block.getIndex();
+                    break;
+                }
+            }
+            if (match != null) {
+                if (literal.size() > 0) {
+                    delta.data(literal.toByteArray());
+                    literal.reset();
+                }
+                delta.copy(match, 1);
+                position += length;
+                primed = false;
+            } else {
+                literal.write(target[position]);
+                if (position + length < target.length) {
+                    checksum.roll(target[position], target[position + length]);
+                } else {
+                    // Cửa sổ ngắn lại ở cuối dữ liệu: tính lại thay vì cuộn
+                    primed = false;
+                }
+                position++;
+            }
+        }
+        if (literal.size() > 0) {
+            delta.data(literal.toByteArray());
+        }
+        return delta.end().bytes();
+    }
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] slice(byte[] data, int offset, int length) {
+        byte[] result = new byte[length];
+        System.arraycopy(data, offset, result, 0, length);
+        return result;
+    }
+
+    private static String md5(byte[] data, int offset, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            digest.update(data, offset, length);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // Ghi luồng lệnh theo định dạng của DeltaService; COPY liền kề khối trước được gộp lại
+    private static final class Delta {
+
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(buffer);
+        private int pendingStart = -1;
+        private int pendingCount;
+
+        Delta copy(int startBlock, int blockCount) {
+            if (pendingCount > 0 && pendingStart + pendingCount == startBlock) {
+                pendingCount += blockCount;
+                return this;
+            }
+            flushCopy();
+            pendingStart = startBlock;
+            pendingCount = blockCount;
+            return this;
+        }
+
+        Delta data(byte[] bytes) {
+            flushCopy();
+            try {
+                out.writeByte(DeltaService.OP_DATA);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            return this;
+        }
+
+        Delta end() {
+            flushCopy();
+            buffer.write(DeltaService.OP_END);
+            return this;
+        }
+
+        byte[] bytes() {
+            flushCopy();
+            return buffer.toByteArray();
+        }
+
+        private void flushCopy() {
+            if (pendingCount == 0) {
+                return;
+            }
+            try {
+                out.writeByte(DeltaService.OP_COPY);
+                out.writeInt(pendingStart);
+                out.writeInt(pendingCount);
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            pendingCount = 0;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.FileStorage.service;
+
+import com.example.FileStorage.dto.FileIndexEvent;
+import com.example.FileStorage.dto.FileSearchResult;
+import com.example.FileStorage.repository.FileRepository;
+import com.example.FileStorage.repository.FileSummary;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FileSearchIndexTest {
+
+    private static final Long USER = 1L;
+
+    @Test
+    void tokenizeStripsDiacriticsAndSplitsOnPunctuation() {
+        assertThat(FileSearchIndex.tokenize("Báo cáo_Đợt-1.PDF")).containsExactly("bao", "cao", "dot", "1", "pdf");
+        assertThat(FileSearchIndex.tokenize("  ")).isEmpty();
+        assertThat(FileSearchIndex.tokenize(null)).isEmpty();
+    }
+
+    @Test
+    void matchesPrefixAndInfixOfTokens() {
+        FileSearchIndex index = new FileSearchIndex(mock(FileRepository.class));
+        index.onIndexEvent(FileIndexEvent.index(USER, doc(1L, "report.pdf", "application/pdf", 100)));
+        index.onIndexEvent(FileIndexEvent.index(USER, doc(2L, "photo.jpg", "image/jpeg", 200)));
+
+        assertThat(ids(index.search(USER, "rep", null, null, null, null, null, 10))).containsExactly(1L);
+        assertThat(ids(index.search(USER, "port", null, null, null, null, null, 10))).containsExactly(1L);
+        // Từ khóa ngắn hơn trigram chỉ khớp theo tiền tố
+        assertThat(ids(index.search(USER, "po", null, null, null, null, null, 10))).isEmpty();
+        assertThat(ids(index.search(USER, "REPORT pdf", null, null, null, null, null, 10))).containsExactly(1L);
+        assertThat(ids(index.search(USER, "report jpg", null, null, null, null, null, 10))).isEmpty();
+        assertThat(index.search(2L, "rep", null, null, null, null, null, 10)).isEmpty();
+    }
+
+    @Test
+    void appliesFiltersOrderAndLimit() {
+        FileSearchIndex index = new FileSearchIndex(mock(FileRepository.class));
+        index.onIndexEvent(FileIndexEvent.index(USER, doc(1L, "a.pdf", "application/pdf", 100)));
+        index.onIndexEvent(FileIndexEvent.index(USER, doc(2L, "b.pdf", "application/pdf", 5000)));
+        index.onIndexEvent(FileIndexEvent.index(USER, doc(3L, "c.jpg", "image/jpeg", 300)));
+
+        assertThat(ids(index.search(USER, null, "pdf", null, null, null, null, 10))).containsExactly(2L, 1L);
+        assertThat(ids(index.search(USER, null, null, 200L, 1000L, null, null, 10))).containsExactly(3L);
+        assertThat(ids(index.search(USER, null, null, null, null, null, null, 2))).containsExactly(3L, 2L);
+    }
+
+    @Test
+    void renameAndRemoveReplaceOldTokens() {
+        FileSearchIndex index = new FileSearchIndex(mock(FileRepository.class));
+        index.onIndexEvent(FileIndexEvent.index(USER, doc(1L, "draft.txt", "text/plain", 10)));
+        index.onIndexEvent(FileIndexEvent.index(USER, doc(1L, "final.txt", "text/plain", 10)));
+
+        assertThat(index.search(USER, "draft", null, null, null, null, null, 10)).isEmpty();
+        assertThat(ids(index.search(USER, "final", null, null, null, null, null, 10))).containsExactly(1L);
+
+        index.onIndexEvent(FileIndexEvent.remove(USER, 1L));
+        assertThat(index.search(USER, "final", null, null, null, null, null, 10)).isEmpty();
+    }
+
+    @Test
+    void rebuildKeepsServingOldIndexAndReplaysConcurrentChanges() {
+        FileRepository repository = mock(FileRepository.class);
+        FileSearchIndex index = new FileSearchIndex(repository);
+        index.onIndexEvent(FileIndexEvent.index(USER, doc(10L, "report.pdf", "application/pdf", 1)));
+
+        List<List<FileSearchResult>> seenDuringRebuild = new ArrayList<>();
+        when(repository.findSummariesAfter(eq(0L), any())).thenAnswer(invocation -> {
+            seenDuringRebuild.add(index.search(USER, "report", null, null, null, null, null, 10));
+            // Xóa và upload xảy ra sau khi lô này đã được đọc từ DB
+            index.onIndexEvent(FileIndexEvent.remove(USER, 10L));
+            index.onIndexEvent(FileIndexEvent.index(USER, doc(11L, "notes.txt", "text/plain", 1)));
+            return List.of(summary(10L, "report.pdf"));
+        });
+        when(repository.findSummariesAfter(eq(10L), any())).thenReturn(List.of());
+
+        assertThat(index.rebuild()).isEqualTo(1);
+
+        assertThat(ids(seenDuringRebuild.get(0))).containsExactly(10L);
+        assertThat(index.search(USER, "report", null, null, null, null, null, 10)).isEmpty();
+        assertThat(ids(index.search(USER, "notes", null, null, null, null, null, 10))).containsExactly(11L);
+    }
+
+    @Test
+    void rebuildSkipsTombstonedRows() {
+        FileRepository repository = mock(FileRepository.class);
+        FileSearchIndex index = new FileSearchIndex(repository);
+        FileSummary deleted = summary(5L, "gone.txt", LocalDateTime.now());
+        when(repository.findSummariesAfter(anyLong(), any()))
+                .thenReturn(List.of(summary(4L, "kept.txt"), deleted))
+                .thenReturn(List.of());
+
+        assertThat(index.rebuild()).isEqualTo(1);
+        assertThat(ids(index.search(USER, "txt", null, null, null, null, null, 10))).containsExactly(4L);
+    }
+
+    private static FileSearchResult doc(Long id, String name, String type, long size) {
+        FileSearchResult doc = new FileSearchResult();
+        doc.setId(id);
+        doc.setFileName(name);
+        doc.setFileType(type);
+        doc.setFileSize(size);
+        doc.setUploadedAt(LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(id));
+        return doc;
+    }
+
+    private static List<Long> ids(List<FileSearchResult> results) {
+        return results.stream().map(FileSearchResult::getId).toList();
+    }
+
+    private static FileSummary summary(Long id, String name) {
+        return summary(id, name, null);
+    }
+
+    private static FileSummary summary(Long id, String name, LocalDateTime deletedAt) {
+        return new FileSummary() {
+            public Long getId() { return id; }
+            public Long getUserId() { return USER; }
+            public String getFileName() { return name; }
+            public String getFileType() { return "text/plain"; }
+            public Long getFileSize() { return 1L; }
+            public String getStoragePath() { return "uploads/" + name; }
+            public Long getSegmentId() { return null; }
+            public LocalDateTime getUploadedAt() { return LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(id); }
+            public LocalDateTime getUpdatedAt() { return null; }
+            public LocalDateTime getDeletedAt() { return deletedAt; }
+        };
+    }
+}
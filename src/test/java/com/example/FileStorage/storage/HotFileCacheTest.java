@@ -0,0 +1,177 @@
+package com.example.FileStorage.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotFileCacheTest {
+
+    private static final int KB = 1024;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void fileIsLoadedOnlyFromSecondAccess() {
+        HotFileCache cache = new HotFileCache(true, 64 * KB, 8 * KB, 2, 0);
+
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.recordMiss(1, KB)).isFalse();
+
+        assertThat(cache.get(1)).isNull();
+        assertThat(cache.recordMiss(1, KB)).isTrue();
+    }
+
+    @Test
+    void oversizedFileIsNeverLoaded() {
+        HotFileCache cache = new HotFileCache(true, 64 * KB, 8 * KB, 1, 0);
+
+        cache.get(1);
+
+        assertThat(cache.recordMiss(1, 8 * KB + 1)).isFalse();
+    }
+
+    @Test
+    void hitReturnsLoadedContentWithIndependentPosition() throws IOException {
+        HotFileCache cache = new HotFileCache(true, 64 * KB, 8 * KB, 1, 0);
+        Path file = blob("a.bin", 3 * KB, 7);
+
+        cache.get(1);
+        HotFileCache.Entry loaded = cache.load(1, cache.generation(), file, 0, 3 * KB, "a.bin", "application/octet-stream", 5L);
+        drain(loaded.getData());
+
+        HotFileCache.Entry hit = cache.get(1);
+        assertThat(hit).isNotNull();
+        assertThat(hit.getFileName()).isEqualTo("a.bin");
+        assertThat(hit.getUserId()).isEqualTo(5L);
+        assertThat(bytes(hit.getData())).isEqualTo(Files.readAllBytes(file));
+        assertThat(stats(cache).get("hits")).isEqualTo(1L);
+    }
+
+    @Test
+    void coldCandidateIsRejectedBeforeAllocatingWhenMainRegionIsHot() throws IOException {
+        // Vùng chính chứa đúng 9 entry 1 KB; window (1%) nhỏ hơn một entry
+        HotFileCache cache = new HotFileCache(true, 10 * KB, 8 * KB, 2, 0);
+        for (long id = 1; id <= 9; id++) {
+            access(cache, id, 5);
+            assertThat(cache.recordMiss(id, KB)).isTrue();
+            cache.load(id, cache.generation(), blob(id + ".bin", KB, id), 0, KB, id + ".bin", null, 1L);
+        }
+        long offHeapBefore = (long) stats(cache).get("offHeapBytes");
+
+        access(cache, 100, 2);
+
+        assertThat(cache.recordMiss(100, KB)).isFalse();
+        assertThat(stats(cache).get("skippedLoads")).isEqualTo(1L);
+        assertThat(stats(cache).get("offHeapBytes")).isEqualTo(offHeapBefore);
+        for (long id = 1; id <= 9; id++) {
+            assertThat(cache.get(id)).isNotNull();
+        }
+    }
+
+    @Test
+    void hotterCandidateEvictsLeastFrequentEntryAndStaysWithinMaxBytes() throws IOException {
+        HotFileCache cache = new HotFileCache(true, 10 * KB, 8 * KB, 2, 0);
+        for (long id = 1; id <= 9; id++) {
+            // Entry 1 vừa nguội nhất vừa đứng đầu hàng probation
+            access(cache, id, id == 1 ? 2 : 6);
+            cache.recordMiss(id, KB);
+            cache.load(id, cache.generation(), blob(id + ".bin", KB, id), 0, KB, id + ".bin", null, 1L);
+        }
+
+        access(cache, 100, 10);
+        assertThat(cache.recordMiss(100, KB)).isTrue();
+        cache.load(100, cache.generation(), blob("100.bin", KB, 100), 0, KB, "100.bin", null, 1L);
+        cache.cleanUp();
+
+        Map<String, Object> stats = stats(cache);
+        assertThat(stats.get("evictions")).isEqualTo(1L);
+        assertThat(stats.get("entries")).isEqualTo(9);
+        assertThat((long) stats.get("windowBytes") + (long) stats.get("probationBytes") + (long) stats.get("protectedBytes"))
+                .isLessThanOrEqualTo(10L * KB);
+        assertThat(cache.get(100)).isNotNull();
+        assertThat(cache.get(1)).isNull();
+    }
+
+    @Test
+    void hitInProbationPromotesEntryToProtected() throws IOException {
+        HotFileCache cache = new HotFileCache(true, 10 * KB, 8 * KB, 1, 0);
+        cache.get(1);
+        cache.load(1, cache.generation(), blob("1.bin", KB, 1), 0, KB, "1.bin", null, 1L);
+        cache.cleanUp();
+        assertThat(stats(cache).get("probationBytes")).isEqualTo((long) KB);
+
+        cache.get(1);
+        cache.cleanUp();
+
+        assertThat(stats(cache).get("probationBytes")).isEqualTo(0L);
+        assertThat(stats(cache).get("protectedBytes")).isEqualTo((long) KB);
+    }
+
+    @Test
+    void invalidateDropsEntryAndDiscardsInFlightLoad() throws IOException {
+        HotFileCache cache = new HotFileCache(true, 64 * KB, 8 * KB, 1, 0);
+        Path file = blob("a.bin", KB, 1);
+        cache.get(1);
+        cache.load(1, cache.generation(), file, 0, KB, "a.bin", null, 1L);
+
+        long generation = cache.generation();
+        cache.invalidate(1);
+        assertThat(cache.get(1)).isNull();
+
+        // Lần nạp bắt đầu trước invalidate vẫn trả dữ liệu cho người gọi nhưng không được cache
+        assertThat(cache.load(1, generation, file, 0, KB, "a.bin", null, 1L)).isNotNull();
+        assertThat(cache.get(1)).isNull();
+    }
+
+    @Test
+    void loadIsSkippedWhenOffHeapBudgetIsExhausted() throws IOException {
+        HotFileCache cache = new HotFileCache(true, 64 * KB, 8 * KB, 1, 2 * KB);
+        for (long id = 1; id <= 2; id++) {
+            cache.get(id);
+            assertThat(cache.load(id, cache.generation(), blob(id + ".bin", KB, id), 0, KB, id + ".bin", null, 1L))
+                    .isNotNull();
+        }
+
+        cache.get(3);
+
+        assertThat(cache.load(3, cache.generation(), blob("3.bin", KB, 3), 0, KB, "3.bin", null, 1L)).isNull();
+        assertThat(stats(cache).get("offHeapBytes")).isEqualTo(2L * KB);
+        assertThat(stats(cache).get("skippedLoads")).isEqualTo(1L);
+    }
+
+    private static void access(HotFileCache cache, long fileId, int times) {
+        for (int i = 0; i < times; i++) {
+            cache.get(fileId);
+        }
+        cache.cleanUp();
+    }
+
+    private Path blob(String name, int length, long seed) throws IOException {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return Files.write(tempDir.resolve(name), data);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    private static void drain(ByteBuffer buffer) {
+        buffer.position(buffer.limit());
+    }
+
+    private static Map<String, Object> stats(HotFileCache cache) {
+        return cache.getStats();
+    }
+}
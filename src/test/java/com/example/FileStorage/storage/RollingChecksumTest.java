@@ -0,0 +1,56 @@
+package com.example.FileStorage.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RollingChecksumTest {
+
+    @Test
+    void rollMatchesRecomputeAtEveryOffset() {
+        byte[] data = new byte[20_000];
+        new Random(42).nextBytes(data);
+        for (int window : new int[]{1, 3, 2048, 4096}) {
+            RollingChecksum checksum = new RollingChecksum();
+            checksum.reset(data, 0, window);
+            for (int offset = 0; offset + window < data.length; offset++) {
+                assertThat(checksum.value())
+                        .as("window %d at offset %d", window, offset)
+                        .isEqualTo(RollingChecksum.of(data, offset, window));
+                checksum.roll(data[offset], data[offset + window]);
+            }
+        }
+    }
+
+    @Test
+    void rollStaysExactWhenSumsWrapModulo() {
+        // Toàn byte >= 0x80 với cửa sổ lớn: a và b vượt 2^16 nhiều lần, phép trừ khi roll phải lấy mod không âm
+        byte[] data = new byte[70_000];
+        Random random = new Random(7);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (0x80 | random.nextInt(0x80));
+        }
+        int window = 65_536;
+        RollingChecksum checksum = new RollingChecksum();
+        checksum.reset(data, 0, window);
+        for (int offset = 0; offset + window < data.length; offset++) {
+            checksum.roll(data[offset], data[offset + window]);
+        }
+        int last = data.length - window;
+        assertThat(checksum.value()).isEqualTo(RollingChecksum.of(data, last, window));
+    }
+
+    @Test
+    void emptyWindowHasZeroChecksum() {
+        assertThat(RollingChecksum.of(new byte[0], 0, 0)).isZero();
+    }
+
+    @Test
+    void differentBlocksUsuallyDiffer() {
+        byte[] a = "the quick brown fox".getBytes();
+        byte[] b = "the quick brown fax".getBytes();
+        assertThat(RollingChecksum.of(a, 0, a.length)).isNotEqualTo(RollingChecksum.of(b, 0, b.length));
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.FileStorage.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class VolumeManagerTest {
+
+    private static final int BLOBS = 20_000;
+    private static final double TOLERANCE = 0.02;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void rankIsDeterministicAndCoversEveryVolume() {
+        VolumeManager manager = manager("a=1,b=1,c=1", "", 1);
+
+        List<Volume> first = manager.rank("blob-42");
+        List<Volume> second = manager("a=1,b=1,c=1", "", 1).rank("blob-42");
+
+        assertThat(first).hasSize(3);
+        assertThat(first).extracting(Volume::getRoot).containsExactlyElementsOf(
+                second.stream().map(Volume::getRoot).toList());
+    }
+
+    @Test
+    void primaryShareFollowsWeights() {
+        VolumeManager manager = manager("a=1,b=1,c=2", "", 1);
+
+        Map<Path, Integer> counts = new HashMap<>();
+        for (int i = 0; i < BLOBS; i++) {
+            counts.merge(manager.desired("blob-" + i).get(0).getRoot(), 1, Integer::sum);
+        }
+
+        assertThat(share(counts, "a")).isCloseTo(0.25, within(TOLERANCE));
+        assertThat(share(counts, "b")).isCloseTo(0.25, within(TOLERANCE));
+        assertThat(share(counts, "c")).isCloseTo(0.50, within(TOLERANCE));
+    }
+
+    @Test
+    void addingVolumeOnlyMovesBlobsOntoNewVolume() {
+        VolumeManager before = manager("a=1,b=1,c=1", "", 1);
+        VolumeManager after = manager("a=1,b=1,c=1,d=1", "", 1);
+
+        int moved = 0;
+        for (int i = 0; i < BLOBS; i++) {
+            String name = "blob-" + i;
+            Path oldRoot = before.desired(name).get(0).getRoot();
+            Path newRoot = after.desired(name).get(0).getRoot();
+            if (!oldRoot.equals(newRoot)) {
+                assertThat(newRoot).isEqualTo(root("d"));
+                moved++;
+            }
+        }
+        // Khoảng 1/4 số blob chuyển sang volume mới, phần còn lại đứng yên
+        assertThat(moved / (double) BLOBS).isCloseTo(0.25, within(TOLERANCE));
+    }
+
+    @Test
+    void drainingVolumeIsNeverDesiredOrPlaced() {
+        VolumeManager manager = manager("a=1,b=1,c=1", "b", 2);
+
+        for (int i = 0; i < 1000; i++) {
+            String name = "blob-" + i;
+            assertThat(manager.desired(name)).extracting(Volume::getRoot).doesNotContain(root("b")).hasSize(2);
+            assertThat(manager.place(name)).extracting(Volume::getRoot).doesNotContain(root("b"));
+        }
+    }
+
+    @Test
+    void replicasFollowRankOrder() {
+        VolumeManager manager = manager("a=1,b=1,c=1", "", 2);
+
+        List<Volume> ranked = manager.rank("blob-7");
+
+        assertThat(manager.desired("blob-7")).containsExactly(ranked.get(0), ranked.get(1));
+        assertThat(manager.place("blob-7")).containsExactly(ranked.get(0), ranked.get(1));
+    }
+
+    @Test
+    void placeNameAvoidsBusyVolumeWithoutLeavingHrwRanking() {
+        VolumeManager manager = new VolumeManager(tempDir.toString(), volumes("a=1,b=1,c=1"), "", 0, 4, 1);
+        Volume busy = volume(manager, "a");
+        for (int i = 0; i < 4; i++) {
+            busy.beginIo();
+        }
+
+        for (int i = 0; i < 200; i++) {
+            String name = manager.placeName(names("upload-" + i + "-"));
+            List<Volume> placed = manager.place(name);
+            assertThat(placed.get(0)).isNotEqualTo(busy);
+            // Cùng thứ hạng với rebalancer: blob vừa tránh tải không bị kéo về volume bận
+            assertThat(manager.desired(name)).isEqualTo(placed);
+        }
+    }
+
+    @Test
+    void placeNameFallsBackToFirstNameWhenEveryVolumeIsBusy() {
+        VolumeManager manager = new VolumeManager(tempDir.toString(), volumes("a=1,b=1"), "", 0, 1, 1);
+        volume(manager, "a").beginIo();
+        volume(manager, "b").beginIo();
+
+        assertThat(manager.placeName(names("upload-"))).isEqualTo("upload-1");
+    }
+
+    @Test
+    void nameOnPicksNameWhosePrimaryIsGivenVolume() {
+        VolumeManager manager = manager("a=1,b=1,c=1,d=1", "", 1);
+
+        for (String id : List.of("a", "b", "c", "d")) {
+            Volume volume = volume(manager, id);
+            String name = manager.nameOn(volume, names("copy-" + id + "-"));
+            assertThat(manager.desired(name).get(0)).isEqualTo(volume);
+        }
+    }
+
+    @Test
+    void nameOnRefusesDrainingVolume() {
+        VolumeManager manager = manager("a=1,b=1", "a", 1);
+
+        // Không bao giờ trả về tên khiến bản copy nằm lại trên volume đang rút
+        assertThat(manager.nameOn(volume(manager, "a"), names("copy-"))).isNull();
+        assertThat(manager.desired(manager.nameOn(volume(manager, "b"), names("copy-"))).get(0))
+                .isEqualTo(volume(manager, "b"));
+    }
+
+    @Test
+    void placeFailsWhenNoVolumeHasFreeSpace() {
+        VolumeManager manager = new VolumeManager(tempDir.toString(), volumes("a=1,b=1"), "", Long.MAX_VALUE, 64, 1);
+
+        assertThat(manager.desired("blob-1")).isEmpty();
+        assertThatThrownBy(() -> manager.place("blob-1")).isInstanceOf(IllegalStateException.class);
+    }
+
+    private VolumeManager manager(String volumes, String draining, int replication) {
+        StringBuilder drainingRoots = new StringBuilder();
+        for (String id : draining.split(",")) {
+            if (!id.isBlank()) {
+                drainingRoots.append(root(id)).append(',');
+            }
+        }
+        return new VolumeManager(tempDir.toString(), volumes(volumes), drainingRoots.toString(), 0, 64, replication);
+    }
+
+    // "a=1,b=2" -> "<tempDir>/a=1,<tempDir>/b=2"
+    private String volumes(String spec) {
+        StringBuilder result = new StringBuilder();
+        for (String entry : spec.split(",")) {
+            int eq = entry.indexOf('=');
+            result.append(root(entry.substring(0, eq))).append(entry.substring(eq)).append(',');
+        }
+        return result.toString();
+    }
+
+    private Path root(String id) {
+        return tempDir.resolve(id).toAbsolutePath().normalize();
+    }
+
+    private Volume volume(VolumeManager manager, String id) {
+        return manager.getVolumes().stream()
+                .filter(volume -> volume.getRoot().equals(root(id)))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private double share(Map<Path, Integer> counts, String id) {
+        return counts.getOrDefault(root(id), 0) / (double) BLOBS;
+    }
+
+    private static Supplier<String> names(String prefix) {
+        AtomicInteger next = new AtomicInteger();
+        return () -> prefix + next.incrementAndGet();
+    }
+}